@@ -0,0 +1,143 @@
+package com.unsmart.campus.attendance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A semester report for one class (every session's head count, every student's attendance rate,
+ * the students below 75% and those present at three given sessions) over {@code students} x
+ * {@code sessions} of check-ins, each student attending at their own rate between 50% and 100%.
+ * {@code live} answers from the service's in-memory bitmaps, {@code archived} from the mapped
+ * history archive, and {@code openArchive} includes mapping the archive. {@code recordScan} is
+ * the same report counted from the check-in records, as it would be without the bitmaps. It sits
+ * in the attendance package, apart from the other benchmarks, because the history and its
+ * archive are package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AttendanceAnalyticsBenchmark {
+    private static final String CLASS_ID = "CS-101";
+    private static final double THRESHOLD = 0.75;
+
+    @Param({"10000"})
+    int students;
+
+    @Param({"200"})
+    int sessions;
+
+    private final List<String> required = new ArrayList<>();
+    private final List<String[]> records = new ArrayList<>();
+    private Path directory;
+    private Path archive;
+    private AttendanceHistory live;
+    private AttendanceHistory archived;
+
+    @Setup
+    public void start() throws IOException {
+        Random random = new Random(42);
+        double[] rates = new double[students];
+        for (int s = 0; s < students; s++) {
+            rates[s] = 0.5 + 0.5 * random.nextDouble();
+        }
+        live = new AttendanceHistory();
+        for (int session = 0; session < sessions; session++) {
+            String sessionId = String.format("W%02d-%d", session / 5 + 1, session % 5 + 1);
+            for (int s = 0; s < students; s++) {
+                if (random.nextDouble() < rates[s]) {
+                    String studentId = "x" + (24_000_000 + s);
+                    live.record(sessionId, studentId);
+                    records.add(new String[]{sessionId, studentId});
+                }
+            }
+            if (session % (sessions / 3) == 0 && required.size() < 3) {
+                required.add(sessionId);
+            }
+        }
+        directory = Files.createTempDirectory("analytics-bench");
+        archive = directory.resolve("attendance.history");
+        AttendanceHistory.writeArchive(archive, Map.of(CLASS_ID, live));
+        archived = AttendanceHistory.open(archive).get(CLASS_ID);
+        System.out.printf("%n%d check-ins; archive %d KiB%n", records.size(), Files.size(archive) >> 10);
+    }
+
+    @Benchmark
+    public AttendanceAnalyticsResponse live() {
+        return live.analyse(THRESHOLD, required);
+    }
+
+    @Benchmark
+    public AttendanceAnalyticsResponse archived() {
+        return archived.analyse(THRESHOLD, required);
+    }
+
+    @Benchmark
+    public AttendanceAnalyticsResponse openArchive() throws IOException {
+        return AttendanceHistory.open(archive).get(CLASS_ID).analyse(THRESHOLD, required);
+    }
+
+    @Benchmark
+    public AttendanceAnalyticsResponse recordScan() {
+        Map<String, Integer> attended = new HashMap<>();
+        Map<String, Integer> held = new TreeMap<>();
+        Map<String, Integer> requiredAttended = new HashMap<>();
+        Set<String> requiredSessions = new HashSet<>(required);
+        for (String[] record : records) {
+            held.merge(record[0], 1, Integer::sum);
+            attended.merge(record[1], 1, Integer::sum);
+            if (requiredSessions.contains(record[0])) {
+                requiredAttended.merge(record[1], 1, Integer::sum);
+            }
+        }
+        AttendanceAnalyticsResponse.Builder response = AttendanceAnalyticsResponse.newBuilder();
+        held.forEach((sessionId, present) -> response.addSessions(
+                SessionAttendance.newBuilder().setSessionId(sessionId).setPresent(present)));
+        attended.forEach((studentId, count) -> {
+            double rate = (double) count / held.size();
+            response.addRates(StudentAttendanceRate.newBuilder()
+                    .setStudentId(studentId)
+                    .setSessionsAttended(count)
+                    .setRate(rate));
+            if (rate < THRESHOLD) {
+                response.addBelowThreshold(studentId);
+            }
+        });
+        requiredAttended.forEach((studentId, count) -> {
+            if (count == requiredSessions.size()) {
+                response.addAttendedAll(studentId);
+            }
+        });
+        return response.build();
+    }
+
+    @TearDown
+    public void stop() throws IOException {
+        Files.deleteIfExists(archive);
+        Files.delete(directory);
+    }
+}
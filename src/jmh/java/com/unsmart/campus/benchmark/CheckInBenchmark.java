@@ -0,0 +1,124 @@
+package com.unsmart.campus.benchmark;
+
+import com.unsmart.campus.attendance.AttendanceServer;
+import com.unsmart.campus.attendance.BatchCheckInResponse;
+import com.unsmart.campus.attendance.AttendanceServiceGrpc;
+import com.unsmart.campus.attendance.CheckInRequest;
+import com.unsmart.campus.attendance.CheckInResponse;
+import com.unsmart.campus.attendance.Student;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CheckInStudent from several threads at once, either all into one class or spread over many,
+ * with the attendance kept in memory or journaled to disk. {@code checkInBatch} sends the same
+ * check-ins {@value #BATCH} at a time over CheckInStudents, and is scored per check-in so the two
+ * compare directly. Each iteration starts from an empty server so the store does not grow across
+ * the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class CheckInBenchmark {
+    static final int BATCH = 100;
+
+    @Param({"1", "64"})
+    int classes;
+
+    @Param({"memory", "journal"})
+    String storage;
+
+    private final AtomicLong students = new AtomicLong();
+    private Path dataDirectory;
+    private AttendanceServer attendance;
+    private InProcess host;
+    private AttendanceServiceGrpc.AttendanceServiceBlockingStub stub;
+    private AttendanceServiceGrpc.AttendanceServiceStub asyncStub;
+
+    @Setup(Level.Iteration)
+    public void start() throws IOException {
+        dataDirectory = storage.equals("journal") ? Files.createTempDirectory("checkin-bench") : null;
+        attendance = new AttendanceServer(dataDirectory);
+        attendance.recover();
+        host = new InProcess(attendance);
+        stub = AttendanceServiceGrpc.newBlockingStub(host.channel);
+        asyncStub = AttendanceServiceGrpc.newStub(host.channel);
+    }
+
+    @Benchmark
+    public CheckInResponse checkIn() {
+        long number = students.incrementAndGet();
+        return stub.checkInStudent(CheckInRequest.newBuilder()
+                .setClassId("C" + number % classes)
+                .setStudent(Student.newBuilder()
+                        .setStudentId("S" + number)
+                        .setStudentName("Student " + number))
+                .build());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public BatchCheckInResponse checkInBatch() throws InterruptedException, ExecutionException {
+        CompletableFuture<BatchCheckInResponse> done = new CompletableFuture<>();
+        StreamObserver<CheckInRequest> requests = asyncStub.checkInStudents(new StreamObserver<BatchCheckInResponse>() {
+            @Override
+            public void onNext(BatchCheckInResponse response) {
+                done.complete(response);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        for (int i = 0; i < BATCH; i++) {
+            long number = students.incrementAndGet();
+            requests.onNext(CheckInRequest.newBuilder()
+                    .setClassId("C" + number % classes)
+                    .setStudent(Student.newBuilder()
+                            .setStudentId("S" + number)
+                            .setStudentName("Student " + number))
+                    .build());
+        }
+        requests.onCompleted();
+        return done.get();
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() throws IOException, InterruptedException {
+        host.close();
+        attendance.stop();
+        if (dataDirectory != null) {
+            InProcess.delete(dataDirectory);
+        }
+    }
+}
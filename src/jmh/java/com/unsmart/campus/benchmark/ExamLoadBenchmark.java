@@ -0,0 +1,157 @@
+package com.unsmart.campus.benchmark;
+
+import com.unsmart.campus.assessment.AssessmentResult;
+import com.unsmart.campus.assessment.AssessmentServer;
+import com.unsmart.campus.assessment.AssessmentServiceGrpc;
+import com.unsmart.campus.assessment.QuizQuestion;
+import com.unsmart.campus.assessment.SetQuizRequest;
+import com.unsmart.campus.assessment.StudentAnswer;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole class sitting a quiz through GetQuizResults: every student has their own answer
+ * stream, answers arrive interleaved across the class in random order, and
+ * {@code resubmitPercent} of them change an earlier answer. The {@code answers} and
+ * {@code results} counters are the messages sent to and received from the server; their ratio
+ * is how many fewer messages go out than the one result per answer the service used to send.
+ * Results only go out as each stream ends unless the run sets
+ * {@code -jvmArgsAppend -Dassessment.flush.interval.ms=<ms>}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExamLoadBenchmark {
+    private static final String QUIZ_ID = "EXAM";
+
+    @Param({"200"})
+    int students;
+
+    @Param({"40"})
+    int questions;
+
+    @Param({"10"})
+    int resubmitPercent;
+
+    private final AtomicLong exams = new AtomicLong();
+    private AssessmentServer assessment;
+    private InProcess host;
+    private AssessmentServiceGrpc.AssessmentServiceStub stub;
+    // Student, question and answer of each message in the order they are sent
+    private int[] order;
+
+    /** Messages per exam sat, as throughputs whose ratio is the reduction. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Messages {
+        public long answers;
+        public long results;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            answers = 0;
+            results = 0;
+        }
+    }
+
+    @Setup
+    public void start() throws IOException {
+        assessment = new AssessmentServer();
+        host = new InProcess(assessment);
+        SetQuizRequest.Builder quiz = SetQuizRequest.newBuilder().setQuizId(QUIZ_ID).setClassId("EXAM");
+        for (int q = 0; q < questions; q++) {
+            quiz.addQuestions(QuizQuestion.newBuilder()
+                    .setQuestionId("Q" + q)
+                    .setQuestionText("Question " + q)
+                    .setCorrectAnswer("A"));
+        }
+        AssessmentServiceGrpc.newBlockingStub(host.channel).setQuiz(quiz.build());
+        stub = AssessmentServiceGrpc.newStub(host.channel);
+
+        Random random = new Random(2024);
+        List<Integer> messages = new ArrayList<>();
+        for (int s = 0; s < students; s++) {
+            for (int q = 0; q < questions; q++) {
+                messages.add(s * questions + q);
+                if (random.nextInt(100) < resubmitPercent) {
+                    messages.add(s * questions + q);
+                }
+            }
+        }
+        Collections.shuffle(messages, random);
+        order = messages.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Benchmark
+    public void sitExam(Messages messages) throws InterruptedException {
+        long exam = exams.incrementAndGet();
+        CountDownLatch finished = new CountDownLatch(students);
+        AtomicLong results = new AtomicLong();
+        List<StreamObserver<StudentAnswer>> streams = new ArrayList<>(students);
+        for (int s = 0; s < students; s++) {
+            streams.add(stub.getQuizResults(new StreamObserver<AssessmentResult>() {
+                @Override
+                public void onNext(AssessmentResult result) {
+                    results.incrementAndGet();
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    finished.countDown();
+                }
+
+                @Override
+                public void onCompleted() {
+                    finished.countDown();
+                }
+            }));
+        }
+        for (int i = 0; i < order.length; i++) {
+            int student = order[i] / questions;
+            int question = order[i] % questions;
+            streams.get(student).onNext(StudentAnswer.newBuilder()
+                    .setStudentId("S" + exam + "-" + student)
+                    .setQuizId(QUIZ_ID)
+                    .setQuestionId("Q" + question)
+                    // A resubmission flips between a wrong and the right answer
+                    .setSubmittedAnswer((i + question) % 3 == 0 ? "B" : "A")
+                    .build());
+        }
+        for (StreamObserver<StudentAnswer> stream : streams) {
+            stream.onCompleted();
+        }
+        finished.await();
+        messages.answers += order.length;
+        messages.results += results.get();
+    }
+
+    @TearDown
+    public void stop() throws InterruptedException {
+        host.close();
+        assessment.stop();
+    }
+}
@@ -0,0 +1,217 @@
+package com.unsmart.campus.benchmark;
+
+import com.google.protobuf.ByteString;
+import com.unsmart.campus.assessment.AssessmentResult;
+import com.unsmart.campus.assessment.AssessmentServer;
+import com.unsmart.campus.assessment.AssessmentServiceGrpc;
+import com.unsmart.campus.assessment.QuizQuestion;
+import com.unsmart.campus.assessment.SetQuizRequest;
+import com.unsmart.campus.assessment.StudentAnswer;
+import com.unsmart.campus.attendance.AttendanceServer;
+import com.unsmart.campus.attendance.AttendanceServiceGrpc;
+import com.unsmart.campus.attendance.CheckInRequest;
+import com.unsmart.campus.attendance.CheckInResponse;
+import com.unsmart.campus.attendance.Student;
+import com.unsmart.campus.content.ContentChunk;
+import com.unsmart.campus.content.ContentDeliveryServiceGrpc;
+import com.unsmart.campus.content.ContentServer;
+import com.unsmart.campus.content.UploadContentResponse;
+import com.unsmart.campus.executor.CallExecutor;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link CallExecutor} models under a mixed load on one server over loopback TCP: journaled
+ * unary check-ins, quiz answers streamed both ways, and uploads that write to disk inside the
+ * handler, all at once. Sampled time gives each kind of call its own latency percentiles; run
+ * with {@code -bm thrpt} for throughput. {@code virtual} needs a Java 21 runtime and otherwise
+ * measures the default executor.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ExecutorModelBenchmark {
+    // Held so the level sticks; loggers are only weakly referenced by the LogManager
+    private static final Logger CAMPUS_LOGGER = Logger.getLogger("com.unsmart.campus");
+    private static final String QUIZ_ID = "BENCH";
+    private static final int QUESTIONS = 20;
+    private static final int UPLOAD_BYTES = 256 << 10;
+    private static final int MESSAGE_BYTES = 32 << 10;
+
+    @Param({"default", "direct", "virtual", "bounded"})
+    String model;
+
+    private final AtomicLong students = new AtomicLong();
+    private Path dataDirectory;
+    private AttendanceServer attendance;
+    private ContentServer content;
+    private AssessmentServer assessment;
+    private CallExecutor callExecutor;
+    private Server server;
+    private ManagedChannel channel;
+    private AttendanceServiceGrpc.AttendanceServiceBlockingStub attendanceStub;
+    private AssessmentServiceGrpc.AssessmentServiceStub assessmentStub;
+    private ContentDeliveryServiceGrpc.ContentDeliveryServiceStub contentStub;
+
+    @Setup
+    public void start() throws IOException {
+        CAMPUS_LOGGER.setLevel(Level.WARNING);
+        dataDirectory = Files.createTempDirectory("executor-bench");
+        attendance = new AttendanceServer(dataDirectory.resolve("attendance"));
+        attendance.recover();
+        content = new ContentServer(dataDirectory.resolve("content"));
+        content.recover();
+        assessment = new AssessmentServer();
+        callExecutor = CallExecutor.create("bench", CallExecutor.Model.valueOf(model.toUpperCase(Locale.ROOT)),
+                Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), 1_000);
+        server = callExecutor.applyTo(ServerBuilder.forPort(0))
+                .addService(attendance.serviceDefinition())
+                .addService(content)
+                .addService(assessment)
+                .build()
+                .start();
+        channel = ManagedChannelBuilder.forAddress("127.0.0.1", server.getPort()).usePlaintext().build();
+        attendanceStub = AttendanceServiceGrpc.newBlockingStub(channel);
+        assessmentStub = AssessmentServiceGrpc.newStub(channel);
+        contentStub = ContentDeliveryServiceGrpc.newStub(channel);
+
+        SetQuizRequest.Builder quiz = SetQuizRequest.newBuilder().setQuizId(QUIZ_ID).setClassId("BENCH");
+        for (int q = 0; q < QUESTIONS; q++) {
+            quiz.addQuestions(QuizQuestion.newBuilder()
+                    .setQuestionId("Q" + q)
+                    .setQuestionText("Question " + q)
+                    .setCorrectAnswer("A"));
+        }
+        AssessmentServiceGrpc.newBlockingStub(channel).setQuiz(quiz.build());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public CheckInResponse checkIn() {
+        long number = students.incrementAndGet();
+        return attendanceStub.checkInStudent(CheckInRequest.newBuilder()
+                .setClassId("C" + number % 64)
+                .setStudent(Student.newBuilder()
+                        .setStudentId("S" + number)
+                        .setStudentName("Student " + number))
+                .build());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public AssessmentResult answerQuiz() throws InterruptedException, ExecutionException {
+        String studentId = "S" + students.incrementAndGet();
+        CompletableFuture<AssessmentResult> graded = new CompletableFuture<>();
+        StreamObserver<StudentAnswer> answers = assessmentStub.getQuizResults(new StreamObserver<AssessmentResult>() {
+            private AssessmentResult result;
+
+            @Override
+            public void onNext(AssessmentResult value) {
+                result = value;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                graded.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                graded.complete(result);
+            }
+        });
+        for (int q = 0; q < QUESTIONS; q++) {
+            answers.onNext(StudentAnswer.newBuilder()
+                    .setStudentId(studentId)
+                    .setQuizId(QUIZ_ID)
+                    .setQuestionId("Q" + q)
+                    .setSubmittedAnswer(q % 3 == 0 ? "B" : "A")
+                    .build());
+        }
+        answers.onCompleted();
+        return graded.get();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public UploadContentResponse upload() throws InterruptedException, ExecutionException {
+        byte[] file = new byte[UPLOAD_BYTES];
+        ThreadLocalRandom.current().nextBytes(file);
+        List<ContentChunk> chunks = new ArrayList<>();
+        for (int offset = 0; offset < file.length; offset += MESSAGE_BYTES) {
+            chunks.add(ContentChunk.newBuilder()
+                    .setFileName("deck.pptx")
+                    .setOffset(offset)
+                    .setData(ByteString.copyFrom(file, offset, Math.min(MESSAGE_BYTES, file.length - offset)))
+                    .build());
+        }
+        CompletableFuture<UploadContentResponse> stored = new CompletableFuture<>();
+        StreamObserver<ContentChunk> upload = contentStub.uploadPresentation(new StreamObserver<UploadContentResponse>() {
+            @Override
+            public void onNext(UploadContentResponse response) {
+                stored.complete(response);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                stored.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        for (ContentChunk chunk : chunks) {
+            upload.onNext(chunk);
+        }
+        upload.onCompleted();
+        return stored.get();
+    }
+
+    @TearDown
+    public void stop() throws IOException, InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        callExecutor.close();
+        attendance.stop();
+        content.stop();
+        assessment.stop();
+        InProcess.delete(dataDirectory);
+    }
+}
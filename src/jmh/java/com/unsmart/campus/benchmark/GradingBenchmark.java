@@ -0,0 +1,145 @@
+package com.unsmart.campus.benchmark;
+
+import com.unsmart.campus.assessment.AssessmentResult;
+import com.unsmart.campus.assessment.AssessmentServer;
+import com.unsmart.campus.assessment.AssessmentServiceGrpc;
+import com.unsmart.campus.assessment.GradingIndex;
+import com.unsmart.campus.assessment.QuizQuestion;
+import com.unsmart.campus.assessment.SetQuizRequest;
+import com.unsmart.campus.assessment.StudentAnswer;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One student's answer stream through GetQuizResults, from the first answer to the graded result.
+ * {@code gradeLoop} and {@code gradeIndex} grade the same answer sheet on their own: by scanning
+ * the quiz's questions for each answer, as grading did before quizzes were compiled, and through
+ * the {@link GradingIndex}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GradingBenchmark {
+    private static final String QUIZ_ID = "BENCH";
+
+    @Param({"10", "100", "200"})
+    int questions;
+
+    private final AtomicLong students = new AtomicLong();
+    private AssessmentServer assessment;
+    private InProcess host;
+    private AssessmentServiceGrpc.AssessmentServiceStub stub;
+    private SetQuizRequest quiz;
+    private GradingIndex index;
+    private StudentAnswer[] sheet;
+
+    @Setup
+    public void start() throws IOException {
+        assessment = new AssessmentServer();
+        host = new InProcess(assessment);
+        SetQuizRequest.Builder builder = SetQuizRequest.newBuilder().setQuizId(QUIZ_ID).setClassId("BENCH");
+        for (int q = 0; q < questions; q++) {
+            builder.addQuestions(QuizQuestion.newBuilder()
+                    .setQuestionId("Q" + q)
+                    .setQuestionText("Question " + q)
+                    .setCorrectAnswer("A"));
+        }
+        quiz = builder.build();
+        AssessmentServiceGrpc.newBlockingStub(host.channel).setQuiz(quiz);
+        stub = AssessmentServiceGrpc.newStub(host.channel);
+
+        index = GradingIndex.compile(quiz);
+        // Fresh strings, as answers decoded off the wire would be
+        sheet = new StudentAnswer[questions];
+        for (int q = 0; q < questions; q++) {
+            sheet[q] = StudentAnswer.newBuilder()
+                    .setStudentId("S0")
+                    .setQuizId(QUIZ_ID)
+                    .setQuestionId(new String("Q" + q))
+                    .setSubmittedAnswer(q % 3 == 0 ? "B" : new String("A"))
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public AssessmentResult gradeStudent() throws InterruptedException, ExecutionException {
+        String studentId = "S" + students.incrementAndGet();
+        CompletableFuture<AssessmentResult> graded = new CompletableFuture<>();
+        StreamObserver<StudentAnswer> answers = stub.getQuizResults(new StreamObserver<AssessmentResult>() {
+            private AssessmentResult result;
+
+            @Override
+            public void onNext(AssessmentResult value) {
+                result = value;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                graded.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                graded.complete(result);
+            }
+        });
+        for (int q = 0; q < questions; q++) {
+            answers.onNext(StudentAnswer.newBuilder()
+                    .setStudentId(studentId)
+                    .setQuizId(QUIZ_ID)
+                    .setQuestionId("Q" + q)
+                    .setSubmittedAnswer(q % 3 == 0 ? "B" : "A")
+                    .build());
+        }
+        answers.onCompleted();
+        return graded.get();
+    }
+
+    @Benchmark
+    public int gradeLoop() {
+        int score = 0;
+        for (StudentAnswer answer : sheet) {
+            for (QuizQuestion question : quiz.getQuestionsList()) {
+                if (question.getQuestionId().equals(answer.getQuestionId())
+                        && question.getCorrectAnswer().equals(answer.getSubmittedAnswer())) {
+                    score++;
+                }
+            }
+        }
+        return score;
+    }
+
+    @Benchmark
+    public int gradeIndex() {
+        int score = 0;
+        for (StudentAnswer answer : sheet) {
+            score += index.grade(answer);
+        }
+        return score;
+    }
+
+    @TearDown
+    public void stop() throws InterruptedException {
+        host.close();
+        assessment.stop();
+    }
+}
@@ -0,0 +1,127 @@
+package com.unsmart.campus.benchmark;
+
+import com.unsmart.campus.assessment.AssessmentResult;
+import com.unsmart.campus.assessment.AssessmentServer;
+import com.unsmart.campus.assessment.AssessmentServiceGrpc;
+import com.unsmart.campus.assessment.QuizQuestion;
+import com.unsmart.campus.assessment.SetQuizRequest;
+import com.unsmart.campus.assessment.StudentAnswer;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * An end-of-term exam burst: {@code STREAMS} GetQuizResults calls, each submitting a
+ * {@code QUESTIONS}-question sheet for {@code STUDENTS_PER_STREAM} students, graded on
+ * {@code gradingThreads} pipeline threads. Scores are answers graded per second. The speedup from
+ * more grading threads can only show on a machine with at least that many cores; the JVM's
+ * processor count is printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GradingScalingBenchmark {
+    private static final String QUIZ_ID = "EXAM";
+    private static final int QUESTIONS = 20;
+    private static final int STREAMS = 8;
+    private static final int STUDENTS_PER_STREAM = 500;
+    private static final int ANSWERS = STREAMS * STUDENTS_PER_STREAM * QUESTIONS;
+
+    @Param({"1", "2", "4"})
+    int gradingThreads;
+
+    private AssessmentServer assessment;
+    private InProcess host;
+    private AssessmentServiceGrpc.AssessmentServiceStub stub;
+    private StudentAnswer[][] sheets;
+
+    @Setup
+    public void start() throws IOException {
+        System.out.printf("%n%d processors available%n", Runtime.getRuntime().availableProcessors());
+        assessment = new AssessmentServer(gradingThreads);
+        host = new InProcess(assessment);
+        SetQuizRequest.Builder quiz = SetQuizRequest.newBuilder().setQuizId(QUIZ_ID).setClassId("HALL");
+        for (int q = 0; q < QUESTIONS; q++) {
+            quiz.addQuestions(QuizQuestion.newBuilder().setQuestionId("Q" + q).setCorrectAnswer("A"));
+        }
+        AssessmentServiceGrpc.newBlockingStub(host.channel).setQuiz(quiz.build());
+        stub = AssessmentServiceGrpc.newStub(host.channel);
+
+        sheets = new StudentAnswer[STREAMS][STUDENTS_PER_STREAM * QUESTIONS];
+        for (int s = 0; s < STREAMS; s++) {
+            for (int i = 0; i < STUDENTS_PER_STREAM * QUESTIONS; i++) {
+                sheets[s][i] = StudentAnswer.newBuilder()
+                        .setStudentId("x" + (24_000_000 + s * STUDENTS_PER_STREAM + i % STUDENTS_PER_STREAM))
+                        .setQuizId(QUIZ_ID)
+                        .setQuestionId("Q" + i / STUDENTS_PER_STREAM)
+                        .setSubmittedAnswer(i % 3 == 0 ? "B" : "A")
+                        .build();
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANSWERS)
+    public int examBurst() throws InterruptedException, ExecutionException {
+        AtomicInteger results = new AtomicInteger();
+        CompletableFuture<?>[] graded = new CompletableFuture<?>[STREAMS];
+        @SuppressWarnings("unchecked")
+        StreamObserver<StudentAnswer>[] calls = new StreamObserver[STREAMS];
+        for (int s = 0; s < STREAMS; s++) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            graded[s] = done;
+            calls[s] = stub.getQuizResults(new StreamObserver<AssessmentResult>() {
+                @Override
+                public void onNext(AssessmentResult result) {
+                    results.incrementAndGet();
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    done.completeExceptionally(t);
+                }
+
+                @Override
+                public void onCompleted() {
+                    done.complete(null);
+                }
+            });
+        }
+        // Interleaved, so every call has answers waiting to be graded at once
+        for (int i = 0; i < STUDENTS_PER_STREAM * QUESTIONS; i++) {
+            for (int s = 0; s < STREAMS; s++) {
+                calls[s].onNext(sheets[s][i]);
+            }
+        }
+        for (StreamObserver<StudentAnswer> call : calls) {
+            call.onCompleted();
+        }
+        CompletableFuture.allOf(graded).get();
+        return results.get();
+    }
+
+    @TearDown
+    public void stop() throws InterruptedException {
+        host.close();
+        assessment.stop();
+    }
+}
@@ -0,0 +1,54 @@
+package com.unsmart.campus.benchmark;
+
+import io.grpc.BindableService;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Services served over the in-process transport, so benchmarks measure the services and not the
+ * network stack. The transport hands messages over without serializing them; encoding costs
+ * are covered separately by {@link ProtoCodecBenchmark}.
+ */
+final class InProcess implements AutoCloseable {
+    // Held so the level sticks; loggers are only weakly referenced by the LogManager
+    private static final Logger CAMPUS_LOGGER = Logger.getLogger("com.unsmart.campus");
+
+    final ManagedChannel channel;
+    private final Server server;
+
+    InProcess(BindableService... services) throws IOException {
+        // Per-call INFO logging would otherwise flood the benchmark output
+        CAMPUS_LOGGER.setLevel(Level.WARNING);
+        String name = InProcessServerBuilder.generateName();
+        InProcessServerBuilder builder = InProcessServerBuilder.forName(name);
+        for (BindableService service : services) {
+            builder.addService(service);
+        }
+        server = builder.build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
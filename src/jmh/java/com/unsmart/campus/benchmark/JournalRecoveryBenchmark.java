@@ -0,0 +1,156 @@
+package com.unsmart.campus.benchmark;
+
+import com.unsmart.campus.attendance.AttendanceServer;
+import com.unsmart.campus.attendance.AttendanceServiceGrpc;
+import com.unsmart.campus.attendance.BatchCheckInResponse;
+import com.unsmart.campus.attendance.CheckInRequest;
+import com.unsmart.campus.attendance.Student;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Restart time of an attendance server holding {@code records} check-ins spread over 200 classes.
+ * {@code shutdown} recovers from the snapshot a clean stop leaves; {@code crash} from a copy of the
+ * files taken while the server was running, with the last check-ins still only in the log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class JournalRecoveryBenchmark {
+    private static final int CLASSES = 200;
+    private static final int BATCH = 1_000;
+
+    @Param({"200000", "1000000"})
+    int records;
+
+    @Param({"shutdown", "crash"})
+    String state;
+
+    private Path root;
+    private Path written;
+    private Path copy;
+    private AttendanceServer restarted;
+
+    @Setup(Level.Trial)
+    public void write() throws IOException, InterruptedException, ExecutionException {
+        root = Files.createTempDirectory("recovery-bench");
+        written = root.resolve("written");
+        AttendanceServer attendance = new AttendanceServer(written);
+        attendance.recover();
+        try (InProcess host = new InProcess(attendance)) {
+            AttendanceServiceGrpc.AttendanceServiceStub stub = AttendanceServiceGrpc.newStub(host.channel);
+            for (int first = 0; first < records; first += BATCH) {
+                checkInBatch(stub, first);
+            }
+            if (state.equals("crash")) {
+                awaitSnapshot(written);
+                Path crashed = root.resolve("crashed");
+                copy(written, crashed);
+                written = crashed;
+            }
+        }
+        attendance.stop();
+    }
+
+    /** Waits for a background snapshot to finish, so the copy does not race its file moves. */
+    private static void awaitSnapshot(Path directory) throws IOException, InterruptedException {
+        while (true) {
+            try (Stream<Path> files = Files.list(directory)) {
+                // Sealed log segments are deleted once the snapshot covering them is written
+                if (files.noneMatch(file -> file.getFileName().toString().startsWith("attendance.log."))) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void checkInBatch(AttendanceServiceGrpc.AttendanceServiceStub stub, int first)
+            throws InterruptedException, ExecutionException {
+        CompletableFuture<BatchCheckInResponse> done = new CompletableFuture<>();
+        StreamObserver<CheckInRequest> requests = stub.checkInStudents(new StreamObserver<BatchCheckInResponse>() {
+            @Override
+            public void onNext(BatchCheckInResponse response) {
+                done.complete(response);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        for (int number = first; number < first + BATCH; number++) {
+            requests.onNext(CheckInRequest.newBuilder()
+                    .setClassId("C" + number % CLASSES)
+                    .setSessionId("W" + number / (CLASSES * 50))
+                    .setStudent(Student.newBuilder()
+                            .setStudentId("x" + (24_000_000 + number / CLASSES % 50))
+                            .setStudentName("Student " + number))
+                    .build());
+        }
+        requests.onCompleted();
+        done.get();
+    }
+
+    @Setup(Level.Invocation)
+    public void copyFiles() throws IOException {
+        copy = root.resolve("restart");
+        copy(written, copy);
+    }
+
+    @Benchmark
+    public AttendanceServer recover() throws IOException {
+        restarted = new AttendanceServer(copy);
+        restarted.recover();
+        return restarted;
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopRestarted() throws IOException {
+        restarted.stop();
+        InProcess.delete(copy);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        InProcess.delete(root);
+    }
+
+    private static void copy(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        try (Stream<Path> files = Files.list(from)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                // A snapshot in progress has nothing to recover from yet
+                if (!file.getFileName().toString().endsWith(".tmp")) {
+                    Files.copy(file, to.resolve(file.getFileName()));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.unsmart.campus.benchmark;
+
+import com.unsmart.campus.attendance.AttendanceServer;
+import com.unsmart.campus.attendance.AttendanceServiceGrpc;
+import com.unsmart.campus.attendance.CheckInRequest;
+import com.unsmart.campus.attendance.CheckInResponse;
+import com.unsmart.campus.attendance.HashRing;
+import com.unsmart.campus.attendance.Student;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Check-in throughput as classes are partitioned over more attendance nodes, all in one process
+ * over the in-process transport. A benchmark machine has far fewer cores than a set of campus
+ * nodes, so each node is modelled as a server with a fixed capacity: one handler thread that
+ * spends {@code serviceMicros} on every check-in it owns. Calls either go straight to the class's
+ * owner, as a client holding the same {@link HashRing} would send them, or to any node, which
+ * forwards them; forwarding costs real CPU but not the modelled capacity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class PartitionedCheckInBenchmark {
+    // Held so the level sticks; loggers are only weakly referenced by the LogManager
+    private static final Logger CAMPUS_LOGGER = Logger.getLogger("com.unsmart.campus");
+    private static final int CLASSES = 256;
+
+    @Param({"1", "2", "4"})
+    int nodes;
+
+    @Param({"owner", "any"})
+    String routing;
+
+    @Param({"1000"})
+    long serviceMicros;
+
+    private final AtomicLong students = new AtomicLong();
+    private final List<AttendanceServer> attendance = new ArrayList<>();
+    private final List<Server> servers = new ArrayList<>();
+    private final List<ExecutorService> executors = new ArrayList<>();
+    private final List<ManagedChannel> channels = new ArrayList<>();
+    private final Map<String, AttendanceServiceGrpc.AttendanceServiceBlockingStub> stubs = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private HashRing ring;
+
+    @Setup
+    public void start() throws IOException {
+        CAMPUS_LOGGER.setLevel(Level.WARNING);
+        for (int i = 0; i < nodes; i++) {
+            names.add(InProcessServerBuilder.generateName());
+        }
+        ring = HashRing.of(names);
+        for (String name : names) {
+            AttendanceServer node = new AttendanceServer(null);
+            node.recover();
+            node.joinCluster(name, peer -> track(InProcessChannelBuilder.forName(peer).build()));
+            node.setClusterNodes(names);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            servers.add(InProcessServerBuilder.forName(name)
+                    .executor(executor)
+                    .addService(ServerInterceptors.intercept(node.serviceDefinition(), new Capacity(name)))
+                    .build()
+                    .start());
+            attendance.add(node);
+            executors.add(executor);
+            stubs.put(name, AttendanceServiceGrpc.newBlockingStub(track(InProcessChannelBuilder.forName(name).build())));
+        }
+    }
+
+    private synchronized ManagedChannel track(ManagedChannel channel) {
+        channels.add(channel);
+        return channel;
+    }
+
+    @Benchmark
+    public CheckInResponse checkIn() {
+        long number = students.incrementAndGet();
+        String classId = "C" + number % CLASSES;
+        String node = routing.equals("owner")
+                ? ring.owner(classId)
+                : names.get(ThreadLocalRandom.current().nextInt(names.size()));
+        return stubs.get(node).checkInStudent(CheckInRequest.newBuilder()
+                .setClassId(classId)
+                .setStudent(Student.newBuilder()
+                        .setStudentId("S" + number)
+                        .setStudentName("Student " + number))
+                .build());
+    }
+
+    @TearDown
+    public void stop() throws InterruptedException {
+        for (ManagedChannel channel : channels) {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        for (Server server : servers) {
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        for (int i = 0; i < nodes; i++) {
+            // Alone on its ring, a node stops without handing its classes to the others
+            attendance.get(i).setClusterNodes(List.of(names.get(i)));
+            attendance.get(i).stop();
+        }
+        executors.forEach(ExecutorService::shutdownNow);
+    }
+
+    /** Holds the node's handler thread for {@code serviceMicros} on each check-in for a class it owns. */
+    private final class Capacity implements ServerInterceptor {
+        private final String name;
+
+        Capacity(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+                ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+            return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(next.startCall(call, headers)) {
+                @Override
+                public void onMessage(ReqT message) {
+                    if (message instanceof CheckInRequest
+                            && name.equals(ring.owner(((CheckInRequest) message).getClassId()))) {
+                        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(serviceMicros));
+                    }
+                    super.onMessage(message);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.unsmart.campus.benchmark;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.unsmart.campus.assessment.StudentAnswer;
+import com.unsmart.campus.attendance.AttendanceRecord;
+import com.unsmart.campus.content.ContentChunk;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Wire encoding and decoding of the messages each service sends most: the part in-process calls skip. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtoCodecBenchmark {
+    private AttendanceRecord record;
+    private byte[] recordBytes;
+    private StudentAnswer answer;
+    private byte[] answerBytes;
+    private ContentChunk chunk;
+    private byte[] chunkBytes;
+
+    @Setup
+    public void build() {
+        record = AttendanceRecord.newBuilder()
+                .setStudentId("S12345")
+                .setStudentName("Aung Min Thant")
+                .setTimestamp("09:01:27.123456")
+                .setSequence(4217)
+                .build();
+        recordBytes = record.toByteArray();
+        answer = StudentAnswer.newBuilder()
+                .setStudentId("S12345")
+                .setQuizId("QUIZ1")
+                .setQuestionId("Q17")
+                .setSubmittedAnswer("Paris")
+                .build();
+        answerBytes = answer.toByteArray();
+        byte[] data = new byte[64 << 10];
+        ThreadLocalRandom.current().nextBytes(data);
+        chunk = ContentChunk.newBuilder()
+                .setFileName("lecture1.ppt")
+                .setOffset(1L << 20)
+                .setData(ByteString.copyFrom(data))
+                .build();
+        chunkBytes = chunk.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeAttendanceRecord() {
+        return record.toByteArray();
+    }
+
+    @Benchmark
+    public AttendanceRecord decodeAttendanceRecord() throws InvalidProtocolBufferException {
+        return AttendanceRecord.parseFrom(recordBytes);
+    }
+
+    @Benchmark
+    public byte[] encodeStudentAnswer() {
+        return answer.toByteArray();
+    }
+
+    @Benchmark
+    public StudentAnswer decodeStudentAnswer() throws InvalidProtocolBufferException {
+        return StudentAnswer.parseFrom(answerBytes);
+    }
+
+    @Benchmark
+    public byte[] encodeContentChunk() {
+        return chunk.toByteArray();
+    }
+
+    @Benchmark
+    public ContentChunk decodeContentChunk() throws InvalidProtocolBufferException {
+        return ContentChunk.parseFrom(chunkBytes);
+    }
+}
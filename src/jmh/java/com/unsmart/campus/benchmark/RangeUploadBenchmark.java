@@ -0,0 +1,182 @@
+package com.unsmart.campus.benchmark;
+
+import com.google.protobuf.ByteString;
+import com.unsmart.campus.content.ContentChunker;
+import com.unsmart.campus.content.ContentDeliveryServiceGrpc;
+import com.unsmart.campus.content.ContentServer;
+import com.unsmart.campus.content.StartUploadRequest;
+import com.unsmart.campus.content.UploadRange;
+import com.unsmart.campus.content.UploadRangeAck;
+import com.unsmart.campus.content.UploadSessionRequest;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A resumable upload of {@code size} fresh bytes in 1 MiB ranges spread over {@code streams}
+ * UploadRanges calls, over loopback TCP so that each stream has its own HTTP/2 flow-control
+ * window. Measured from StartUpload until every range is acknowledged; CompleteUpload, whose
+ * chunking and hashing do not depend on the stream count, runs after each invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RangeUploadBenchmark {
+    // Held so the level sticks; loggers are only weakly referenced by the LogManager
+    private static final Logger CAMPUS_LOGGER = Logger.getLogger("com.unsmart.campus");
+    private static final int RANGE_BYTES = 1 << 20;
+
+    @Param({"67108864"})
+    int size;
+
+    @Param({"1", "2", "4", "8"})
+    int streams;
+
+    private Path dataDirectory;
+    private ContentServer contentServer;
+    private Server server;
+    private ManagedChannel channel;
+    private ContentDeliveryServiceGrpc.ContentDeliveryServiceStub stub;
+    private byte[] file;
+    private UploadRange[] ranges;
+    private String sha256;
+    private String uploadId;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        CAMPUS_LOGGER.setLevel(java.util.logging.Level.WARNING);
+        dataDirectory = Files.createTempDirectory("range-upload-bench");
+        contentServer = new ContentServer(dataDirectory);
+        contentServer.recover();
+        server = ServerBuilder.forPort(0).addService(contentServer).build().start();
+        channel = ManagedChannelBuilder.forAddress("127.0.0.1", server.getPort()).usePlaintext().build();
+        stub = ContentDeliveryServiceGrpc.newStub(channel);
+        file = new byte[size];
+        ranges = new UploadRange[(size + RANGE_BYTES - 1) / RANGE_BYTES];
+    }
+
+    /** Fresh bytes each time, so completing one upload does not deduplicate the next. */
+    @Setup(Level.Invocation)
+    public void prepareFile() throws NoSuchAlgorithmException {
+        ThreadLocalRandom.current().nextBytes(file);
+        sha256 = ContentChunker.hex(MessageDigest.getInstance("SHA-256").digest(file));
+        for (int r = 0; r < ranges.length; r++) {
+            int offset = r * RANGE_BYTES;
+            int length = Math.min(RANGE_BYTES, size - offset);
+            CRC32C crc = new CRC32C();
+            crc.update(file, offset, length);
+            ranges[r] = UploadRange.newBuilder()
+                    .setOffset(offset)
+                    .setData(ByteString.copyFrom(file, offset, length))
+                    .setCrc32C((int) crc.getValue())
+                    .buildPartial();
+        }
+    }
+
+    @Benchmark
+    public String sendRanges() throws InterruptedException, ExecutionException {
+        uploadId = ContentDeliveryServiceGrpc.newBlockingStub(channel)
+                .startUpload(StartUploadRequest.newBuilder()
+                        .setFileName("lecture.mp4")
+                        .setTotalSize(size)
+                        .setSha256(sha256)
+                        .build())
+                .getUploadId();
+        CompletableFuture<?>[] acked = new CompletableFuture<?>[streams];
+        for (int s = 0; s < streams; s++) {
+            RangeStream stream = new RangeStream(s);
+            acked[s] = stream.done;
+            stub.uploadRanges(stream);
+        }
+        CompletableFuture.allOf(acked).get();
+        return uploadId;
+    }
+
+    @TearDown(Level.Invocation)
+    public void complete() {
+        ContentDeliveryServiceGrpc.newBlockingStub(channel)
+                .completeUpload(UploadSessionRequest.newBuilder().setUploadId(uploadId).build());
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException, InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        contentServer.stop();
+        InProcess.delete(dataDirectory);
+    }
+
+    /** Sends every {@code streams}-th range, starting at {@code first}, while the call is ready. */
+    private final class RangeStream implements ClientResponseObserver<UploadRange, UploadRangeAck> {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        private ClientCallStreamObserver<UploadRange> requests;
+        private int next;
+        private boolean closed;
+
+        RangeStream(int first) {
+            this.next = first;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<UploadRange> requests) {
+            this.requests = requests;
+            requests.setOnReadyHandler(this::send);
+        }
+
+        private synchronized void send() {
+            while (!closed && requests.isReady()) {
+                if (next >= ranges.length) {
+                    closed = true;
+                    requests.onCompleted();
+                    return;
+                }
+                requests.onNext(ranges[next].toBuilder().setUploadId(uploadId).build());
+                next += streams;
+            }
+        }
+
+        @Override
+        public void onNext(UploadRangeAck ack) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            done.completeExceptionally(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            done.complete(null);
+        }
+    }
+}
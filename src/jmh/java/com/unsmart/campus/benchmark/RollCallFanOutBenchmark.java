@@ -0,0 +1,128 @@
+package com.unsmart.campus.benchmark;
+
+import com.unsmart.campus.attendance.AttendanceRecord;
+import com.unsmart.campus.attendance.AttendanceServer;
+import com.unsmart.campus.attendance.AttendanceServiceGrpc;
+import com.unsmart.campus.attendance.CheckInRequest;
+import com.unsmart.campus.attendance.RollCallRequest;
+import com.unsmart.campus.attendance.Student;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One class's roll call watched by {@code subscribers} dashboards: the time from a check-in to
+ * every dashboard having received it. Setup prints the JVM's live thread count and its heap after
+ * a full GC once all the streams are open, which should stay flat as the subscribers grow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RollCallFanOutBenchmark {
+    // Held so the level sticks; loggers are only weakly referenced by the LogManager
+    private static final Logger CAMPUS_LOGGER = Logger.getLogger("com.unsmart.campus");
+    private static final String CLASS_ID = "HALL-1";
+
+    @Param({"10", "1000", "5000"})
+    int subscribers;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private long students;
+    private AttendanceServer attendance;
+    private ExecutorService executor;
+    private Server server;
+    private ManagedChannel channel;
+    private AttendanceServiceGrpc.AttendanceServiceBlockingStub stub;
+
+    @Setup
+    public void start() throws IOException {
+        long threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        CAMPUS_LOGGER.setLevel(Level.WARNING);
+        attendance = new AttendanceServer(null);
+        attendance.recover();
+        // Fixed pools on both ends, so the thread count is the service's and not the executors'
+        executor = Executors.newFixedThreadPool(4);
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).executor(executor).addService(attendance).build().start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        stub = AttendanceServiceGrpc.newBlockingStub(channel);
+        AttendanceServiceGrpc.AttendanceServiceStub async = AttendanceServiceGrpc.newStub(channel);
+        RollCallRequest request = RollCallRequest.newBuilder().setClassId(CLASS_ID).build();
+        for (int i = 0; i < subscribers; i++) {
+            async.streamAttendanceRecords(request, new StreamObserver<AttendanceRecord>() {
+                @Override
+                public void onNext(AttendanceRecord record) {
+                    delivered.incrementAndGet();
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            });
+        }
+        // Every stream opens with a heartbeat while the class is empty
+        awaitDelivered(subscribers);
+        System.gc();
+        System.out.printf("%n%d subscribers: %d live threads (%d before the server), %d MiB heap after GC%n",
+                subscribers, ManagementFactory.getThreadMXBean().getThreadCount(), threadsBefore,
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() >> 20);
+    }
+
+    @Benchmark
+    public long checkInAndFanOut() {
+        long number = ++students;
+        long target = delivered.get() + subscribers;
+        stub.checkInStudent(CheckInRequest.newBuilder()
+                .setClassId(CLASS_ID)
+                .setStudent(Student.newBuilder()
+                        .setStudentId("S" + number)
+                        .setStudentName("Student " + number))
+                .build());
+        awaitDelivered(target);
+        return number;
+    }
+
+    private void awaitDelivered(long target) {
+        while (delivered.get() < target) {
+            LockSupport.parkNanos(1_000);
+        }
+    }
+
+    @TearDown
+    public void stop() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        attendance.stop();
+        executor.shutdownNow();
+    }
+}
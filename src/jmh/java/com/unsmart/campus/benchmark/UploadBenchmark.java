@@ -0,0 +1,124 @@
+package com.unsmart.campus.benchmark;
+
+import com.google.protobuf.ByteString;
+import com.unsmart.campus.content.ContentChunk;
+import com.unsmart.campus.content.ContentDeliveryServiceGrpc;
+import com.unsmart.campus.content.ContentServer;
+import com.unsmart.campus.content.UploadContentResponse;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * UploadPresentation of a whole file in 64 KiB messages: content-defined chunking, hashing and
+ * storing on the server. {@code new} content is fresh random bytes every time; {@code duplicate}
+ * re-sends the same bytes, so every chunk is already in the store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UploadBenchmark {
+    private static final int MESSAGE_BYTES = 64 << 10;
+
+    @Param({"1048576", "16777216"})
+    int size;
+
+    @Param({"new", "duplicate"})
+    String content;
+
+    private byte[] file;
+    private List<ContentChunk> chunks;
+    private Path dataDirectory;
+    private ContentServer contentServer;
+    private InProcess host;
+    private ContentDeliveryServiceGrpc.ContentDeliveryServiceStub stub;
+
+    @Setup(Level.Iteration)
+    public void start() throws IOException {
+        dataDirectory = Files.createTempDirectory("upload-bench");
+        contentServer = new ContentServer(dataDirectory);
+        contentServer.recover();
+        host = new InProcess(contentServer);
+        stub = ContentDeliveryServiceGrpc.newStub(host.channel);
+        file = new byte[size];
+        ThreadLocalRandom.current().nextBytes(file);
+        chunks = split(file);
+    }
+
+    /** Runs outside the measured time; uploads are long enough for per-invocation setup. */
+    @Setup(Level.Invocation)
+    public void prepareFile() {
+        if (content.equals("new")) {
+            ThreadLocalRandom.current().nextBytes(file);
+            chunks = split(file);
+        }
+    }
+
+    private static List<ContentChunk> split(byte[] file) {
+        List<ContentChunk> chunks = new ArrayList<>();
+        for (int offset = 0; offset < file.length; offset += MESSAGE_BYTES) {
+            int length = Math.min(MESSAGE_BYTES, file.length - offset);
+            chunks.add(ContentChunk.newBuilder()
+                    .setFileName("deck.pptx")
+                    .setOffset(offset)
+                    .setData(ByteString.copyFrom(file, offset, length))
+                    .build());
+        }
+        return chunks;
+    }
+
+    @Benchmark
+    public UploadContentResponse upload() throws InterruptedException, ExecutionException {
+        CompletableFuture<UploadContentResponse> stored = new CompletableFuture<>();
+        StreamObserver<ContentChunk> upload = stub.uploadPresentation(new StreamObserver<UploadContentResponse>() {
+            @Override
+            public void onNext(UploadContentResponse response) {
+                stored.complete(response);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                stored.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        for (ContentChunk chunk : chunks) {
+            upload.onNext(chunk);
+        }
+        upload.onCompleted();
+        return stored.get();
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() throws IOException, InterruptedException {
+        host.close();
+        contentServer.stop();
+        InProcess.delete(dataDirectory);
+    }
+}
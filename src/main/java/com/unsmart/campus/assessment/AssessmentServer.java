@@ -1,23 +1,46 @@
 package com.unsmart.campus.assessment;
 
+import com.unsmart.campus.executor.CallExecutor;
 import com.unsmart.campus.jmdns.ServiceRegistration;
+import com.unsmart.campus.metrics.RpcMetrics;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 public class AssessmentServer extends AssessmentServiceGrpc.AssessmentServiceImplBase {
     private static final Logger logger = Logger.getLogger(AssessmentServer.class.getName());
-    private static final int PORT = 50053;
+    // 0 picks a free port, for running further replicas on the same host
+    private static final int PORT = Integer.getInteger("assessment.port", 50053);
+    // 0 emits each student's result once, when the answer stream completes
+    private static final long FLUSH_INTERVAL_MS = Long.getLong("assessment.flush.interval.ms", 0);
     private Server server;
-    private final ConcurrentMap<String, SetQuizRequest> activeQuizzes = new ConcurrentHashMap<>();
+    private CallExecutor callExecutor;
+    private ServiceRegistration registration;
+    private final ConcurrentMap<String, GradingIndex> activeQuizzes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final GradingPipeline pipeline;
+
+    public AssessmentServer() {
+        this(Integer.getInteger("assessment.grading.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Creates a server grading answers on {@code gradingThreads} threads, one per pipeline lane. */
+    public AssessmentServer(int gradingThreads) {
+        this.pipeline = new GradingPipeline(gradingThreads);
+        pipeline.publish();
+    }
 
     @Override
     public void setQuiz(SetQuizRequest request, StreamObserver<SetQuizResponse> responseObserver) {
-        activeQuizzes.put(request.getQuizId(), request);
+        activeQuizzes.put(request.getQuizId(), GradingIndex.compile(request));
         responseObserver.onNext(SetQuizResponse.newBuilder()
                 .setSuccess(true)
                 .setMessage("Quiz set successfully")
@@ -27,52 +50,42 @@ public class AssessmentServer extends AssessmentServiceGrpc.AssessmentServiceImp
 
     @Override
     public StreamObserver<StudentAnswer> getQuizResults(StreamObserver<AssessmentResult> responseObserver) {
-        return new StreamObserver<StudentAnswer>() {
-            @Override
-            public void onNext(StudentAnswer answer) {
-                SetQuizRequest quiz = activeQuizzes.get(answer.getQuizId());
-                if (quiz != null) {
-                    int score = 0;
-                    for (QuizQuestion q : quiz.getQuestionsList()) {
-                        if (q.getQuestionId().equals(answer.getQuestionId()) && 
-                            q.getCorrectAnswer().equals(answer.getSubmittedAnswer())) {
-                            score++;
-                        }
-                    }
-                    responseObserver.onNext(AssessmentResult.newBuilder()
-                            .setStudentId(answer.getStudentId())
-                            .setQuizId(answer.getQuizId())
-                            .setScore(score)
-                            .setTotalQuestions(quiz.getQuestionsCount())
-                            .build());
-                }
-            }
-
-            @Override
-            public void onError(Throwable t) {
-                logger.warning("Error processing answers: " + t.getMessage());
-            }
-
-            @Override
-            public void onCompleted() {
-                responseObserver.onCompleted();
-            }
-        };
+        return new QuizResultsStream(activeQuizzes,
+                (ServerCallStreamObserver<AssessmentResult>) responseObserver, pipeline, scheduler, FLUSH_INTERVAL_MS);
     }
 
     public void start() throws IOException {
-        server = ServerBuilder.forPort(PORT)
+        callExecutor = CallExecutor.forService("assessment");
+        server = callExecutor.applyTo(ServerBuilder.forPort(PORT))
                 .addService(this)
+                .intercept(RpcMetrics.serverInterceptor())
+                // Clients ping every 30 s by default to keep long streams alive
+                .permitKeepAliveTime(20, TimeUnit.SECONDS)
                 .build()
                 .start();
-        ServiceRegistration.registerService("AssessmentService", "_grpc._tcp.local.", PORT, "Assessment service");
+        registration = ServiceRegistration.registerService("AssessmentService", "_grpc._tcp.local.", server.getPort(), "Assessment service");
         Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
     }
 
-    private void stop() {
+    /** Stops serving and shuts down the threads and files the service holds. */
+    public void stop() {
+        if (registration != null) {
+            registration.close();
+            registration = null;
+        }
         if (server != null) {
             server.shutdown();
         }
+        if (callExecutor != null) {
+            callExecutor.close();
+        }
+        scheduler.shutdown();
+        pipeline.shutdown();
+    }
+
+    /** Answers accepted but not yet graded, across all open GetQuizResults calls. */
+    public long gradingQueueDepth() {
+        return pipeline.getQueueDepth();
     }
 
     public void blockUntilShutdown() throws InterruptedException {
@@ -0,0 +1,63 @@
+package com.unsmart.campus.assessment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable answer key compiled from a {@link SetQuizRequest} when the quiz is set.
+ * Each question gets a dense index, so grading an answer is one hash lookup plus an
+ * equality check instead of a scan over the whole question list.
+ */
+public final class GradingIndex {
+    private final String quizId;
+    private final Map<String, Integer> questionIndexes;
+    private final String[] correctAnswers;
+
+    private GradingIndex(String quizId, Map<String, Integer> questionIndexes, String[] correctAnswers) {
+        this.quizId = quizId;
+        this.questionIndexes = questionIndexes;
+        this.correctAnswers = correctAnswers;
+    }
+
+    public static GradingIndex compile(SetQuizRequest quiz) {
+        List<QuizQuestion> questions = quiz.getQuestionsList();
+        Map<String, Integer> indexes = new HashMap<>(questions.size() * 2);
+        String[] answers = new String[questions.size()];
+        int next = 0;
+        for (QuizQuestion question : questions) {
+            // A repeated question id keeps its first definition
+            if (indexes.putIfAbsent(question.getQuestionId().intern(), next) == null) {
+                answers[next++] = question.getCorrectAnswer();
+            }
+        }
+        String[] compact = next == answers.length ? answers : Arrays.copyOf(answers, next);
+        return new GradingIndex(quiz.getQuizId(), Collections.unmodifiableMap(indexes), compact);
+    }
+
+    String quizId() {
+        return quizId;
+    }
+
+    int totalQuestions() {
+        return correctAnswers.length;
+    }
+
+    /** Returns the dense index of a question, or -1 if the quiz has no such question. */
+    int questionIndex(String questionId) {
+        Integer index = questionIndexes.get(questionId);
+        return index == null ? -1 : index;
+    }
+
+    boolean isCorrect(int questionIndex, String submittedAnswer) {
+        return correctAnswers[questionIndex].equals(submittedAnswer);
+    }
+
+    /** Scores a single answer: 1 if it matches the key for its question, otherwise 0. */
+    public int grade(StudentAnswer answer) {
+        int index = questionIndex(answer.getQuestionId());
+        return index >= 0 && isCorrect(index, answer.getSubmittedAnswer()) ? 1 : 0;
+    }
+}
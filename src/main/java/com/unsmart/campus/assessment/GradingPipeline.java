@@ -0,0 +1,109 @@
+package com.unsmart.campus.assessment;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Shared grading engine for all GetQuizResults calls. Each call splits its answers into
+ * {@link #lanes()} partitions by student id; a partition grades whatever has queued up
+ * since its last run as one batch on the fork-join pool, and never runs twice at once, so
+ * answers from the same student are graded in arrival order while different partitions
+ * use every core. Its counters are published as a {@link GradingPipelineMXBean}; with several
+ * servers in one process, the first one's are.
+ */
+final class GradingPipeline implements GradingPipelineMXBean {
+    private static final Logger logger = Logger.getLogger(GradingPipeline.class.getName());
+
+    private final ForkJoinPool pool;
+    private final int lanes;
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final LongAdder graded = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    // Null unless this pipeline's counters are the ones published
+    private ObjectName published;
+
+    GradingPipeline(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        this.lanes = parallelism;
+    }
+
+    /** Publishes the counters over JMX, unless another pipeline in the process already has. */
+    void publish() {
+        try {
+            ObjectName name = new ObjectName("com.unsmart.campus:type=GradingPipeline");
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            published = name;
+        } catch (InstanceAlreadyExistsException e) {
+            logger.fine("Grading metrics already published by another server");
+        } catch (JMException e) {
+            logger.warning("Could not publish grading metrics: " + e.getMessage());
+        }
+    }
+
+    int lanes() {
+        return lanes;
+    }
+
+    @Override
+    public int getLanes() {
+        return lanes;
+    }
+
+    int laneOf(String studentId) {
+        return Math.floorMod(studentId.hashCode(), lanes);
+    }
+
+    Executor executor() {
+        return pool;
+    }
+
+    void queued(int answers) {
+        queueDepth.addAndGet(answers);
+    }
+
+    void graded(int answers) {
+        queueDepth.addAndGet(-answers);
+        graded.add(answers);
+        batches.increment();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    @Override
+    public long getGradedAnswers() {
+        return graded.sum();
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    void shutdown() {
+        if (published != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(published);
+            } catch (JMException e) {
+                logger.fine("Grading metrics were already unpublished: " + e.getMessage());
+            }
+            published = null;
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.unsmart.campus.assessment;
+
+/**
+ * The shared grading engine's counters, published over JMX under
+ * {@code com.unsmart.campus:type=GradingPipeline}. Graded answers divided by batches is how many
+ * answers a partition grades per run, which grows as answers arrive faster than they are graded.
+ */
+public interface GradingPipelineMXBean {
+    /** Answers accepted from clients but not yet graded, across all calls. */
+    long getQueueDepth();
+
+    long getGradedAnswers();
+
+    long getBatches();
+
+    int getLanes();
+}
@@ -0,0 +1,184 @@
+package com.unsmart.campus.assessment;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Server side of one GetQuizResults call with manual flow control in both directions.
+ * Answers are handed to the shared {@link GradingPipeline}, partitioned by student, and
+ * more are only requested while fewer than {@link #MAX_IN_FLIGHT} are waiting to be graded.
+ * With a flush interval, more are also only requested while the outbound stream is ready, so a
+ * fast submitter facing a slow reader stalls in gRPC flow control rather than in server
+ * memory; without one nothing is written until the last answer is graded, so answers keep
+ * flowing and only the final results wait for the reader. Either way results are written only
+ * while the call is ready and pending output never exceeds one result per student.
+ */
+final class QuizResultsStream implements StreamObserver<StudentAnswer> {
+    private static final Logger logger = Logger.getLogger(QuizResultsStream.class.getName());
+    static final int MAX_IN_FLIGHT = 4096;
+
+    private final ConcurrentMap<String, GradingIndex> activeQuizzes;
+    private final ServerCallStreamObserver<AssessmentResult> responseObserver;
+    private final GradingPipeline pipeline;
+    private final Partition[] partitions;
+    private final ScheduledFuture<?> flush;
+    // Guarded by this
+    private int inFlight;
+    private boolean awaitingInput;
+    private boolean inputCompleted;
+    private boolean finished;
+
+    QuizResultsStream(ConcurrentMap<String, GradingIndex> activeQuizzes,
+                      ServerCallStreamObserver<AssessmentResult> responseObserver,
+                      GradingPipeline pipeline, ScheduledExecutorService scheduler, long flushIntervalMs) {
+        this.activeQuizzes = activeQuizzes;
+        this.responseObserver = responseObserver;
+        this.pipeline = pipeline;
+        this.partitions = new Partition[pipeline.lanes()];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition();
+        }
+        responseObserver.disableAutoRequest();
+        responseObserver.setOnReadyHandler(this::onReady);
+        responseObserver.setOnCancelHandler(this::cancelFlush);
+        this.flush = flushIntervalMs > 0
+                ? scheduler.scheduleAtFixedRate(this::emit, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS)
+                : null;
+        responseObserver.request(1);
+    }
+
+    @Override
+    public void onNext(StudentAnswer answer) {
+        GradingIndex quiz = activeQuizzes.get(answer.getQuizId());
+        if (quiz != null) {
+            synchronized (this) {
+                inFlight++;
+            }
+            pipeline.queued(1);
+            partitions[pipeline.laneOf(answer.getStudentId())].submit(quiz, answer);
+        }
+        synchronized (this) {
+            requestNext();
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        cancelFlush();
+        logger.warning("Error processing answers: " + t.getMessage());
+    }
+
+    @Override
+    public void onCompleted() {
+        cancelFlush();
+        synchronized (this) {
+            inputCompleted = true;
+            emit();
+        }
+    }
+
+    private synchronized void onReady() {
+        if (awaitingInput) {
+            requestNext();
+        }
+        emit();
+    }
+
+    private synchronized void graded(int answers) {
+        inFlight -= answers;
+        if (awaitingInput) {
+            requestNext();
+        }
+        emit();
+    }
+
+    private void requestNext() {
+        if (inFlight < MAX_IN_FLIGHT && (flush == null || responseObserver.isReady())) {
+            awaitingInput = false;
+            responseObserver.request(1);
+        } else {
+            awaitingInput = true;
+        }
+    }
+
+    /** Writes pending results while the call is ready and completes it once everything is graded and sent. */
+    private synchronized void emit() {
+        if (finished || responseObserver.isCancelled()) {
+            return;
+        }
+        if (flush == null && (!inputCompleted || inFlight > 0)) {
+            // Without a flush interval each result is sent once, after the last answer is graded
+            return;
+        }
+        boolean pending = false;
+        for (Partition partition : partitions) {
+            synchronized (partition) {
+                while (partition.scoreboard.hasChanged() && responseObserver.isReady()) {
+                    responseObserver.onNext(partition.scoreboard.pollChanged());
+                }
+                pending |= partition.scoreboard.hasChanged();
+            }
+        }
+        if (inputCompleted && inFlight == 0 && !pending) {
+            finished = true;
+            responseObserver.onCompleted();
+        }
+    }
+
+    private void cancelFlush() {
+        if (flush != null) {
+            flush.cancel(false);
+        }
+    }
+
+    /** The answers and running scores of the students that hash to one pipeline lane. */
+    private final class Partition {
+        // Guarded by this partition
+        private final QuizScoreboard scoreboard = new QuizScoreboard();
+        private List<GradingIndex> quizzes = new ArrayList<>();
+        private List<StudentAnswer> answers = new ArrayList<>();
+        private boolean scheduled;
+
+        void submit(GradingIndex quiz, StudentAnswer answer) {
+            synchronized (this) {
+                quizzes.add(quiz);
+                answers.add(answer);
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            pipeline.executor().execute(this::drain);
+        }
+
+        /** Grades everything queued since the last run as one batch, until the queue stays empty. */
+        private void drain() {
+            while (true) {
+                int batchSize;
+                synchronized (this) {
+                    batchSize = answers.size();
+                    if (batchSize == 0) {
+                        scheduled = false;
+                        return;
+                    }
+                    List<GradingIndex> batchQuizzes = quizzes;
+                    List<StudentAnswer> batch = answers;
+                    quizzes = new ArrayList<>();
+                    answers = new ArrayList<>();
+                    for (int i = 0; i < batchSize; i++) {
+                        scoreboard.record(batchQuizzes.get(i), batch.get(i));
+                    }
+                }
+                pipeline.graded(batchSize);
+                QuizResultsStream.this.graded(batchSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.unsmart.campus.assessment;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running per-(student, quiz) scores for one GetQuizResults stream. Students are numbered
+ * densely in the order they first answer, and each quiz keeps its scores in one {@code long[]}
+ * of answer bits, a fixed number of words per student over the quiz's dense question indexes,
+ * so a resubmitted answer replaces the earlier one instead of being counted twice and a score
+ * is the bit count of the student's words. Changed scores wait in order as (quiz, student
+ * number) pairs, each queued at most once, so pending output never exceeds one result per
+ * student; a student answering a quiz that was re-set withdraws their result for the earlier
+ * one. Recording an answer allocates nothing once the student has a number. Not
+ * thread-safe; callers synchronise.
+ */
+final class QuizScoreboard {
+    // Student ids by number; a stream sees each id once, however many answers it carries
+    private final Map<String, Integer> studentIndexes = new HashMap<>();
+    private String[] studentIds = new String[16];
+    // Quiz id to its scores; a stream rarely carries more than one quiz
+    private final Map<String, QuizScores> quizzes = new HashMap<>(4);
+    // Changed scores, oldest first, as a ring of (quiz, student number) pairs; a pair whose
+    // queued bit was cleared by a quiz re-set is skipped when polled
+    private QuizScores[] changedQuizzes = new QuizScores[16];
+    private int[] changedStudents = new int[16];
+    private int changedHead;
+    private int changedCount;
+    private int pending;
+
+    /** Grades the answer and folds it into the student's running score. */
+    void record(GradingIndex quiz, StudentAnswer answer) {
+        QuizScores scores = quizzes.get(answer.getQuizId());
+        if (scores == null || scores.quiz != quiz) {
+            // A quiz re-set mid-stream starts its scores afresh
+            scores = new QuizScores(quiz, scores);
+            quizzes.put(answer.getQuizId(), scores);
+        }
+        int student = studentIndex(answer.getStudentId());
+        if (scores.ensureStudent(student)) {
+            // The student's result for the quiz as it was set before is superseded
+            for (QuizScores earlier = scores.replaced; earlier != null; earlier = earlier.replaced) {
+                if (earlier.queued.get(student)) {
+                    earlier.queued.clear(student);
+                    pending--;
+                }
+            }
+        }
+        int question = quiz.questionIndex(answer.getQuestionId());
+        if (question >= 0) {
+            scores.set(student, question, quiz.isCorrect(question, answer.getSubmittedAnswer()));
+        }
+        if (!scores.queued.get(student)) {
+            scores.queued.set(student);
+            pending++;
+            enqueue(scores, student);
+        }
+    }
+
+    private int studentIndex(String studentId) {
+        Integer index = studentIndexes.get(studentId);
+        if (index == null) {
+            index = studentIndexes.size();
+            if (index == studentIds.length) {
+                studentIds = Arrays.copyOf(studentIds, index * 2);
+            }
+            studentIds[index] = studentId;
+            studentIndexes.put(studentId, index);
+        }
+        return index;
+    }
+
+    private void enqueue(QuizScores scores, int student) {
+        if (changedCount == changedQuizzes.length) {
+            // Unroll the ring into arrays twice the size
+            int capacity = changedCount * 2;
+            QuizScores[] quizzesGrown = new QuizScores[capacity];
+            int[] studentsGrown = new int[capacity];
+            for (int i = 0; i < changedCount; i++) {
+                int slot = (changedHead + i) % changedQuizzes.length;
+                quizzesGrown[i] = changedQuizzes[slot];
+                studentsGrown[i] = changedStudents[slot];
+            }
+            changedQuizzes = quizzesGrown;
+            changedStudents = studentsGrown;
+            changedHead = 0;
+        }
+        int tail = (changedHead + changedCount) % changedQuizzes.length;
+        changedQuizzes[tail] = scores;
+        changedStudents[tail] = student;
+        changedCount++;
+    }
+
+    boolean hasChanged() {
+        return pending > 0;
+    }
+
+    /** Returns the result of the next student whose score changed since it was last polled, or {@code null}. */
+    AssessmentResult pollChanged() {
+        QuizScores scores;
+        int student;
+        do {
+            if (changedCount == 0) {
+                return null;
+            }
+            scores = changedQuizzes[changedHead];
+            student = changedStudents[changedHead];
+            changedQuizzes[changedHead] = null;
+            changedHead = (changedHead + 1) % changedQuizzes.length;
+            changedCount--;
+        } while (!scores.queued.get(student));
+        scores.queued.clear(student);
+        pending--;
+        return AssessmentResult.newBuilder()
+                .setStudentId(studentIds[student])
+                .setQuizId(scores.quiz.quizId())
+                .setScore(scores.score(student))
+                .setTotalQuestions(scores.quiz.totalQuestions())
+                .build();
+    }
+
+    /** One quiz's scores: {@code words} longs of correct-answer bits per student number. */
+    private static final class QuizScores {
+        final GradingIndex quiz;
+        // The scores of the same quiz id as it was set before, or null
+        final QuizScores replaced;
+        final int words;
+        // Students with a score, and those with a result waiting to be polled
+        final BitSet scored = new BitSet();
+        final BitSet queued = new BitSet();
+        long[] correct;
+
+        QuizScores(GradingIndex quiz, QuizScores replaced) {
+            this.quiz = quiz;
+            this.replaced = replaced;
+            this.words = Math.max(1, (quiz.totalQuestions() + 63) >>> 6);
+            this.correct = new long[words * 16];
+        }
+
+        /** Makes room for the student's score; returns whether this is their first answer. */
+        boolean ensureStudent(int student) {
+            if (scored.get(student)) {
+                return false;
+            }
+            scored.set(student);
+            int required = (student + 1) * words;
+            if (required > correct.length) {
+                correct = Arrays.copyOf(correct, Math.max(required, correct.length * 2));
+            }
+            return true;
+        }
+
+        void set(int student, int question, boolean isCorrect) {
+            int word = student * words + (question >>> 6);
+            long bit = 1L << question;
+            correct[word] = isCorrect ? correct[word] | bit : correct[word] & ~bit;
+        }
+
+        int score(int student) {
+            int score = 0;
+            for (int word = student * words, end = word + words; word < end; word++) {
+                score += Long.bitCount(correct[word]);
+            }
+            return score;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.unsmart.campus.attendance;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.buffer.BufferFastAggregation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+/**
+ * A class's attendance over the semester as one compressed (Roaring) bitmap per session, with a
+ * bit set for each student present. Students are numbered densely in the order they first check
+ * in, so even a 10k-student class's bitmaps fit in a single Roaring container each, and semester
+ * figures come from cardinalities and ANDs of those bitmaps rather than from the check-in records.
+ *
+ * <p>Histories can be written to an archive whose bitmaps are in Roaring's portable format;
+ * {@link #open} maps one read-only, so reports can be run over a semester without loading it.
+ */
+final class AttendanceHistory {
+    private static final int ARCHIVE_MAGIC = 0x41544842;
+
+    // Null for an archived history, which is read-only; record, the only writer, holds the
+    // monitor while it uses it
+    private final Map<String, Integer> indexes;
+    // Replaced whole by each check-in that changes it, so readers never take the monitor
+    private volatile Snapshot snapshot;
+
+    AttendanceHistory() {
+        this(new HashMap<>(), new Snapshot(new String[16], 0, new String[0], new ImmutableRoaringBitmap[0]));
+    }
+
+    private AttendanceHistory(Map<String, Integer> indexes, Snapshot snapshot) {
+        this.indexes = indexes;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * The history as of a point in time: students and sessions by index, sessions sorted by id.
+     * Nothing reachable from a published snapshot changes afterwards, except the student id slots
+     * at and above its {@code studentCount}, which it never reads.
+     */
+    private static final class Snapshot {
+        final String[] studentIds;
+        final int studentCount;
+        final String[] sessionIds;
+        final ImmutableRoaringBitmap[] sessions;
+
+        Snapshot(String[] studentIds, int studentCount, String[] sessionIds, ImmutableRoaringBitmap[] sessions) {
+            this.studentIds = studentIds;
+            this.studentCount = studentCount;
+            this.sessionIds = sessionIds;
+            this.sessions = sessions;
+        }
+    }
+
+    /**
+     * Marks the student present at the session; returns false if they already were. The session's
+     * bitmap is copied rather than changed, so analytics reading the previous snapshot hold up no
+     * check-in.
+     */
+    synchronized boolean record(String sessionId, String studentId) {
+        if (indexes == null) {
+            throw new IllegalStateException("An archived attendance history is read-only");
+        }
+        Snapshot current = snapshot;
+        String[] studentIds = current.studentIds;
+        int studentCount = current.studentCount;
+        Integer index = indexes.get(studentId);
+        if (index == null) {
+            index = studentCount;
+            if (studentCount == studentIds.length) {
+                studentIds = Arrays.copyOf(studentIds, studentCount * 2);
+            }
+            studentIds[studentCount++] = studentId;
+            indexes.put(studentId, index);
+        }
+        String[] sessionIds = current.sessionIds;
+        ImmutableRoaringBitmap[] sessions;
+        MutableRoaringBitmap present;
+        int position = Arrays.binarySearch(sessionIds, sessionId);
+        if (position >= 0) {
+            if (current.sessions[position].contains(index)) {
+                return false;
+            }
+            present = current.sessions[position].toMutableRoaringBitmap();
+            sessions = current.sessions.clone();
+        } else {
+            position = -position - 1;
+            present = new MutableRoaringBitmap();
+            sessionIds = insert(sessionIds, position, sessionId);
+            sessions = insert(current.sessions, position, null);
+        }
+        present.add(index);
+        sessions[position] = present;
+        snapshot = new Snapshot(studentIds, studentCount, sessionIds, sessions);
+        return true;
+    }
+
+    private static <T> T[] insert(T[] array, int position, T element) {
+        T[] grown = Arrays.copyOf(array, array.length + 1);
+        System.arraycopy(array, position, grown, position + 1, array.length - position);
+        grown[position] = element;
+        return grown;
+    }
+
+    /**
+     * Each session's head count, each student's share of the sessions held, the students whose
+     * share is below {@code threshold}, and the students present at every one of
+     * {@code allOfSessions}.
+     */
+    AttendanceAnalyticsResponse analyse(double threshold, Collection<String> allOfSessions) {
+        Snapshot history = snapshot;
+        AttendanceAnalyticsResponse.Builder response = AttendanceAnalyticsResponse.newBuilder();
+        int[] attended = new int[history.studentCount];
+        IntConsumer count = student -> attended[student]++;
+        for (int s = 0; s < history.sessions.length; s++) {
+            response.addSessions(SessionAttendance.newBuilder()
+                    .setSessionId(history.sessionIds[s])
+                    .setPresent(history.sessions[s].getCardinality()));
+            history.sessions[s].forEach(count);
+        }
+        int held = history.sessions.length;
+        for (int student = 0; student < attended.length; student++) {
+            double rate = held == 0 ? 0 : (double) attended[student] / held;
+            response.addRates(StudentAttendanceRate.newBuilder()
+                    .setStudentId(history.studentIds[student])
+                    .setSessionsAttended(attended[student])
+                    .setRate(rate));
+            if (rate < threshold) {
+                response.addBelowThreshold(history.studentIds[student]);
+            }
+        }
+
+        List<ImmutableRoaringBitmap> required = new ArrayList<>(allOfSessions.size());
+        for (String sessionId : allOfSessions) {
+            int position = Arrays.binarySearch(history.sessionIds, sessionId);
+            if (position < 0) {
+                // Nobody attended a session that was never held
+                return response.build();
+            }
+            required.add(history.sessions[position]);
+        }
+        if (!required.isEmpty()) {
+            BufferFastAggregation.and(required.iterator())
+                    .forEach((IntConsumer) student -> response.addAttendedAll(history.studentIds[student]));
+        }
+        return response.build();
+    }
+
+    int sessionCount() {
+        return snapshot.sessions.length;
+    }
+
+    int studentCount() {
+        return snapshot.studentCount;
+    }
+
+    private void writeTo(DataOutput out) throws IOException {
+        Snapshot history = snapshot;
+        out.writeInt(history.studentCount);
+        for (int student = 0; student < history.studentCount; student++) {
+            writeString(out, history.studentIds[student]);
+        }
+        out.writeInt(history.sessions.length);
+        for (int s = 0; s < history.sessions.length; s++) {
+            ImmutableRoaringBitmap present = history.sessions[s];
+            writeString(out, history.sessionIds[s]);
+            out.writeInt(present.serializedSizeInBytes());
+            present.serialize(out);
+        }
+    }
+
+    /**
+     * Writes the histories, by class id, to an archive at {@code path}, replacing it atomically.
+     * Archive: {@code [magic][class count]}, then per class {@code [class id][student count]
+     * [student ids][session count]} and per session {@code [session id][length][bitmap]}.
+     */
+    static void writeArchive(Path path, Map<String, AttendanceHistory> histories) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(ARCHIVE_MAGIC);
+            out.writeInt(histories.size());
+            for (Map.Entry<String, AttendanceHistory> entry : histories.entrySet()) {
+                writeString(out, entry.getKey());
+                entry.getValue().writeTo(out);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps an archive written by {@link #writeArchive}. The histories it returns are read-only and
+     * read their bitmaps straight from the mapped file.
+     */
+    static Map<String, AttendanceHistory> open(Path path) throws IOException {
+        ByteBuffer archive;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            archive = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (archive.getInt() != ARCHIVE_MAGIC) {
+            throw new IOException("Unrecognised attendance history archive " + path);
+        }
+        int classCount = archive.getInt();
+        Map<String, AttendanceHistory> histories = new LinkedHashMap<>();
+        for (int c = 0; c < classCount; c++) {
+            String classId = readString(archive);
+            int studentCount = archive.getInt();
+            String[] studentIds = new String[studentCount];
+            for (int i = 0; i < studentCount; i++) {
+                studentIds[i] = readString(archive);
+            }
+            int sessionCount = archive.getInt();
+            String[] sessionIds = new String[sessionCount];
+            ImmutableRoaringBitmap[] sessions = new ImmutableRoaringBitmap[sessionCount];
+            for (int s = 0; s < sessionCount; s++) {
+                sessionIds[s] = readString(archive);
+                int length = archive.getInt();
+                sessions[s] = new ImmutableRoaringBitmap(archive.slice(archive.position(), length));
+                archive.position(archive.position() + length);
+            }
+            AttendanceHistory history =
+                    new AttendanceHistory(null, new Snapshot(studentIds, studentCount, sessionIds, sessions));
+            histories.put(classId, history);
+        }
+        return histories;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,426 @@
+package com.unsmart.campus.attendance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of check-ins backed by a {@link FileChannel}.
+ *
+ * <p>Appends are queued and written by a single journal thread that takes everything queued
+ * since its last write, writes it with one gather write and a single {@code force}, then
+ * completes the callers' futures (group commit). Once enough entries have accumulated, the
+ * journal thread freezes how far each class's log has got, seals the log as a numbered segment
+ * and carries on in a fresh one; a separate snapshot thread then writes a compact per-class
+ * snapshot of the frozen view and deletes the sealed segments. Commits never wait for a snapshot,
+ * and recovery only has to read the snapshot plus a bounded log tail, from which each class's
+ * {@link AttendanceHistory} is rebuilt.
+ *
+ * <p>Log entries are {@code [length][crc32][class, student id, name, timestamp, sequence, session]};
+ * a torn or corrupt tail is dropped on recovery. Entries and snapshots written before check-ins
+ * had sessions recover into the session with an empty id.
+ */
+class AttendanceJournal implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(AttendanceJournal.class.getName());
+    private static final String LOG_FILE = "attendance.log";
+    // Sealed segments are LOG_FILE + "." + number, waiting for a snapshot to cover them
+    private static final String SEGMENT_PREFIX = LOG_FILE + ".";
+    private static final String SNAPSHOT_FILE = "attendance.snapshot";
+    // A history archive earlier versions wrote with every snapshot but never read back
+    private static final String STALE_HISTORY_FILE = "attendance.history";
+    private static final int SNAPSHOT_MAGIC = 0x41545353;
+    // Snapshots whose records carry their session
+    private static final int SESSIONS_SNAPSHOT_MAGIC = 0x41545354;
+    private static final Pending CLOSE = new Pending(new byte[0], 0, null);
+
+    private final Path directory;
+    private final int snapshotEvery;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "attendance-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private FileChannel log;
+    private AttendanceStore store;
+    // Journal thread only, once recovered
+    private int entriesSinceSnapshot;
+    private long nextSegment;
+    private CompletableFuture<Void> snapshotting = CompletableFuture.completedFuture(null);
+    private volatile boolean closed;
+
+    AttendanceJournal(Path directory, int snapshotEvery) {
+        this.directory = directory;
+        this.snapshotEvery = snapshotEvery;
+        this.writer = new Thread(this::writeLoop, "attendance-journal");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Loads the snapshot and replays any sealed segments and the log tail into {@code store},
+     * then starts accepting appends. Returns the number of recovered check-ins.
+     */
+    int recover(AttendanceStore store) throws IOException {
+        this.store = store;
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(STALE_HISTORY_FILE));
+        int recovered = readSnapshot(store);
+        Map<String, List<AttendanceRecord>> tail = new HashMap<>();
+        // Segments a snapshot did not get to cover before the last shutdown or crash
+        for (Map.Entry<Long, Path> segment : sealedSegments().entrySet()) {
+            try (FileChannel channel = FileChannel.open(segment.getValue(), StandardOpenOption.READ)) {
+                replayLog(channel, tail);
+            }
+            nextSegment = segment.getKey() + 1;
+        }
+        log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long validLength = replayLog(log, tail);
+        if (validLength < log.size()) {
+            logger.warning("Dropping " + (log.size() - validLength) + " bytes of torn journal tail");
+            log.truncate(validLength);
+        }
+        log.position(validLength);
+        // Group commit may have written a class's entries slightly out of sequence order
+        for (Map.Entry<String, List<AttendanceRecord>> entry : tail.entrySet()) {
+            entry.getValue().sort(Comparator.comparingLong(AttendanceRecord::getSequence));
+            entriesSinceSnapshot += store.restore(entry.getKey(), entry.getValue()).size();
+        }
+        recovered += entriesSinceSnapshot;
+        writer.start();
+        return recovered;
+    }
+
+    /** Sealed log segments by number, oldest first. */
+    private SortedMap<Long, Path> sealedSegments() throws IOException {
+        SortedMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*")) {
+            for (Path path : paths) {
+                try {
+                    segments.put(Long.parseLong(path.getFileName().toString().substring(SEGMENT_PREFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    logger.warning("Ignoring unexpected journal file " + path);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /** Queues records for durable storage; the future completes once they are on disk. */
+    CompletableFuture<Void> append(String classId, List<AttendanceRecord> records) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Pending pending = new Pending(encode(classId, records), records.size(), done);
+        // Under the lock close() takes, so nothing is queued behind the close marker
+        synchronized (queue) {
+            if (closed) {
+                done.completeExceptionally(new IOException("Attendance journal is closed"));
+                return done;
+            }
+            queue.add(pending);
+        }
+        return done;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (queue) {
+            if (log == null || closed) {
+                return;
+            }
+            closed = true;
+            queue.add(CLOSE);
+        }
+        try {
+            writer.join();
+            snapshotting.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (CompletionException e) {
+            logger.warning("Attendance snapshot failed: " + e.getCause().getMessage());
+        }
+        snapshotter.shutdown();
+        // The writer has stopped, so the final snapshot can be taken here
+        writeSnapshot(freeze(), sealLog());
+        log.close();
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            // Everything queued ahead of the close marker still gets committed
+            running = !batch.remove(CLOSE);
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+            if (running && entriesSinceSnapshot >= snapshotEvery && snapshotting.isDone()) {
+                startSnapshot();
+            }
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        int entries = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(batch.get(i).bytes);
+            entries += batch.get(i).entries;
+        }
+        try {
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                log.write(buffers);
+            }
+            log.force(false);
+            entriesSinceSnapshot += entries;
+            for (Pending pending : batch) {
+                pending.done.complete(null);
+            }
+        } catch (IOException e) {
+            logger.severe("Attendance journal write failed: " + e.getMessage());
+            for (Pending pending : batch) {
+                pending.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Freezes the store and seals the log on the journal thread, then writes the snapshot on the
+     * snapshot thread while commits carry on into the new log.
+     */
+    private void startSnapshot() {
+        List<FrozenClass> view = freeze();
+        long sealed;
+        try {
+            sealed = sealLog();
+        } catch (IOException e) {
+            logger.warning("Attendance snapshot failed: " + e.getMessage());
+            return;
+        }
+        entriesSinceSnapshot = 0;
+        snapshotting = CompletableFuture.runAsync(() -> {
+            try {
+                writeSnapshot(view, sealed);
+            } catch (IOException e) {
+                // The sealed segments stay until a later snapshot covers them
+                logger.warning("Attendance snapshot failed: " + e.getMessage());
+            }
+        }, snapshotter);
+    }
+
+    /**
+     * How far each class's log has got. Every committed entry is below these sizes, as the store
+     * appends before it journals; entries above them are committed to the new log.
+     */
+    private List<FrozenClass> freeze() {
+        List<FrozenClass> view = new ArrayList<>();
+        store.classes().forEach((classId, attendance) ->
+                view.add(new FrozenClass(classId, attendance.log(), attendance.log().size())));
+        return view;
+    }
+
+    /** Renames the log to the next segment number and starts a fresh one; returns the sealed number. */
+    private long sealLog() throws IOException {
+        log.force(true);
+        log.close();
+        long sealed = nextSegment++;
+        Files.move(directory.resolve(LOG_FILE), directory.resolve(SEGMENT_PREFIX + sealed),
+                StandardCopyOption.ATOMIC_MOVE);
+        log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        return sealed;
+    }
+
+    /**
+     * Writes the frozen view to a fresh snapshot and deletes the segments up to {@code sealed},
+     * which it covers. Entries still queued at the freeze may end up in both the snapshot and
+     * the new log; replay ignores the duplicate.
+     */
+    private void writeSnapshot(List<FrozenClass> view, long sealed) throws IOException {
+        Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(SESSIONS_SNAPSHOT_MAGIC);
+            out.writeInt(view.size());
+            for (FrozenClass frozen : view) {
+                out.writeUTF(frozen.classId);
+                out.writeInt(frozen.size);
+                for (int i = 0; i < frozen.size; i++) {
+                    AttendanceRecord record = frozen.log.get(i);
+                    out.writeUTF(record.getStudentId());
+                    out.writeUTF(record.getStudentName());
+                    out.writeUTF(record.getTimestamp());
+                    out.writeUTF(record.getSessionId());
+                }
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        for (Map.Entry<Long, Path> segment : sealedSegments().headMap(sealed + 1).entrySet()) {
+            Files.delete(segment.getValue());
+        }
+    }
+
+    private int readSnapshot(AttendanceStore store) throws IOException {
+        Path path = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        int recovered = 0;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            int magic = in.readInt();
+            if (magic != SNAPSHOT_MAGIC && magic != SESSIONS_SNAPSHOT_MAGIC) {
+                throw new IOException("Unrecognised attendance snapshot " + path);
+            }
+            boolean sessions = magic == SESSIONS_SNAPSHOT_MAGIC;
+            int classCount = in.readInt();
+            for (int c = 0; c < classCount; c++) {
+                String classId = in.readUTF();
+                int size = in.readInt();
+                List<AttendanceRecord> records = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    records.add(AttendanceRecord.newBuilder()
+                            .setStudentId(in.readUTF())
+                            .setStudentName(in.readUTF())
+                            .setTimestamp(in.readUTF())
+                            .setSessionId(sessions ? in.readUTF() : "")
+                            .setSequence(i + 1)
+                            .build());
+                }
+                recovered += store.restore(classId, records).size();
+            }
+        }
+        return recovered;
+    }
+
+    /** Reads log entries into {@code tail} by class and returns the length of the intact prefix. */
+    private static long replayLog(FileChannel log, Map<String, List<AttendanceRecord>> tail) throws IOException {
+        log.position(0);
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(log), 1 << 16));
+        long valid = 0;
+        CRC32 crc = new CRC32();
+        while (true) {
+            byte[] payload;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 0 || length > log.size()) {
+                    break;
+                }
+                payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            DataInputStream entry = new DataInputStream(new ByteArrayInputStream(payload));
+            String classId = entry.readUTF();
+            AttendanceRecord record = AttendanceRecord.newBuilder()
+                    .setStudentId(entry.readUTF())
+                    .setStudentName(entry.readUTF())
+                    .setTimestamp(entry.readUTF())
+                    .setSequence(entry.readLong())
+                    .setSessionId(entry.available() > 0 ? entry.readUTF() : "")
+                    .build();
+            tail.computeIfAbsent(classId, id -> new ArrayList<>()).add(record);
+            valid += 8 + payload.length;
+        }
+        return valid;
+    }
+
+    private static byte[] encode(String classId, List<AttendanceRecord> records) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * records.size());
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+        CRC32 crc = new CRC32();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (AttendanceRecord record : records) {
+                payload.reset();
+                DataOutputStream entry = new DataOutputStream(payload);
+                entry.writeUTF(classId);
+                entry.writeUTF(record.getStudentId());
+                entry.writeUTF(record.getStudentName());
+                entry.writeUTF(record.getTimestamp());
+                entry.writeLong(record.getSequence());
+                entry.writeUTF(record.getSessionId());
+                crc.reset();
+                crc.update(payload.toByteArray());
+                out.writeInt(payload.size());
+                out.writeInt((int) crc.getValue());
+                payload.writeTo(out);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory encoding failed", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static final class FrozenClass {
+        final String classId;
+        final CheckInLog log;
+        final int size;
+
+        FrozenClass(String classId, CheckInLog log, int size) {
+            this.classId = classId;
+            this.log = log;
+            this.size = size;
+        }
+    }
+
+    private static final class Pending {
+        final byte[] bytes;
+        final int entries;
+        final CompletableFuture<Void> done;
+
+        Pending(byte[] bytes, int entries, CompletableFuture<Void> done) {
+            this.bytes = bytes;
+            this.entries = entries;
+            this.done = done;
+        }
+    }
+}
@@ -1,117 +1,605 @@
 package com.unsmart.campus.attendance;
 
+import com.unsmart.campus.executor.CallExecutor;
+import com.unsmart.campus.jmdns.ServiceDiscovery;
 import com.unsmart.campus.jmdns.ServiceRegistration;
+import com.unsmart.campus.metrics.LogSampler;
+import com.unsmart.campus.metrics.RpcMetrics;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Collections;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Attendance for the classes this node owns. With several nodes advertised over mDNS, classes are
+ * split between them on a consistent-hash ring of {@code host:port} names: a call about a class
+ * another node owns is forwarded there, and when a node joins or leaves, each node hands the
+ * classes that now belong elsewhere, and only those, to their new owner. Set
+ * {@code attendance.partitioned=false} to serve every class locally.
+ */
 public class AttendanceServer extends AttendanceServiceGrpc.AttendanceServiceImplBase {
     private static final Logger logger = Logger.getLogger(AttendanceServer.class.getName());
-    private static final int PORT = 50051;
+    // 0 picks a free port, for running further replicas on the same host
+    private static final int PORT = Integer.getInteger("attendance.port", 50051);
+    private static final int SNAPSHOT_EVERY = 50_000;
+    // One check-in log line per this many check-ins; 1 logs them all, 0 none
+    private static final LogSampler checkInLog = new LogSampler(logger, Level.INFO,
+            Integer.getInteger("attendance.log.every", 100));
+    private static final boolean PARTITIONED =
+            Boolean.parseBoolean(System.getProperty("attendance.partitioned", "true"));
+    // Catches classes taken on while nodes disagreed about the ring
+    private static final long REBALANCE_INTERVAL_S = Long.getLong("attendance.rebalance.interval.s", 30);
+    // Longest a leaving node waits for its classes to reach their new owners, forwarding meanwhile
+    private static final long LEAVE_DRAIN_MS = Long.getLong("attendance.leave.drain.ms", 5_000);
+    private static final double DEFAULT_THRESHOLD = 0.75;
     private Server server;
-    private final Set<Student> attendedStudents = Collections.synchronizedSet(new HashSet<>());
+    private CallExecutor callExecutor;
+    private ServiceRegistration registration;
+    private ServiceDiscovery discovery;
+    private volatile ClassPartitioner partitioner;
+    private final AttendanceStore store = new AttendanceStore();
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final RollCallBroadcaster broadcaster = new RollCallBroadcaster(store, scheduler);
+    private final AttendanceJournal journal;
+    private volatile boolean journalOpen;
+
+    public AttendanceServer() {
+        this(Paths.get(System.getProperty("attendance.data.dir", "data/attendance")));
+    }
+
+    /** Creates a server journaling to {@code dataDirectory}, or keeping state in memory only if it is {@code null}. */
+    public AttendanceServer(Path dataDirectory) {
+        this.journal = dataDirectory == null ? null : new AttendanceJournal(dataDirectory, SNAPSHOT_EVERY);
+    }
 
     @Override
     public void checkInStudent(CheckInRequest request, StreamObserver<CheckInResponse> responseObserver) {
+        String owner = ownerOf(request.getClassId());
+        if (owner != null) {
+            partitioner.stub(owner).checkInStudent(request, responseObserver);
+            return;
+        }
+        if (awaitingHandoff(request.getClassId())) {
+            responseObserver.onError(handoffPending(request.getClassId()).asRuntimeException());
+            return;
+        }
         Student student = request.getStudent();
-        attendedStudents.add(student);
+        AttendanceRecord record = store.checkIn(request);
+        boolean added = record != null;
+        if (added) {
+            broadcaster.publish(request.getClassId());
+        }
 
         CheckInResponse response = CheckInResponse.newBuilder()
                 .setSuccess(true)
-                .setMessage("Student " + student.getStudentName() + " checked in successfully")
+                .setMessage("Student " + student.getStudentName()
+                        + (added ? " checked in successfully" : " already checked in"))
                 .build();
 
-        responseObserver.onNext(response);
-        responseObserver.onCompleted();
+        CompletableFuture<Void> durable = added
+                ? persist(request.getClassId(), List.of(record))
+                : CompletableFuture.completedFuture(null);
+        durable.whenComplete((ignored, error) -> {
+            if (error != null) {
+                responseObserver.onError(Status.INTERNAL
+                        .withDescription("Check-in could not be saved")
+                        .withCause(error)
+                        .asRuntimeException());
+                return;
+            }
+            responseObserver.onNext(response);
+            responseObserver.onCompleted();
+        });
 
-        logger.info("Student checked in: " + student.getStudentName());
+        if (checkInLog.sample()) {
+            checkInLog.log("Student checked in: " + student.getStudentName());
+        }
     }
 
     @Override
-public void streamAttendanceRecords(RollCallRequest request, 
-    StreamObserver<AttendanceRecord> responseObserver) {
-    
-    // Create a scheduler for this specific stream
-    ScheduledExecutorService streamScheduler = Executors.newSingleThreadScheduledExecutor();
-    
-    // Start streaming
-    streamScheduler.scheduleAtFixedRate(() -> {
-        try {
-            synchronized (attendedStudents) {
-                if (attendedStudents.isEmpty()) {
-                    // Send heartbeat if no students
-                    AttendanceRecord heartbeat = AttendanceRecord.newBuilder()
-                        .setStudentId("SYSTEM")
-                        .setStudentName("No students checked in yet")
-                        .setTimestamp(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME))
-                        .build();
-                    responseObserver.onNext(heartbeat);
-                } else {
-                    // Send all current attendance records
-                    for (Student student : attendedStudents) {
-                        AttendanceRecord record = AttendanceRecord.newBuilder()
-                            .setStudentId(student.getStudentId())
-                            .setStudentName(student.getStudentName())
-                            .setTimestamp(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME))
-                            .build();
-                        responseObserver.onNext(record);
+    public StreamObserver<CheckInRequest> checkInStudents(StreamObserver<BatchCheckInResponse> responseObserver) {
+        return new StreamObserver<CheckInRequest>() {
+            private final List<CheckInRequest> batch = new ArrayList<>();
+
+            @Override
+            public void onNext(CheckInRequest request) {
+                batch.add(request);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.warning("Batch check-in failed: " + t.getMessage());
+            }
+
+            @Override
+            public void onCompleted() {
+                // Positions in the batch of the check-ins for each node that owns some of them
+                Map<String, List<Integer>> forwarded = new LinkedHashMap<>();
+                List<Integer> local = new ArrayList<>(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    String owner = ownerOf(batch.get(i).getClassId());
+                    if (owner == null) {
+                        local.add(i);
+                    } else {
+                        forwarded.computeIfAbsent(owner, node -> new ArrayList<>()).add(i);
                     }
                 }
+                CheckInResult[] results = new CheckInResult[batch.size()];
+                List<CompletableFuture<Integer>> parts = new ArrayList<>();
+                parts.add(checkInLocally(batch, local, results));
+                forwarded.forEach((owner, positions) -> parts.add(forwardBatch(owner, batch, positions, results)));
+
+                CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        responseObserver.onError(Status.INTERNAL
+                                .withDescription("Batch check-in could not be saved")
+                                .withCause(error)
+                                .asRuntimeException());
+                        return;
+                    }
+                    int checkedIn = parts.stream().mapToInt(CompletableFuture::join).sum();
+                    responseObserver.onNext(BatchCheckInResponse.newBuilder()
+                            .setCheckedIn(checkedIn)
+                            .addAllResults(Arrays.asList(results))
+                            .build());
+                    responseObserver.onCompleted();
+                    if (checkInLog.sample()) {
+                        checkInLog.log("Batch check-in: " + checkedIn + " of " + batch.size() + " students checked in");
+                    }
+                });
             }
-        } catch (Exception e) {
-            logger.warning("Streaming error: " + e.getMessage());
-            streamScheduler.shutdown();
-            responseObserver.onError(e);
-        }
-    }, 0, 5, TimeUnit.SECONDS);
-    
-    // Cleanup when client disconnects
-    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-        streamScheduler.shutdown();
-        try {
-            if (!streamScheduler.awaitTermination(1, TimeUnit.SECONDS)) {
-                streamScheduler.shutdownNow();
+        };
+    }
+
+    /**
+     * Checks in the requests at {@code positions} here, filling in their results, which fail for
+     * classes still being handed over; completes with the number newly checked in once those are
+     * journaled.
+     */
+    private CompletableFuture<Integer> checkInLocally(List<CheckInRequest> batch, List<Integer> positions,
+                                                      CheckInResult[] results) {
+        List<CheckInRequest> requests = new ArrayList<>(positions.size());
+        List<Integer> admitted = new ArrayList<>(positions.size());
+        for (int position : positions) {
+            CheckInRequest request = batch.get(position);
+            if (awaitingHandoff(request.getClassId())) {
+                results[position] = CheckInResult.newBuilder()
+                        .setStudentId(request.getStudent().getStudentId())
+                        .setSuccess(false)
+                        .setMessage(handoffPending(request.getClassId()).getDescription())
+                        .build();
+            } else {
+                requests.add(request);
+                admitted.add(position);
             }
-        } catch (InterruptedException ie) {
-            streamScheduler.shutdownNow();
         }
-    }));
-}
+        List<AttendanceRecord> records = store.checkInAll(requests);
+        Map<String, List<AttendanceRecord>> addedByClass = new HashMap<>();
+        int checkedIn = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            CheckInRequest request = requests.get(i);
+            Student student = request.getStudent();
+            boolean added = records.get(i) != null;
+            if (added) {
+                checkedIn++;
+                addedByClass.computeIfAbsent(request.getClassId(), id -> new ArrayList<>())
+                        .add(records.get(i));
+            }
+            results[admitted.get(i)] = CheckInResult.newBuilder()
+                    .setStudentId(student.getStudentId())
+                    .setSuccess(true)
+                    .setMessage("Student " + student.getStudentName()
+                            + (added ? " checked in successfully" : " already checked in"))
+                    .build();
+        }
+        addedByClass.keySet().forEach(broadcaster::publish);
+
+        CompletableFuture<?>[] durable = addedByClass.entrySet().stream()
+                .map(entry -> persist(entry.getKey(), entry.getValue()))
+                .toArray(CompletableFuture[]::new);
+        int count = checkedIn;
+        return CompletableFuture.allOf(durable).thenApply(ignored -> count);
+    }
+
+    /**
+     * Whether check-ins for {@code classId} have to wait: the class has only just moved here and
+     * its check-ins have not arrived yet. Numbering check-ins before them would give the
+     * handed-over ones new sequence numbers, and roll calls resumed from the previous owner's
+     * numbers would skip or repeat entries.
+     */
+    private boolean awaitingHandoff(String classId) {
+        ClassPartitioner current = partitioner;
+        return current != null && !store.classes().containsKey(classId) && current.mayBeInbound(classId);
+    }
+
+    private static Status handoffPending(String classId) {
+        return Status.UNAVAILABLE.withDescription("Class " + classId + " is being handed over to this node; retry");
+    }
+
+    /** Sends the requests at {@code positions} to {@code owner} as one batch and fills in their results. */
+    private CompletableFuture<Integer> forwardBatch(String owner, List<CheckInRequest> batch, List<Integer> positions,
+                                                    CheckInResult[] results) {
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        StreamObserver<CheckInRequest> requests = partitioner.stub(owner).checkInStudents(
+                new StreamObserver<BatchCheckInResponse>() {
+                    @Override
+                    public void onNext(BatchCheckInResponse response) {
+                        for (int i = 0; i < positions.size(); i++) {
+                            results[positions.get(i)] = response.getResults(i);
+                        }
+                        done.complete(response.getCheckedIn());
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        done.completeExceptionally(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                });
+        for (int position : positions) {
+            requests.onNext(batch.get(position));
+        }
+        requests.onCompleted();
+        return done;
+    }
+
+    @Override
+    public void streamAttendanceRecords(RollCallRequest request,
+                                        StreamObserver<AttendanceRecord> responseObserver) {
+        ServerCallStreamObserver<AttendanceRecord> observer = (ServerCallStreamObserver<AttendanceRecord>) responseObserver;
+        String owner = ownerOf(request.getClassId());
+        if (owner != null) {
+            relayRollCall(owner, request, observer);
+            return;
+        }
+        broadcaster.subscribe(request.getClassId(), AttendanceStore.sessionOf(request),
+                request.getResumeAfterSequence(), observer);
+    }
+
+    /**
+     * Streams the owner's roll call through to the caller, asking the owner for the next record
+     * only once the caller can take it, so a slow dashboard holds back its own stream and nothing
+     * queues up here.
+     */
+    private void relayRollCall(String owner, RollCallRequest request,
+                               ServerCallStreamObserver<AttendanceRecord> downstream) {
+        partitioner.stub(owner).streamAttendanceRecords(request,
+                new ClientResponseObserver<RollCallRequest, AttendanceRecord>() {
+                    private final AtomicBoolean requested = new AtomicBoolean(true);
+                    private ClientCallStreamObserver<RollCallRequest> upstream;
+
+                    @Override
+                    public void beforeStart(ClientCallStreamObserver<RollCallRequest> upstream) {
+                        this.upstream = upstream;
+                        upstream.disableAutoRequestWithInitial(1);
+                        downstream.setOnCancelHandler(() -> upstream.cancel("Roll call cancelled", null));
+                        downstream.setOnReadyHandler(this::requestIfReady);
+                    }
+
+                    @Override
+                    public void onNext(AttendanceRecord record) {
+                        downstream.onNext(record);
+                        requested.set(false);
+                        requestIfReady();
+                    }
+
+                    private void requestIfReady() {
+                        if (downstream.isReady() && requested.compareAndSet(false, true)) {
+                            upstream.request(1);
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        downstream.onError(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        downstream.onCompleted();
+                    }
+                });
+    }
 
+    @Override
+    public void getAttendanceAnalytics(AttendanceAnalyticsRequest request,
+                                       StreamObserver<AttendanceAnalyticsResponse> responseObserver) {
+        String owner = ownerOf(request.getClassId());
+        if (owner != null) {
+            partitioner.stub(owner).getAttendanceAnalytics(request, responseObserver);
+            return;
+        }
+        double threshold = request.getThreshold() == 0 ? DEFAULT_THRESHOLD : request.getThreshold();
+        if (!(threshold > 0 && threshold <= 1)) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Threshold must be above 0 and at most 1")
+                    .asRuntimeException());
+            return;
+        }
+        AttendanceStore.ClassAttendance attendance = store.classes().get(request.getClassId());
+        if (attendance == null) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("No attendance recorded for class " + request.getClassId())
+                    .asRuntimeException());
+            return;
+        }
+        responseObserver.onNext(attendance.history().analyse(threshold, request.getAllOfSessionsList()));
+        responseObserver.onCompleted();
+    }
 
+    @Override
+    public void handOffClass(ClassHandoff request, StreamObserver<HandoffResponse> responseObserver) {
+        String classId = request.getClassId();
+        List<AttendanceRecord> restored = store.restore(classId, request.getRecordsList());
+        if (!restored.isEmpty()) {
+            broadcaster.publish(classId);
+        }
+        persist(classId, restored).whenComplete((ignored, error) -> {
+            if (error != null) {
+                responseObserver.onError(Status.INTERNAL
+                        .withDescription("Handed-off check-ins could not be saved")
+                        .withCause(error)
+                        .asRuntimeException());
+                return;
+            }
+            responseObserver.onNext(HandoffResponse.newBuilder().setRestored(restored.size()).build());
+            responseObserver.onCompleted();
+        });
+        logger.info("Took over class " + classId + ": " + restored.size() + " check-ins");
+    }
 
+    /**
+     * The service with the interceptor that recognises calls forwarded by other nodes. A
+     * partitioned node must be served through this rather than as a plain {@code BindableService},
+     * or nodes that disagree about an owner could pass a call back and forth.
+     */
+    public ServerServiceDefinition serviceDefinition() {
+        return ServerInterceptors.intercept(this, ClassPartitioner.forwardedInterceptor());
+    }
+
+    /**
+     * Splits classes between this node, named {@code self}, and the nodes passed to
+     * {@link #setClusterNodes}; {@code connector} opens a channel to a node by name.
+     * {@link #start()} does this itself from the nodes advertised over mDNS.
+     */
+    public void joinCluster(String self, Function<String, ManagedChannel> connector) {
+        if (partitioner != null) {
+            throw new IllegalStateException("Already partitioned as " + partitioner.self());
+        }
+        partitioner = new ClassPartitioner(self, connector);
+        scheduler.scheduleWithFixedDelay(this::rebalance, REBALANCE_INTERVAL_S, REBALANCE_INTERVAL_S, TimeUnit.SECONDS);
+    }
+
+    /** Sets the nodes classes are split between, and hands off the classes that now belong to another node. */
+    public void setClusterNodes(Collection<String> nodes) {
+        ClassPartitioner current = partitioner;
+        if (current != null && current.setNodes(nodes)) {
+            logger.info("Attendance nodes: " + current.nodes());
+            scheduler.execute(this::rebalance);
+        }
+    }
+
+    private String ownerOf(String classId) {
+        ClassPartitioner current = partitioner;
+        return current == null ? null : current.ownerOf(classId);
+    }
+
+    /** Hands every class another node owns to that node; completes when they have all been sent. */
+    private CompletableFuture<Void> rebalance() {
+        ClassPartitioner current = partitioner;
+        if (current == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<CompletableFuture<Void>> handoffs = new ArrayList<>();
+        for (String classId : new ArrayList<>(store.classes().keySet())) {
+            String owner = current.remoteOwner(classId);
+            if (owner != null) {
+                handoffs.add(handOff(classId, owner));
+            }
+        }
+        if (!handoffs.isEmpty()) {
+            logger.info("Handing off " + handoffs.size() + " classes");
+        }
+        return CompletableFuture.allOf(handoffs.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Moves a class to {@code owner}. The class leaves the store first, so new check-ins for it
+     * are forwarded; any that were already under way land in the removed log and follow in a
+     * second handoff. If the owner cannot take it, the class is put back for the next rebalance.
+     */
+    private CompletableFuture<Void> handOff(String classId, String owner) {
+        AttendanceStore.ClassAttendance attendance = store.remove(classId);
+        if (attendance == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        broadcaster.close(classId, Status.UNAVAILABLE.withDescription("Class " + classId + " moved to " + owner));
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        sendFrom(classId, owner, attendance, 0, done);
+        return done;
+    }
+
+    private void sendFrom(String classId, String owner, AttendanceStore.ClassAttendance attendance, int from,
+                          CompletableFuture<Void> done) {
+        List<AttendanceRecord> records = attendance.log().since(from);
+        if (records.isEmpty() && from > 0) {
+            done.complete(null);
+            return;
+        }
+        ClassHandoff handoff = ClassHandoff.newBuilder().setClassId(classId).addAllRecords(records).build();
+        partitioner.stub(owner).withDeadlineAfter(30, TimeUnit.SECONDS).handOffClass(handoff,
+                new StreamObserver<HandoffResponse>() {
+                    @Override
+                    public void onNext(HandoffResponse response) {
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        logger.warning("Failed to hand class " + classId + " to " + owner + ": " + t.getMessage());
+                        store.restore(classId, attendance.log().since(0));
+                        done.complete(null);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        sendFrom(classId, owner, attendance, from + records.size(), done);
+                    }
+                });
+    }
+
+    /**
+     * Takes this node off the ring and hands all its classes to the remaining nodes, forwarding
+     * calls for them meanwhile. Returns once every handoff has finished, or after
+     * {@code attendance.leave.drain.ms} at most; at once if there was nothing to hand off.
+     */
+    private void leaveCluster() {
+        ClassPartitioner current = partitioner;
+        if (current == null) {
+            return;
+        }
+        Set<String> others = new HashSet<>(current.nodes());
+        others.remove(current.self());
+        if (others.isEmpty()) {
+            return;
+        }
+        current.setNodes(others);
+        try {
+            CompletableFuture.supplyAsync(this::rebalance, scheduler)
+                    .thenCompose(handoffs -> handoffs)
+                    .get(LEAVE_DRAIN_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warning("Failed to hand off every class before stopping: " + e.getMessage());
+        }
+    }
+
+    private CompletableFuture<Void> persist(String classId, List<AttendanceRecord> records) {
+        return journalOpen ? journal.append(classId, records) : CompletableFuture.completedFuture(null);
+    }
+
+    /** Replays the attendance journal into memory; check-ins are journaled from then on. */
+    public void recover() throws IOException {
+        if (journal == null || journalOpen) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        int recovered = journal.recover(store);
+        journalOpen = true;
+        logger.info("Recovered " + recovered + " check-ins in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms");
+    }
 
     public void start() throws IOException {
-        server = ServerBuilder.forPort(PORT)
-                .addService(this)
+        recover();
+        callExecutor = CallExecutor.forService("attendance");
+        server = callExecutor.applyTo(ServerBuilder.forPort(PORT))
+                .addService(serviceDefinition())
+                .intercept(RpcMetrics.serverInterceptor())
+                // Clients ping every 30 s by default to keep long streams alive
+                .permitKeepAliveTime(20, TimeUnit.SECONDS)
                 .build()
                 .start();
 
-        ServiceRegistration.registerService("AttendanceService", "_grpc._tcp.local.", PORT,
+        registration = ServiceRegistration.registerService("AttendanceService", "_grpc._tcp.local.", server.getPort(),
                 "Attendance service for SDG 4: Quality Education");
+        joinAdvertisedNodes(server.getPort());
 
         Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
-        logger.info("Attendance Server started, listening on port " + PORT);
+        logger.info("Attendance Server started, listening on port " + server.getPort());
+    }
+
+    /**
+     * Partitions classes between the attendance nodes advertised over mDNS, this one included as
+     * the node serving on {@code port}. {@link #start()} calls this; a host serving the service
+     * itself calls it once it is listening. Does nothing with {@code attendance.partitioned=false}.
+     */
+    public void joinAdvertisedNodes(int port) throws IOException {
+        if (!PARTITIONED) {
+            return;
+        }
+        String self = InetAddress.getLocalHost().getHostAddress() + ":" + port;
+        joinCluster(self, node -> ManagedChannelBuilder.forTarget(node)
+                .usePlaintext()
+                .intercept(RpcMetrics.clientInterceptor())
+                .build());
+        discovery = new ServiceDiscovery(logger::fine);
+        discovery.startDiscovery();
+        discovery.watch("AttendanceService", instances -> {
+            Set<String> nodes = new HashSet<>();
+            nodes.add(self);
+            for (InetSocketAddress instance : instances) {
+                nodes.add(instance.getAddress().getHostAddress() + ":" + instance.getPort());
+            }
+            setClusterNodes(nodes);
+        });
     }
 
-    private void stop() {
+    /** Stops serving and shuts down the threads and files the service holds. */
+    public void stop() {
+        if (registration != null) {
+            registration.close();
+            registration = null;
+        }
+        if (discovery != null) {
+            discovery.close();
+            discovery = null;
+        }
+        leaveCluster();
         if (server != null) {
             server.shutdown();
         }
+        if (callExecutor != null) {
+            callExecutor.close();
+        }
+        if (partitioner != null) {
+            partitioner.close();
+        }
+        broadcaster.shutdown();
         if (scheduler != null) {
             scheduler.shutdown();
         }
+        if (journalOpen) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close attendance journal: " + e.getMessage());
+            }
+        }
         logger.info("Attendance Server stopped");
     }
 
@@ -0,0 +1,120 @@
+package com.unsmart.campus.attendance;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Attendance sharded by class. Who attended which session is kept in each class's
+ * {@link AttendanceHistory}, which also turns away repeat check-ins, so check-ins for different
+ * classes never contend and roll-call readers never take a lock.
+ */
+class AttendanceStore {
+    private final ConcurrentMap<String, ClassAttendance> classes = new ConcurrentHashMap<>();
+
+    ClassAttendance forClass(String classId) {
+        return classes.computeIfAbsent(classId, id -> new ClassAttendance());
+    }
+
+    /** The session a check-in is for: the one it names, or today's. */
+    static String sessionOf(CheckInRequest request) {
+        return sessionOf(request.getSessionId());
+    }
+
+    /** The session a roll call streams: the one it names, or today's. */
+    static String sessionOf(RollCallRequest request) {
+        return sessionOf(request.getSessionId());
+    }
+
+    private static String sessionOf(String sessionId) {
+        return sessionId.isEmpty() ? LocalDate.now().toString() : sessionId;
+    }
+
+    /** Records the check-in and returns its log entry, or {@code null} if the student was already present. */
+    AttendanceRecord checkIn(CheckInRequest request) {
+        ClassAttendance attendance = forClass(request.getClassId());
+        Student student = request.getStudent();
+        String sessionId = sessionOf(request);
+        if (!attendance.history.record(sessionId, student.getStudentId())) {
+            return null;
+        }
+        return attendance.log.append(student, sessionId);
+    }
+
+    /**
+     * Records a batch of check-ins with one log append per class. The returned list lines
+     * up with {@code requests}; duplicates (including repeats inside the batch) map to {@code null}.
+     */
+    List<AttendanceRecord> checkInAll(List<CheckInRequest> requests) {
+        Map<String, List<Integer>> positionsByClass = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            positionsByClass.computeIfAbsent(requests.get(i).getClassId(), id -> new ArrayList<>()).add(i);
+        }
+        List<AttendanceRecord> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            results.add(null);
+        }
+        positionsByClass.forEach((classId, positions) -> {
+            ClassAttendance attendance = forClass(classId);
+            List<Student> added = new ArrayList<>(positions.size());
+            List<String> sessions = new ArrayList<>(positions.size());
+            List<Integer> addedPositions = new ArrayList<>(positions.size());
+            for (int position : positions) {
+                Student student = requests.get(position).getStudent();
+                String sessionId = sessionOf(requests.get(position));
+                if (attendance.history.record(sessionId, student.getStudentId())) {
+                    added.add(student);
+                    sessions.add(sessionId);
+                    addedPositions.add(position);
+                }
+            }
+            List<AttendanceRecord> records = attendance.log.appendAll(added, sessions);
+            for (int i = 0; i < records.size(); i++) {
+                results.set(addedPositions.get(i), records.get(i));
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Restores recovered or handed-off records for a class, skipping check-ins it already has;
+     * returns the records that were added, renumbered to follow the class's existing entries.
+     */
+    List<AttendanceRecord> restore(String classId, List<AttendanceRecord> records) {
+        ClassAttendance attendance = forClass(classId);
+        List<AttendanceRecord> added = new ArrayList<>(records.size());
+        for (AttendanceRecord record : records) {
+            if (attendance.history.record(record.getSessionId(), record.getStudentId())) {
+                added.add(record);
+            }
+        }
+        return attendance.log.restore(added);
+    }
+
+    /** Removes a class, returning its attendance so late check-ins into it can still be read; null if absent. */
+    ClassAttendance remove(String classId) {
+        return classes.remove(classId);
+    }
+
+    Map<String, ClassAttendance> classes() {
+        return Collections.unmodifiableMap(classes);
+    }
+
+    static final class ClassAttendance {
+        private final AttendanceHistory history = new AttendanceHistory();
+        private final CheckInLog log = new CheckInLog();
+
+        CheckInLog log() {
+            return log;
+        }
+
+        AttendanceHistory history() {
+            return history;
+        }
+    }
+}
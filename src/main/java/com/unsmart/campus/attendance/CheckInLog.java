@@ -0,0 +1,108 @@
+package com.unsmart.campus.attendance;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only log of check-ins. Entry {@code i} carries sequence number {@code i + 1}.
+ * Appends are serialised; readers never lock and see every entry below {@link #size()}.
+ */
+class CheckInLog {
+    private final Object appendLock = new Object();
+    private volatile AttendanceRecord[] entries = new AttendanceRecord[64];
+    private volatile int size;
+
+    AttendanceRecord append(Student student, String sessionId) {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME);
+        synchronized (appendLock) {
+            int index = size;
+            AttendanceRecord[] current = ensureCapacity(index + 1);
+            AttendanceRecord record = toRecord(student, sessionId, timestamp, index + 1);
+            current[index] = record;
+            // Publishing the new size makes the entry visible to readers
+            size = index + 1;
+            return record;
+        }
+    }
+
+    /**
+     * Appends a whole batch under one lock acquisition and a single size publication;
+     * {@code sessions} lines up with {@code students}.
+     */
+    List<AttendanceRecord> appendAll(List<Student> students, List<String> sessions) {
+        List<AttendanceRecord> records = new ArrayList<>(students.size());
+        if (students.isEmpty()) {
+            return records;
+        }
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME);
+        synchronized (appendLock) {
+            int index = size;
+            AttendanceRecord[] current = ensureCapacity(index + students.size());
+            for (int i = 0; i < students.size(); i++) {
+                AttendanceRecord record = toRecord(students.get(i), sessions.get(i), timestamp, index + 1);
+                current[index++] = record;
+                records.add(record);
+            }
+            size = index;
+        }
+        return records;
+    }
+
+    /** Re-appends recovered records, keeping their timestamps and renumbering them contiguously. */
+    List<AttendanceRecord> restore(List<AttendanceRecord> records) {
+        List<AttendanceRecord> restored = new ArrayList<>(records.size());
+        synchronized (appendLock) {
+            int index = size;
+            AttendanceRecord[] current = ensureCapacity(index + records.size());
+            for (AttendanceRecord record : records) {
+                current[index] = record.getSequence() == index + 1
+                        ? record : record.toBuilder().setSequence(index + 1).build();
+                restored.add(current[index]);
+                index++;
+            }
+            size = index;
+        }
+        return restored;
+    }
+
+    /** Returns the entries from {@code from} up to the current size. */
+    List<AttendanceRecord> since(int from) {
+        int end = size;
+        List<AttendanceRecord> records = new ArrayList<>(Math.max(0, end - from));
+        for (int i = from; i < end; i++) {
+            records.add(entries[i]);
+        }
+        return records;
+    }
+
+    private AttendanceRecord[] ensureCapacity(int required) {
+        AttendanceRecord[] current = entries;
+        if (required > current.length) {
+            current = Arrays.copyOf(current, Math.max(required, current.length * 2));
+            entries = current;
+        }
+        return current;
+    }
+
+    private static AttendanceRecord toRecord(Student student, String sessionId, String timestamp, long sequence) {
+        return AttendanceRecord.newBuilder()
+                .setStudentId(student.getStudentId())
+                .setStudentName(student.getStudentName())
+                .setSessionId(sessionId)
+                .setTimestamp(timestamp)
+                .setSequence(sequence)
+                .build();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Returns the entry at {@code index}, which must be below a previously read {@link #size()}. */
+    AttendanceRecord get(int index) {
+        return entries[index];
+    }
+}
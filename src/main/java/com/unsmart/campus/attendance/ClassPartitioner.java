@@ -0,0 +1,158 @@
+package com.unsmart.campus.attendance;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.stub.MetadataUtils;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Which attendance node owns each class, and stubs for forwarding calls to the other nodes.
+ * Ownership comes from a {@link HashRing} over the current node names. A call another node has
+ * already forwarded is served where it lands, so nodes whose views of the ring briefly disagree
+ * hand a call over at most once rather than passing it around, and the class's check-ins reach
+ * its owner with the next rebalance. The one exception is a node that has left the ring, which
+ * forwards everything once more.
+ *
+ * <p>The ring the nodes replaced is kept for {@code attendance.handoff.wait.ms}, so a node can
+ * tell that a class it has no records for has only just moved to it, and its previous owner may
+ * still be handing the class over.
+ */
+class ClassPartitioner implements AutoCloseable {
+    private static final Metadata.Key<String> FORWARDED_BY =
+            Metadata.Key.of("attendance-forwarded-by", Metadata.ASCII_STRING_MARSHALLER);
+    private static final Context.Key<String> FORWARDED_BY_CONTEXT = Context.key("attendance-forwarded-by");
+    private static final long HANDOFF_WAIT_MS = Long.getLong("attendance.handoff.wait.ms", 5_000);
+
+    private final String self;
+    private final Function<String, ManagedChannel> connector;
+    private final ConcurrentMap<String, Peer> peers = new ConcurrentHashMap<>();
+    private volatile HashRing ring;
+    // The ring before the last change, and when it changed
+    private volatile HashRing previous;
+    private volatile long changedAt;
+
+    /**
+     * @param self      this node's name on the ring
+     * @param connector opens a channel to the node with the given name
+     */
+    ClassPartitioner(String self, Function<String, ManagedChannel> connector) {
+        this.self = self;
+        this.connector = connector;
+        this.ring = HashRing.of(List.of(self));
+    }
+
+    String self() {
+        return self;
+    }
+
+    /** Marks calls that arrive with the forwarding header, for {@link #ownerOf}. */
+    static ServerInterceptor forwardedInterceptor() {
+        return new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+                    ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                String forwardedBy = headers.get(FORWARDED_BY);
+                if (forwardedBy == null) {
+                    return next.startCall(call, headers);
+                }
+                return Contexts.interceptCall(
+                        Context.current().withValue(FORWARDED_BY_CONTEXT, forwardedBy), call, headers, next);
+            }
+        };
+    }
+
+    /**
+     * Returns the node a call about {@code classId} should go to, or null if this node should
+     * serve it: it owns the class, or another node already forwarded the call here.
+     */
+    String ownerOf(String classId) {
+        if (FORWARDED_BY_CONTEXT.get() != null && ring.nodes().contains(self)) {
+            return null;
+        }
+        return remoteOwner(classId);
+    }
+
+    /** Returns the class's owner on the current ring, or null if that is this node. */
+    String remoteOwner(String classId) {
+        String owner = ring.owner(classId);
+        return owner == null || owner.equals(self) ? null : owner;
+    }
+
+    /**
+     * Returns whether {@code classId} moved to this node with the last ring change, recently
+     * enough that another node may still be handing it over. A node that knew of no other nodes
+     * before, such as one just joining the cluster, may be receiving any class it now owns.
+     */
+    boolean mayBeInbound(String classId) {
+        HashRing before = previous;
+        if (before == null || System.nanoTime() - changedAt > TimeUnit.MILLISECONDS.toNanos(HANDOFF_WAIT_MS)) {
+            return false;
+        }
+        boolean alone = before.nodes().equals(Set.of(self));
+        return (alone || !self.equals(before.owner(classId))) && remoteOwner(classId) == null;
+    }
+
+    /** Replaces the ring's nodes; returns whether they changed. */
+    synchronized boolean setNodes(Collection<String> nodes) {
+        if (ring.nodes().equals(new TreeSet<>(nodes))) {
+            return false;
+        }
+        // Published after the time, so a reader that sees the new previous ring sees when it changed
+        changedAt = System.nanoTime();
+        previous = ring;
+        ring = HashRing.of(nodes);
+        peers.entrySet().removeIf(entry -> {
+            if (ring.nodes().contains(entry.getKey())) {
+                return false;
+            }
+            // Lets calls already forwarded over the channel finish
+            entry.getValue().channel.shutdown();
+            return true;
+        });
+        return true;
+    }
+
+    Set<String> nodes() {
+        return ring.nodes();
+    }
+
+    AttendanceServiceGrpc.AttendanceServiceStub stub(String node) {
+        return peers.computeIfAbsent(node, this::connect).stub;
+    }
+
+    private Peer connect(String node) {
+        Metadata headers = new Metadata();
+        headers.put(FORWARDED_BY, self);
+        ManagedChannel channel = connector.apply(node);
+        return new Peer(channel, AttendanceServiceGrpc.newStub(channel)
+                .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers)));
+    }
+
+    @Override
+    public void close() {
+        peers.values().forEach(peer -> peer.channel.shutdown());
+        peers.clear();
+    }
+
+    private static final class Peer {
+        final ManagedChannel channel;
+        final AttendanceServiceGrpc.AttendanceServiceStub stub;
+
+        Peer(ManagedChannel channel, AttendanceServiceGrpc.AttendanceServiceStub stub) {
+            this.channel = channel;
+            this.stub = stub;
+        }
+    }
+}
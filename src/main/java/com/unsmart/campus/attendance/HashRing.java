@@ -0,0 +1,89 @@
+package com.unsmart.campus.attendance;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable consistent-hash ring mapping class ids to attendance nodes. Each node owns
+ * {@value #POINTS_PER_NODE} points on a 64-bit ring and a class belongs to the node owning the
+ * first point at or after the class's hash, so adding or removing a node only moves the classes
+ * between its points and their predecessors, about {@code 1/N} of them, and every other class
+ * stays where it is. Nodes are identified by name ({@code host:port}); every node and client
+ * that builds a ring from the same names agrees on every owner.
+ */
+public final class HashRing {
+    // Enough points that each of a handful of nodes gets within a few percent of its share
+    private static final int POINTS_PER_NODE = 160;
+
+    private final long[] points;
+    private final String[] owners;
+    private final Set<String> nodes;
+
+    private HashRing(long[] points, String[] owners, Set<String> nodes) {
+        this.points = points;
+        this.owners = owners;
+        this.nodes = nodes;
+    }
+
+    public static HashRing of(Collection<String> nodeNames) {
+        Set<String> nodes = new TreeSet<>(nodeNames);
+        long[] keys = new long[nodes.size() * POINTS_PER_NODE];
+        String[] names = new String[keys.length];
+        int next = 0;
+        for (String node : nodes) {
+            for (int i = 0; i < POINTS_PER_NODE; i++) {
+                keys[next] = hash(node + "#" + i);
+                names[next++] = node;
+            }
+        }
+        // Sort the points and carry their owners along
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keys[a] != keys[b]
+                ? Long.compare(keys[a], keys[b]) : names[a].compareTo(names[b]));
+        long[] points = new long[keys.length];
+        String[] owners = new String[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            points[i] = keys[order[i]];
+            owners[i] = names[order[i]];
+        }
+        return new HashRing(points, owners, Collections.unmodifiableSet(nodes));
+    }
+
+    /** Returns the node that owns {@code key}, or null if the ring has no nodes. */
+    public String owner(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public Set<String> nodes() {
+        return nodes;
+    }
+
+    /** 64-bit FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 mixer to spread short keys. */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
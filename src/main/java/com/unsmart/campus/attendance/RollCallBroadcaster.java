@@ -0,0 +1,165 @@
+package com.unsmart.campus.attendance;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Pushes check-ins from each class's {@link CheckInLog} to roll-call subscribers as they arrive.
+ * Each subscriber keeps its own cursor into the log: it receives the snapshot once on
+ * subscribe (or only the tail after its resume sequence) and then just the new entries, in
+ * both cases only those of the session it asked for.
+ * Drains run on a shared executor, stop while the call is not ready and resume from the
+ * call's on-ready handler, so one slow dashboard never holds up the others.
+ */
+class RollCallBroadcaster {
+    private static final Logger logger = Logger.getLogger(RollCallBroadcaster.class.getName());
+
+    private final AttendanceStore store;
+    private final Executor executor;
+    private final ConcurrentMap<String, Set<Subscriber>> rosters = new ConcurrentHashMap<>();
+
+    RollCallBroadcaster(AttendanceStore store, Executor executor) {
+        this.store = store;
+        this.executor = executor;
+    }
+
+    void subscribe(String classId, String sessionId, long resumeAfterSequence,
+                   ServerCallStreamObserver<AttendanceRecord> observer) {
+        CheckInLog log = store.forClass(classId).log();
+        int cursor = (int) Math.max(0, Math.min(resumeAfterSequence, log.size()));
+        Subscriber subscriber = new Subscriber(classId, sessionId, log, observer, cursor, cursor == 0);
+        observer.setOnCancelHandler(() -> unsubscribe(subscriber));
+        observer.setOnReadyHandler(() -> signal(subscriber));
+        rosters.computeIfAbsent(classId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        signal(subscriber);
+    }
+
+    /** Wakes the subscribers of a class after a new entry has been appended to its log. */
+    void publish(String classId) {
+        Set<Subscriber> roster = rosters.get(classId);
+        if (roster != null) {
+            for (Subscriber subscriber : roster) {
+                signal(subscriber);
+            }
+        }
+    }
+
+    /**
+     * Ends the roll calls of a class with {@code status}, e.g. when the class has moved to another
+     * node; subscribers resubscribe and are routed to the class's new owner.
+     */
+    void close(String classId, Status status) {
+        Set<Subscriber> roster = rosters.remove(classId);
+        if (roster != null) {
+            for (Subscriber subscriber : roster) {
+                subscriber.closeWith = status;
+                signal(subscriber);
+            }
+        }
+    }
+
+    void shutdown() {
+        for (Set<Subscriber> roster : rosters.values()) {
+            for (Subscriber subscriber : roster) {
+                try {
+                    subscriber.observer.onCompleted();
+                } catch (RuntimeException e) {
+                    logger.fine("Subscriber already closed: " + e.getMessage());
+                }
+            }
+        }
+        rosters.clear();
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        rosters.computeIfPresent(subscriber.classId, (id, roster) -> {
+            roster.remove(subscriber);
+            return roster.isEmpty() ? null : roster;
+        });
+    }
+
+    private void signal(Subscriber subscriber) {
+        if (subscriber.wip.getAndIncrement() == 0) {
+            executor.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        ServerCallStreamObserver<AttendanceRecord> observer = subscriber.observer;
+        CheckInLog log = subscriber.log;
+        int missed = 1;
+        do {
+            if (observer.isCancelled()) {
+                unsubscribe(subscriber);
+                return;
+            }
+            if (subscriber.closeWith != null) {
+                observer.onError(subscriber.closeWith.asRuntimeException());
+                return;
+            }
+            try {
+                int end = log.size();
+                while (subscriber.cursor < end) {
+                    AttendanceRecord record = log.get(subscriber.cursor);
+                    if (!record.getSessionId().equals(subscriber.sessionId)) {
+                        subscriber.cursor++;
+                        continue;
+                    }
+                    if (!observer.isReady()) {
+                        break;
+                    }
+                    subscriber.heartbeatPending = false;
+                    observer.onNext(record);
+                    subscriber.cursor++;
+                }
+                if (subscriber.heartbeatPending && subscriber.cursor == end && observer.isReady()) {
+                    subscriber.heartbeatPending = false;
+                    // Let the dashboard know the stream is live before anyone has checked in
+                    observer.onNext(AttendanceRecord.newBuilder()
+                            .setStudentId("SYSTEM")
+                            .setStudentName("No students checked in yet")
+                            .setTimestamp(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME))
+                            .setSessionId(subscriber.sessionId)
+                            .build());
+                }
+            } catch (RuntimeException e) {
+                logger.warning("Streaming error: " + e.getMessage());
+                unsubscribe(subscriber);
+                observer.onError(e);
+                return;
+            }
+            missed = subscriber.wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private static final class Subscriber {
+        final String classId;
+        final String sessionId;
+        final CheckInLog log;
+        final ServerCallStreamObserver<AttendanceRecord> observer;
+        final AtomicInteger wip = new AtomicInteger();
+        // Only touched from drain(), which the wip counter keeps single-threaded per subscriber
+        int cursor;
+        boolean heartbeatPending;
+        // Set by close(); the drain delivers it so calls on the observer stay on one thread
+        volatile Status closeWith;
+
+        Subscriber(String classId, String sessionId, CheckInLog log,
+                   ServerCallStreamObserver<AttendanceRecord> observer, int cursor, boolean heartbeatPending) {
+            this.classId = classId;
+            this.sessionId = sessionId;
+            this.log = log;
+            this.observer = observer;
+            this.cursor = cursor;
+            this.heartbeatPending = heartbeatPending;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.unsmart.campus.client;
+
+import com.unsmart.campus.executor.CallExecutor;
+import com.unsmart.campus.host.LocalServices;
+import com.unsmart.campus.jmdns.JmdnsNameResolverProvider;
+import com.unsmart.campus.jmdns.ServiceDiscovery;
+import com.unsmart.campus.metrics.RpcMetrics;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.NameResolverRegistry;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Long-lived channels and stubs per service name. A channel is built the first time a service
+ * is used and reused for every later call, so calls share HTTP/2 connections instead of each
+ * paying for TCP and HTTP/2 setup. Channels target {@code jmdns:///<service>}: they connect to
+ * every discovered replica, round-robin calls over them, follow replicas as they are advertised
+ * and withdrawn, and eject for a while any replica failing most of its calls. A service that a
+ * {@code CampusHost} serves in this same JVM is called over the in-process transport instead,
+ * unless {@code client.prefer.local} is false.
+ *
+ * <p>Keepalive pings ({@code client.keepalive.time.ms}, {@code client.keepalive.timeout.ms})
+ * detect dead connections under long-running streams, and a channel with no calls for
+ * {@code client.idle.timeout.ms} drops its connections until it is next used.
+ */
+class ChannelRegistry implements AutoCloseable {
+    private static final long KEEPALIVE_TIME_MS = Long.getLong("client.keepalive.time.ms", 30_000);
+    private static final long KEEPALIVE_TIMEOUT_MS = Long.getLong("client.keepalive.timeout.ms", 10_000);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("client.idle.timeout.ms", 300_000);
+    private static final boolean PREFER_LOCAL =
+            Boolean.parseBoolean(System.getProperty("client.prefer.local", "true"));
+    // Round robin under outlier detection: every 10 s, a replica that failed at least half of
+    // its 20 or more calls is ejected for 30 s (longer each time), keeping at least half in use
+    private static final Map<String, ?> SERVICE_CONFIG = Map.of("loadBalancingConfig", List.of(Map.of(
+            "outlier_detection_experimental", Map.of(
+                    "interval", "10s",
+                    "baseEjectionTime", "30s",
+                    "maxEjectionPercent", 50.0,
+                    "failurePercentageEjection", Map.of(
+                            "threshold", 50.0,
+                            "enforcementPercentage", 100.0,
+                            "minimumHosts", 2.0,
+                            "requestVolume", 20.0),
+                    "childPolicy", List.of(Map.of("round_robin", Map.of()))))));
+
+    private final ServiceDiscovery discovery;
+    private final CallExecutor callExecutor;
+    private final JmdnsNameResolverProvider resolverProvider;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // By address, as services hosted together share a port; kept while any replica called there is advertised
+    private final ConcurrentMap<InetSocketAddress, ManagedChannel> replicaChannels = new ConcurrentHashMap<>();
+    private final Set<String> replicatedServices = ConcurrentHashMap.newKeySet();
+
+    /** @param callExecutor runs the channels' response callbacks */
+    ChannelRegistry(ServiceDiscovery discovery, CallExecutor callExecutor) {
+        this.discovery = discovery;
+        this.callExecutor = callExecutor;
+        // Deregistered on close, so a closed registry's discovery is not left resolving names
+        this.resolverProvider = new JmdnsNameResolverProvider(discovery);
+        NameResolverRegistry.getDefaultRegistry().register(resolverProvider);
+    }
+
+    /** Returns the channel for {@code serviceName}, or null if no replica has been discovered. */
+    ManagedChannel channel(String serviceName) {
+        Entry entry = entry(serviceName);
+        return entry == null ? null : entry.channel;
+    }
+
+    /**
+     * Returns the stub {@code factory} builds for the service's channel, creating it once.
+     * Returns null if no replica has been discovered.
+     */
+    @SuppressWarnings("unchecked")
+    <S> S stub(String serviceName, Class<S> type, Function<ManagedChannel, S> factory) {
+        Entry entry = entry(serviceName);
+        if (entry == null) {
+            return null;
+        }
+        return (S) entry.stubs.computeIfAbsent(type, t -> factory.apply(entry.channel));
+    }
+
+    /**
+     * Makes {@code call} against every discovered replica of the service, for calls such as
+     * SetQuiz that change state each replica keeps for itself. Each replica gets a channel of its
+     * own, kept until the replica is withdrawn; results come back in discovery order.
+     */
+    <T> List<T> callEachReplica(String serviceName, Function<ManagedChannel, T> call) {
+        replicatedServices.add(serviceName);
+        List<T> results = new ArrayList<>();
+        for (InetSocketAddress address : discovery.getInstances(serviceName)) {
+            results.add(call.apply(replicaChannels.computeIfAbsent(address, this::buildReplica)));
+        }
+        dropWithdrawnReplicas();
+        return results;
+    }
+
+    private ManagedChannel buildReplica(InetSocketAddress address) {
+        return callExecutor.applyTo(ManagedChannelBuilder.forAddress(address.getHostString(), address.getPort()))
+                .usePlaintext()
+                .intercept(RpcMetrics.clientInterceptor())
+                .idleTimeout(IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /** Shuts the channels to addresses no longer advertising any of the services called there. */
+    private void dropWithdrawnReplicas() {
+        Set<InetSocketAddress> advertised = new HashSet<>();
+        for (String service : replicatedServices) {
+            advertised.addAll(discovery.getInstances(service));
+        }
+        replicaChannels.entrySet().removeIf(replica -> {
+            if (advertised.contains(replica.getKey())) {
+                return false;
+            }
+            replica.getValue().shutdown();
+            return true;
+        });
+    }
+
+    private Entry entry(String serviceName) {
+        Entry entry = entries.get(serviceName);
+        if (entry != null) {
+            return entry;
+        }
+        String inProcessName = PREFER_LOCAL ? LocalServices.inProcessName(serviceName) : null;
+        if (inProcessName != null) {
+            return entries.computeIfAbsent(serviceName, name -> new Entry(
+                    callExecutor.applyTo(InProcessChannelBuilder.forName(inProcessName))
+                            .intercept(RpcMetrics.clientInterceptor())
+                            .build()));
+        }
+        if (discovery.getInstances(serviceName).isEmpty()) {
+            return null;
+        }
+        return entries.computeIfAbsent(serviceName, name -> new Entry(build(name)));
+    }
+
+    private ManagedChannel build(String serviceName) {
+        return callExecutor.applyTo(ManagedChannelBuilder.forTarget(JmdnsNameResolverProvider.target(serviceName)))
+                .usePlaintext()
+                .defaultServiceConfig(SERVICE_CONFIG)
+                .intercept(RpcMetrics.clientInterceptor())
+                .keepAliveTime(KEEPALIVE_TIME_MS, TimeUnit.MILLISECONDS)
+                .keepAliveTimeout(KEEPALIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .idleTimeout(IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    public void close() {
+        NameResolverRegistry.getDefaultRegistry().deregister(resolverProvider);
+        List<ManagedChannel> channels = new ArrayList<>(replicaChannels.values());
+        for (Entry entry : entries.values()) {
+            channels.add(entry.channel);
+        }
+        for (ManagedChannel channel : channels) {
+            channel.shutdown();
+        }
+        for (ManagedChannel channel : channels) {
+            try {
+                if (!channel.awaitTermination(5, TimeUnit.SECONDS)) {
+                    channel.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                channel.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        entries.clear();
+        replicaChannels.clear();
+    }
+
+    private static final class Entry {
+        final ManagedChannel channel;
+        final Map<Class<?>, Object> stubs = new ConcurrentHashMap<>();
+
+        Entry(ManagedChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
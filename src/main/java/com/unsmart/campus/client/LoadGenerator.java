@@ -0,0 +1,563 @@
+package com.unsmart.campus.client;
+
+import com.google.protobuf.UnsafeByteOperations;
+import com.unsmart.campus.assessment.AssessmentResult;
+import com.unsmart.campus.assessment.AssessmentServer;
+import com.unsmart.campus.assessment.AssessmentServiceGrpc;
+import com.unsmart.campus.assessment.QuizQuestion;
+import com.unsmart.campus.assessment.SetQuizRequest;
+import com.unsmart.campus.assessment.StudentAnswer;
+import com.unsmart.campus.attendance.AttendanceRecord;
+import com.unsmart.campus.attendance.AttendanceServer;
+import com.unsmart.campus.attendance.AttendanceServiceGrpc;
+import com.unsmart.campus.attendance.CheckInRequest;
+import com.unsmart.campus.attendance.CheckInResponse;
+import com.unsmart.campus.attendance.RollCallRequest;
+import com.unsmart.campus.attendance.Student;
+import com.unsmart.campus.content.ContentChunk;
+import com.unsmart.campus.content.ContentDeliveryServiceGrpc;
+import com.unsmart.campus.content.ContentServer;
+import com.unsmart.campus.content.DocumentEdit;
+import com.unsmart.campus.content.DocumentEditBatch;
+import com.unsmart.campus.content.UploadContentResponse;
+import com.unsmart.campus.metrics.RpcMetrics;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Headless load generator for the three campus services. It hosts {@link AttendanceServer},
+ * {@link ContentServer} and {@link AssessmentServer} in this JVM, so it needs no network or
+ * discovery, and drives them at fixed rates for {@code load.duration.s} seconds after a
+ * {@code load.warmup.s} warm-up:
+ *
+ * <ul>
+ *   <li>{@code load.checkins.rate} check-ins a second, spread over {@code load.classes} classes,
+ *       watched by {@code load.rollcall.subscribers} roll-call streams;</li>
+ *   <li>{@code load.uploads.rate} uploads a second of {@code load.upload.bytes} bytes each, sent in
+ *       {@code load.upload.chunk.bytes} chunks;</li>
+ *   <li>{@code load.editors} editors on {@code load.documents} documents, each typing
+ *       {@code load.editor.rate} characters a second at random places;</li>
+ *   <li>{@code load.quiz.rate} quiz answer streams a second, each answering
+ *       {@code load.quiz.questions} questions.</li>
+ * </ul>
+ *
+ * <p>A rate of 0 turns a workload off. Calls go over the in-process transport unless
+ * {@code load.transport=tcp}, which serves on a loopback port instead. Load is open-loop: each
+ * operation is started when it is due whether or not earlier ones have finished, and its latency
+ * is measured from that due time. The report gives HdrHistogram percentiles per operation:
+ * check-in responses, roll-call records (check-in to delivery), uploads, edit echoes (keystroke
+ * to the editor's own broadcast) and quiz results.
+ */
+public class LoadGenerator {
+    private static final Logger logger = Logger.getLogger(LoadGenerator.class.getName());
+    private static final String TRANSPORT = System.getProperty("load.transport", "inprocess");
+    private static final long DURATION_S = Long.getLong("load.duration.s", 30);
+    private static final long WARMUP_S = Long.getLong("load.warmup.s", 10);
+    private static final long DRAIN_S = Long.getLong("load.drain.s", 10);
+    private static final double CHECKIN_RATE = rate("load.checkins.rate", 200);
+    private static final int CLASSES = Integer.getInteger("load.classes", 20);
+    private static final int ROLLCALL_SUBSCRIBERS = Integer.getInteger("load.rollcall.subscribers", 20);
+    private static final double UPLOAD_RATE = rate("load.uploads.rate", 1);
+    private static final int UPLOAD_BYTES = Integer.getInteger("load.upload.bytes", 4 << 20);
+    private static final int UPLOAD_CHUNK_BYTES = Integer.getInteger("load.upload.chunk.bytes", 64 << 10);
+    private static final int EDITORS = Integer.getInteger("load.editors", 20);
+    private static final int DOCUMENTS = Integer.getInteger("load.documents", 2);
+    private static final double EDITOR_RATE = rate("load.editor.rate", 5);
+    private static final double QUIZ_RATE = rate("load.quiz.rate", 50);
+    private static final int QUIZ_QUESTIONS = Integer.getInteger("load.quiz.questions", 20);
+    private static final String QUIZ_ID = "LOAD-QUIZ";
+
+    private final LoadStats checkInStats = new LoadStats("check-in");
+    private final LoadStats rollCallStats = new LoadStats("roll-call record");
+    private final LoadStats uploadStats = new LoadStats("upload");
+    private final LoadStats editStats = new LoadStats("edit echo");
+    private final LoadStats quizStats = new LoadStats("quiz result");
+    private final List<LoadStats> stats = List.of(checkInStats, rollCallStats, uploadStats, editStats, quizStats);
+
+    private final ScheduledExecutorService pacer = Executors.newSingleThreadScheduledExecutor();
+    private final List<ScheduledFuture<?>> paced = new ArrayList<>();
+    // Calls started but not yet answered, waited for before the report
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong checkIns = new AtomicLong();
+    private final AtomicLong uploads = new AtomicLong();
+    private final AtomicLong quizStudents = new AtomicLong();
+    // When each check-in was due, by the number in its student id, for roll-call latency
+    private final AtomicLongArray checkInDue =
+            new AtomicLongArray((int) Math.ceil(CHECKIN_RATE * (WARMUP_S + DURATION_S)) + 1);
+    private final List<ClientCallStreamObserver<RollCallRequest>> rollCalls = new ArrayList<>();
+    private final List<Editor> editors = new ArrayList<>();
+    private volatile boolean closing;
+
+    private Path dataDirectory;
+    private AttendanceServer attendance;
+    private ContentServer content;
+    private AssessmentServer assessment;
+    private Server server;
+    private ManagedChannel channel;
+    private AttendanceServiceGrpc.AttendanceServiceStub attendanceStub;
+    private ContentDeliveryServiceGrpc.ContentDeliveryServiceStub contentStub;
+    private AssessmentServiceGrpc.AssessmentServiceStub assessmentStub;
+
+    private static double rate(String property, double defaultRate) {
+        String value = System.getProperty(property);
+        return value == null ? defaultRate : Double.parseDouble(value);
+    }
+
+    /** Starts the three services in this JVM and connects to them. */
+    private void host() throws IOException {
+        dataDirectory = Files.createTempDirectory("campus-load");
+        attendance = new AttendanceServer(null);
+        attendance.recover();
+        content = new ContentServer(dataDirectory);
+        content.recover();
+        assessment = new AssessmentServer();
+        if (TRANSPORT.equals("tcp")) {
+            server = ServerBuilder.forPort(0)
+                    .addService(attendance)
+                    .addService(content)
+                    .addService(assessment)
+                    .intercept(RpcMetrics.serverInterceptor())
+                    .build()
+                    .start();
+            channel = ManagedChannelBuilder.forAddress("localhost", server.getPort())
+                    .usePlaintext()
+                    .intercept(RpcMetrics.clientInterceptor())
+                    .build();
+        } else {
+            String name = InProcessServerBuilder.generateName();
+            server = InProcessServerBuilder.forName(name)
+                    .addService(attendance)
+                    .addService(content)
+                    .addService(assessment)
+                    .intercept(RpcMetrics.serverInterceptor())
+                    .build()
+                    .start();
+            channel = InProcessChannelBuilder.forName(name).intercept(RpcMetrics.clientInterceptor()).build();
+        }
+        attendanceStub = AttendanceServiceGrpc.newStub(channel);
+        contentStub = ContentDeliveryServiceGrpc.newStub(channel);
+        assessmentStub = AssessmentServiceGrpc.newStub(channel);
+    }
+
+    public void run(PrintStream out) throws IOException, InterruptedException {
+        host();
+        prepare();
+        if (CHECKIN_RATE > 0) {
+            pace(CHECKIN_RATE, this::checkIn);
+        }
+        if (UPLOAD_RATE > 0) {
+            pace(UPLOAD_RATE, this::upload);
+        }
+        if (EDITOR_RATE > 0 && !editors.isEmpty()) {
+            AtomicInteger next = new AtomicInteger();
+            pace(EDITOR_RATE * editors.size(), due -> editors.get(next.getAndIncrement() % editors.size()).type(due));
+        }
+        if (QUIZ_RATE > 0) {
+            pace(QUIZ_RATE, this::answerQuiz);
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(WARMUP_S));
+        stats.forEach(LoadStats::startWindow);
+        long startNanos = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(DURATION_S));
+        paced.forEach(task -> task.cancel(false));
+        stats.forEach(LoadStats::endWindow);
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        long drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_S);
+        while ((outstanding.get() > 0 || unacknowledgedEdits() > 0) && System.nanoTime() < drainUntil) {
+            Thread.sleep(10);
+        }
+        out.printf("%s transport, %.1f s measured after %d s warm-up%n", TRANSPORT, seconds, WARMUP_S);
+        LoadStats.header(out);
+        for (LoadStats stat : stats) {
+            stat.report(out, seconds);
+        }
+        if (outstanding.get() > 0 || unacknowledgedEdits() > 0) {
+            out.println(outstanding.get() + " calls and " + unacknowledgedEdits()
+                    + " keystrokes were still unanswered after " + DRAIN_S + " s");
+        }
+    }
+
+    /** Sets the quiz and opens the roll-call and editor streams before any load starts. */
+    private void prepare() throws InterruptedException {
+        if (QUIZ_RATE > 0) {
+            SetQuizRequest.Builder quiz = SetQuizRequest.newBuilder().setQuizId(QUIZ_ID).setClassId("LOAD");
+            for (int q = 0; q < QUIZ_QUESTIONS; q++) {
+                quiz.addQuestions(QuizQuestion.newBuilder()
+                        .setQuestionId("Q" + q)
+                        .setQuestionText("Question " + q)
+                        .setCorrectAnswer("A"));
+            }
+            AssessmentServiceGrpc.newBlockingStub(channel).setQuiz(quiz.build());
+        }
+        if (CHECKIN_RATE > 0) {
+            for (int i = 0; i < ROLLCALL_SUBSCRIBERS; i++) {
+                subscribe("LOAD-" + (i % CLASSES));
+            }
+        }
+        for (int i = 0; i < EDITORS; i++) {
+            Editor editor = new Editor("load-doc-" + (i % DOCUMENTS), "editor" + i);
+            editor.connect();
+            editors.add(editor);
+        }
+        for (Editor editor : editors) {
+            if (!editor.joined.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException(editor.userId + " did not receive its snapshot");
+            }
+        }
+    }
+
+    /** Runs {@code operation} {@code perSecond} times a second, passing the time each run was due. */
+    private void pace(double perSecond, LongConsumer operation) {
+        long startNanos = System.nanoTime();
+        double intervalNanos = 1e9 / perSecond;
+        long[] issued = new long[1];
+        paced.add(pacer.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            long due;
+            while ((due = startNanos + (long) (issued[0] * intervalNanos)) <= now) {
+                issued[0]++;
+                try {
+                    operation.accept(due);
+                } catch (RuntimeException e) {
+                    logger.warning("Load operation failed: " + e.getMessage());
+                }
+            }
+        }, 0, 1, TimeUnit.MILLISECONDS));
+    }
+
+    private void checkIn(long due) {
+        long number = checkIns.getAndIncrement();
+        if (number < checkInDue.length()) {
+            checkInDue.set((int) number, due);
+        }
+        CheckInRequest request = CheckInRequest.newBuilder()
+                .setClassId("LOAD-" + (number % CLASSES))
+                .setStudent(Student.newBuilder()
+                        .setStudentId("S" + number)
+                        .setStudentName("Load student " + number))
+                .build();
+        outstanding.incrementAndGet();
+        attendanceStub.checkInStudent(request, new StreamObserver<CheckInResponse>() {
+            @Override
+            public void onNext(CheckInResponse response) {
+                if (response.getSuccess()) {
+                    checkInStats.record(due);
+                } else {
+                    checkInStats.error();
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                checkInStats.error();
+                outstanding.decrementAndGet();
+            }
+
+            @Override
+            public void onCompleted() {
+                outstanding.decrementAndGet();
+            }
+        });
+    }
+
+    private void subscribe(String classId) {
+        RollCallRequest request = RollCallRequest.newBuilder().setClassId(classId).build();
+        attendanceStub.streamAttendanceRecords(request, new ClientResponseObserver<RollCallRequest, AttendanceRecord>() {
+            @Override
+            public void beforeStart(ClientCallStreamObserver<RollCallRequest> requestStream) {
+                synchronized (rollCalls) {
+                    rollCalls.add(requestStream);
+                }
+            }
+
+            @Override
+            public void onNext(AttendanceRecord record) {
+                if (record.getStudentId().equals("SYSTEM")) {
+                    // Heartbeat sent when the stream opens before anyone has checked in
+                    return;
+                }
+                int number = Integer.parseInt(record.getStudentId().substring(1));
+                if (number < checkInDue.length()) {
+                    rollCallStats.record(checkInDue.get(number));
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                if (!closing) {
+                    rollCallStats.error();
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+    }
+
+    private void upload(long due) {
+        String fileName = "load-" + uploads.getAndIncrement() + ".bin";
+        outstanding.incrementAndGet();
+        contentStub.uploadPresentation(new ClientResponseObserver<ContentChunk, UploadContentResponse>() {
+            private long sent;
+            private boolean stored;
+
+            @Override
+            public void beforeStart(ClientCallStreamObserver<ContentChunk> requestStream) {
+                // Random bytes, so the chunk store cannot deduplicate one upload against another
+                requestStream.setOnReadyHandler(() -> {
+                    while (requestStream.isReady() && sent < UPLOAD_BYTES) {
+                        byte[] data = new byte[(int) Math.min(UPLOAD_CHUNK_BYTES, UPLOAD_BYTES - sent)];
+                        ThreadLocalRandom.current().nextBytes(data);
+                        requestStream.onNext(ContentChunk.newBuilder()
+                                .setFileName(fileName)
+                                .setOffset(sent)
+                                .setData(UnsafeByteOperations.unsafeWrap(data))
+                                .build());
+                        sent += data.length;
+                        if (sent == UPLOAD_BYTES) {
+                            requestStream.onCompleted();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onNext(UploadContentResponse response) {
+                stored = response.getSuccess();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                uploadStats.error();
+                outstanding.decrementAndGet();
+            }
+
+            @Override
+            public void onCompleted() {
+                if (stored) {
+                    uploadStats.record(due);
+                    uploadStats.bytes(UPLOAD_BYTES);
+                } else {
+                    uploadStats.error();
+                }
+                outstanding.decrementAndGet();
+            }
+        });
+    }
+
+    private void answerQuiz(long due) {
+        String studentId = "Q" + quizStudents.getAndIncrement();
+        outstanding.incrementAndGet();
+        StreamObserver<StudentAnswer> answers = assessmentStub.getQuizResults(new StreamObserver<AssessmentResult>() {
+            private boolean graded;
+
+            @Override
+            public void onNext(AssessmentResult result) {
+                graded = result.getTotalQuestions() == QUIZ_QUESTIONS;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                quizStats.error();
+                outstanding.decrementAndGet();
+            }
+
+            @Override
+            public void onCompleted() {
+                if (graded) {
+                    quizStats.record(due);
+                } else {
+                    quizStats.error();
+                }
+                outstanding.decrementAndGet();
+            }
+        });
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int q = 0; q < QUIZ_QUESTIONS; q++) {
+            answers.onNext(StudentAnswer.newBuilder()
+                    .setStudentId(studentId)
+                    .setQuizId(QUIZ_ID)
+                    .setQuestionId("Q" + q)
+                    .setSubmittedAnswer(String.valueOf((char) ('A' + random.nextInt(4))))
+                    .build());
+        }
+        answers.onCompleted();
+    }
+
+    private int unacknowledgedEdits() {
+        int count = 0;
+        for (Editor editor : editors) {
+            synchronized (editor) {
+                count += editor.unacknowledged.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * One collaborative editor. It types single characters against the last revision it has
+     * seen; each keystroke is acknowledged when the editor's own insert comes back in a
+     * broadcast, where consecutive keystrokes may arrive merged into one longer insert.
+     */
+    private final class Editor implements StreamObserver<DocumentEditBatch> {
+        final String documentId;
+        final String userId;
+        final CountDownLatch joined = new CountDownLatch(1);
+        // Due times of keystrokes not yet broadcast back, in typing order
+        final ArrayDeque<Long> unacknowledged = new ArrayDeque<>();
+        private long revision;
+        private int length;
+        private StreamObserver<DocumentEdit> edits;
+
+        Editor(String documentId, String userId) {
+            this.documentId = documentId;
+            this.userId = userId;
+        }
+
+        void connect() {
+            edits = contentStub.collaborateOnDocumentBatched(this);
+            edits.onNext(DocumentEdit.newBuilder()
+                    .setDocumentId(documentId)
+                    .setUserId(userId)
+                    .setEditAction("join")
+                    .build());
+        }
+
+        void type(long due) {
+            int position;
+            long base;
+            synchronized (this) {
+                position = ThreadLocalRandom.current().nextInt(length + 1);
+                base = revision;
+                unacknowledged.add(due);
+            }
+            edits.onNext(DocumentEdit.newBuilder()
+                    .setDocumentId(documentId)
+                    .setUserId(userId)
+                    .setEditAction("insert")
+                    .setCursorPosition(position)
+                    .setPayload(String.valueOf((char) ('a' + position % 26)))
+                    .setBaseRevision(base)
+                    .build());
+        }
+
+        void close() {
+            edits.onCompleted();
+        }
+
+        @Override
+        public synchronized void onNext(DocumentEditBatch batch) {
+            for (DocumentEdit edit : batch.getEditsList()) {
+                switch (edit.getEditAction()) {
+                    case "snapshot":
+                        length = edit.getPayload().length();
+                        joined.countDown();
+                        break;
+                    case "insert":
+                        length += edit.getPayload().length();
+                        if (edit.getUserId().equals(userId)) {
+                            for (int i = 0; i < edit.getPayload().length() && !unacknowledged.isEmpty(); i++) {
+                                editStats.record(unacknowledged.poll());
+                            }
+                        }
+                        break;
+                    case "delete":
+                        length -= edit.getLength();
+                        break;
+                    default:
+                        break;
+                }
+                revision = Math.max(revision, edit.getRevision());
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            editStats.error();
+            synchronized (this) {
+                unacknowledged.clear();
+            }
+            joined.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+
+    /** Closes the streams, stops the services and deletes their data. */
+    public void close() throws IOException, InterruptedException {
+        closing = true;
+        pacer.shutdownNow();
+        pacer.awaitTermination(5, TimeUnit.SECONDS);
+        for (Editor editor : editors) {
+            editor.close();
+        }
+        synchronized (rollCalls) {
+            for (ClientCallStreamObserver<RollCallRequest> rollCall : rollCalls) {
+                rollCall.cancel("Load finished", null);
+            }
+        }
+        if (channel != null) {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        if (server != null) {
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        if (attendance != null) {
+            attendance.stop();
+        }
+        if (content != null) {
+            content.stop();
+        }
+        if (assessment != null) {
+            assessment.stop();
+        }
+        if (dataDirectory != null) {
+            try (Stream<Path> paths = Files.walk(dataDirectory)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.run(System.out);
+        } finally {
+            generator.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.unsmart.campus.client;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latencies, errors and bytes for one kind of load-generator operation. Latencies are measured
+ * from when an operation was due rather than when it was sent, so a stalled generator or server
+ * shows up as latency instead of quietly lowering the offered rate.
+ */
+final class LoadStats {
+    final String name;
+    private final Recorder latencies = new Recorder(3);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private Histogram window;
+    private long windowErrors;
+    private long windowBytes;
+
+    LoadStats(String name) {
+        this.name = name;
+    }
+
+    void record(long dueNanos) {
+        latencies.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - dueNanos)));
+    }
+
+    void error() {
+        errors.increment();
+    }
+
+    void bytes(long count) {
+        bytes.add(count);
+    }
+
+    /** Discards everything recorded so far, at the end of the warm-up. */
+    void startWindow() {
+        latencies.getIntervalHistogram();
+        errors.reset();
+        bytes.reset();
+    }
+
+    /** Closes the measurement window; operations that finish later still count towards latency. */
+    void endWindow() {
+        window = latencies.getIntervalHistogram();
+        windowErrors = errors.sumThenReset();
+        windowBytes = bytes.sumThenReset();
+    }
+
+    void report(PrintStream out, double seconds) {
+        Histogram all = window.copy();
+        all.add(latencies.getIntervalHistogram());
+        out.printf("%-16s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %7d",
+                name, window.getTotalCount(), window.getTotalCount() / seconds,
+                millis(all, 50), millis(all, 90), millis(all, 99), millis(all, 99.9),
+                all.getMaxValue() / 1000.0, windowErrors + errors.sum());
+        if (windowBytes > 0) {
+            out.printf("  %.1f MB/s", windowBytes / seconds / (1 << 20));
+        }
+        out.println();
+    }
+
+    static void header(PrintStream out) {
+        out.printf("%-16s %9s %9s %9s %9s %9s %9s %9s %7s%n",
+                "operation", "count", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
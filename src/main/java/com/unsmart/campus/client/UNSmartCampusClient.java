@@ -1,29 +1,43 @@
 package com.unsmart.campus.client;
 
 import com.google.protobuf.ByteString;
+import com.unsmart.campus.executor.CallExecutor;
 import com.unsmart.campus.jmdns.ServiceDiscovery;
 import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import io.grpc.stub.StreamObserver;
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 // Import generated gRPC classes
 import com.unsmart.campus.attendance.*;
 import com.unsmart.campus.content.*;
 import com.unsmart.campus.assessment.*;
 
- import java.util.HashMap;
+ import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class UNSmartCampusClient extends JFrame {
     private final JTextArea logArea;
     private final ServiceDiscovery serviceDiscovery;
-    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final ChannelRegistry channels;
+    // Runs response callbacks and, off the event dispatch thread, the button actions (client.executor)
+    private final CallExecutor callExecutor = CallExecutor.forService("client");
+    // Last roll-call sequence seen per class, so a restarted stream only fetches new check-ins
+    private final Map<String, Long> rollCallCursors = new ConcurrentHashMap<>();
 
     // Input fields
     private JTextField studentIdField;
@@ -56,14 +70,16 @@ public class UNSmartCampusClient extends JFrame {
         add(new JScrollPane(logArea), BorderLayout.CENTER);
 
         // Button panel
-        JPanel buttonPanel = new JPanel(new GridLayout(3, 2, 10, 10));
+        JPanel buttonPanel = new JPanel(new GridLayout(4, 2, 10, 10));
         buttonPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
         // Attendance buttons
         JButton checkInButton = new JButton("Check In Student");
         checkInButton.setToolTipText("Register a student's attendance");
         JButton rollCallButton = new JButton("Start Roll Call Stream");
-        rollCallButton.setToolTipText("Stream live attendance records every 5 seconds");
+        rollCallButton.setToolTipText("Stream live attendance records as students check in");
+        JButton reportButton = new JButton("Attendance Report");
+        reportButton.setToolTipText("Show the class's sessions and the students below 75% attendance");
 
         // Content buttons
         JButton uploadContentButton = new JButton("Upload Presentation");
@@ -80,6 +96,7 @@ public class UNSmartCampusClient extends JFrame {
         // Add buttons to panel
         buttonPanel.add(checkInButton);
         buttonPanel.add(rollCallButton);
+        buttonPanel.add(reportButton);
         buttonPanel.add(uploadContentButton);
         buttonPanel.add(collaborateButton);
         buttonPanel.add(setQuizButton);
@@ -142,26 +159,33 @@ public class UNSmartCampusClient extends JFrame {
             appendLog("Failed to start service discovery: " + e.getMessage());
             throw new RuntimeException("Failed to initialize service discovery", e);
         }
+        channels = new ChannelRegistry(serviceDiscovery, callExecutor);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                channels.close();
+                serviceDiscovery.close();
+                callExecutor.close();
+            }
+        });
 
         // Button actions
-        checkInButton.addActionListener(e -> handleCheckIn());
-        rollCallButton.addActionListener(e -> handleRollCall());
-        uploadContentButton.addActionListener(e -> handleUploadContent());
-        collaborateButton.addActionListener(e -> handleCollaborate());
-        setQuizButton.addActionListener(e -> handleSetQuiz());
-        getResultsButton.addActionListener(e -> handleGetResults());
+        Executor actions = callExecutor.taskExecutor();
+        checkInButton.addActionListener(e -> actions.execute(this::handleCheckIn));
+        rollCallButton.addActionListener(e -> actions.execute(this::handleRollCall));
+        reportButton.addActionListener(e -> actions.execute(this::handleAttendanceReport));
+        uploadContentButton.addActionListener(e -> actions.execute(this::handleUploadContent));
+        collaborateButton.addActionListener(e -> actions.execute(this::handleCollaborate));
+        setQuizButton.addActionListener(e -> actions.execute(this::handleSetQuiz));
+        getResultsButton.addActionListener(e -> actions.execute(this::handleGetResults));
     }
 
     private ManagedChannel getChannel(String serviceName) {
-        String serviceAddress = serviceDiscovery.getServiceAddress(serviceName);
-        if (serviceAddress == null) {
+        ManagedChannel channel = channels.channel(serviceName);
+        if (channel == null) {
             appendLog("Error: " + serviceName + " not found. Please ensure service is running.");
-            return null;
         }
-        String[] parts = serviceAddress.split(":");
-        String host = parts[0];
-        int port = Integer.parseInt(parts[1]);
-        return ManagedChannelBuilder.forAddress(host, port).usePlaintext().build();
+        return channel;
     }
 
     private void handleCheckIn() {
@@ -178,8 +202,8 @@ public class UNSmartCampusClient extends JFrame {
         if (channel == null) return;
 
         try {
-            AttendanceServiceGrpc.AttendanceServiceBlockingStub stub =
-                    AttendanceServiceGrpc.newBlockingStub(channel);
+            AttendanceServiceGrpc.AttendanceServiceBlockingStub stub = channels.stub("AttendanceService",
+                    AttendanceServiceGrpc.AttendanceServiceBlockingStub.class, AttendanceServiceGrpc::newBlockingStub);
 
             CheckInRequest request = CheckInRequest.newBuilder()
                     .setClassId(classId)
@@ -193,8 +217,6 @@ public class UNSmartCampusClient extends JFrame {
             appendLog("Check-in response: " + response.getMessage());
         } catch (StatusRuntimeException e) {
             appendLog("Error: " + e.getStatus().getDescription());
-        } finally {
-            channel.shutdown();
         }
     }
 
@@ -209,16 +231,20 @@ public class UNSmartCampusClient extends JFrame {
         if (channel == null) return;
 
         try {
-            AttendanceServiceGrpc.AttendanceServiceStub stub =
-                    AttendanceServiceGrpc.newStub(channel);
+            AttendanceServiceGrpc.AttendanceServiceStub stub = channels.stub("AttendanceService",
+                    AttendanceServiceGrpc.AttendanceServiceStub.class, AttendanceServiceGrpc::newStub);
 
             RollCallRequest request = RollCallRequest.newBuilder()
                     .setClassId(classId)
+                    .setResumeAfterSequence(rollCallCursors.getOrDefault(classId, 0L))
                     .build();
 
             stub.streamAttendanceRecords(request, new StreamObserver<AttendanceRecord>() {
                 @Override
                 public void onNext(AttendanceRecord record) {
+                    if (record.getSequence() > 0) {
+                        rollCallCursors.merge(classId, record.getSequence(), Math::max);
+                    }
                     appendLog("Live Roll Call: " + record.getStudentName() +
                             " checked in at " + record.getTimestamp());
                 }
@@ -235,7 +261,35 @@ public class UNSmartCampusClient extends JFrame {
             });
         } catch (Exception e) {
             appendLog("Error starting roll call: " + e.getMessage());
-            channel.shutdown();
+        }
+    }
+
+    private void handleAttendanceReport() {
+        String classId = classIdField.getText();
+        if (classId.isEmpty()) {
+            appendLog("Error: Class ID must be specified!");
+            return;
+        }
+
+        ManagedChannel channel = getChannel("AttendanceService");
+        if (channel == null) return;
+
+        try {
+            AttendanceServiceGrpc.AttendanceServiceBlockingStub stub = channels.stub("AttendanceService",
+                    AttendanceServiceGrpc.AttendanceServiceBlockingStub.class, AttendanceServiceGrpc::newBlockingStub);
+
+            AttendanceAnalyticsResponse report = stub.getAttendanceAnalytics(AttendanceAnalyticsRequest.newBuilder()
+                    .setClassId(classId)
+                    .build());
+            appendLog("Attendance report for " + classId + ": " + report.getSessionsCount() + " sessions, "
+                    + report.getRatesCount() + " students");
+            for (SessionAttendance session : report.getSessionsList()) {
+                appendLog("  Session " + session.getSessionId() + ": " + session.getPresent() + " present");
+            }
+            appendLog("Below 75%: " + (report.getBelowThresholdCount() == 0
+                    ? "none" : String.join(", ", report.getBelowThresholdList())));
+        } catch (StatusRuntimeException e) {
+            appendLog("Error: " + e.getStatus().getDescription());
         }
     }
 
@@ -244,8 +298,8 @@ public class UNSmartCampusClient extends JFrame {
         if (channel == null) return;
 
         try {
-            ContentDeliveryServiceGrpc.ContentDeliveryServiceStub stub =
-                    ContentDeliveryServiceGrpc.newStub(channel);
+            ContentDeliveryServiceGrpc.ContentDeliveryServiceStub stub = channels.stub("ContentService",
+                    ContentDeliveryServiceGrpc.ContentDeliveryServiceStub.class, ContentDeliveryServiceGrpc::newStub);
 
             StreamObserver<UploadContentResponse> responseObserver =
                     new StreamObserver<UploadContentResponse>() {
@@ -268,21 +322,36 @@ public class UNSmartCampusClient extends JFrame {
             StreamObserver<ContentChunk> requestObserver =
                     stub.uploadPresentation(responseObserver);
 
-            // Simulate sending a file in chunks
-            requestObserver.onNext(ContentChunk.newBuilder()
-                    .setFileName("lecture1.ppt")
-                    .setData(ByteString.copyFromUtf8("First chunk of data"))
-                    .build());
-
-            requestObserver.onNext(ContentChunk.newBuilder()
-                    .setFileName("lecture1.ppt")
-                    .setData(ByteString.copyFromUtf8("Second chunk of data"))
-                    .build());
+            // Simulate sending a file, cut the same way the server stores it
+            byte[] file = "First chunk of data\nSecond chunk of data".getBytes(StandardCharsets.UTF_8);
+            List<String> hashes = new ArrayList<>();
+            List<ByteString> pieces = new ArrayList<>();
+            ContentChunker chunker = new ContentChunker((data, length) -> {
+                hashes.add(ContentChunker.hash(data, 0, length));
+                pieces.add(ByteString.copyFrom(data, 0, length));
+            });
+            chunker.update(file, 0, file.length);
+            chunker.flush();
+
+            // Chunks the server already holds are sent by hash only
+            Set<String> missing = new HashSet<>(channels.stub("ContentService",
+                            ContentDeliveryServiceGrpc.ContentDeliveryServiceBlockingStub.class,
+                            ContentDeliveryServiceGrpc::newBlockingStub)
+                    .findMissingChunks(ChunkHashes.newBuilder().addAllHashes(hashes).build())
+                    .getHashesList());
+            for (int i = 0; i < hashes.size(); i++) {
+                ContentChunk.Builder chunk = ContentChunk.newBuilder().setFileName("lecture1.ppt");
+                if (missing.contains(hashes.get(i))) {
+                    chunk.setData(pieces.get(i));
+                } else {
+                    chunk.setChunkHash(hashes.get(i));
+                }
+                requestObserver.onNext(chunk.build());
+            }
 
             requestObserver.onCompleted();
         } catch (Exception e) {
             appendLog("Error uploading content: " + e.getMessage());
-            channel.shutdown();
         }
     }
 
@@ -291,8 +360,8 @@ public class UNSmartCampusClient extends JFrame {
         if (channel == null) return;
 
         try {
-            ContentDeliveryServiceGrpc.ContentDeliveryServiceStub stub =
-                    ContentDeliveryServiceGrpc.newStub(channel);
+            ContentDeliveryServiceGrpc.ContentDeliveryServiceStub stub = channels.stub("ContentService",
+                    ContentDeliveryServiceGrpc.ContentDeliveryServiceStub.class, ContentDeliveryServiceGrpc::newStub);
 
             StreamObserver<DocumentEdit> responseObserver =
                     new StreamObserver<DocumentEdit>() {
@@ -334,7 +403,6 @@ public class UNSmartCampusClient extends JFrame {
             requestObserver.onCompleted();
         } catch (Exception e) {
             appendLog("Error collaborating: " + e.getMessage());
-            channel.shutdown();
         }
     }
 
@@ -351,9 +419,6 @@ public class UNSmartCampusClient extends JFrame {
         if (channel == null) return;
 
         try {
-            AssessmentServiceGrpc.AssessmentServiceBlockingStub stub =
-                    AssessmentServiceGrpc.newBlockingStub(channel);
-
             SetQuizRequest request = SetQuizRequest.newBuilder()
                     .setQuizId(quizId)
                     .setClassId(classId)
@@ -367,12 +432,14 @@ public class UNSmartCampusClient extends JFrame {
                             .setCorrectAnswer("Paris"))
                     .build();
 
-            SetQuizResponse response = stub.setQuiz(request);
-            appendLog("Set Quiz response: " + response.getMessage());
+            // Each replica grades from its own copy of the quiz, so every one of them needs it
+            List<SetQuizResponse> responses = channels.callEachReplica("AssessmentService",
+                    replica -> AssessmentServiceGrpc.newBlockingStub(replica).setQuiz(request));
+            for (SetQuizResponse response : responses) {
+                appendLog("Set Quiz response: " + response.getMessage());
+            }
         } catch (StatusRuntimeException e) {
             appendLog("Error: " + e.getStatus().getDescription());
-        } finally {
-            channel.shutdown();
         }
     }
 
@@ -381,72 +448,80 @@ public class UNSmartCampusClient extends JFrame {
     if (channel == null) return;
 
     try {
-        AssessmentServiceGrpc.AssessmentServiceStub stub = 
-                AssessmentServiceGrpc.newStub(channel);
+        AssessmentServiceGrpc.AssessmentServiceStub stub = channels.stub("AssessmentService",
+                AssessmentServiceGrpc.AssessmentServiceStub.class, AssessmentServiceGrpc::newStub);
+
+        // Student S12345 (1 correct, 1 wrong), student S67890 (all correct)
+        List<StudentAnswer> answers = List.of(
+                StudentAnswer.newBuilder()
+                        .setStudentId("S12345")
+                        .setQuizId("QUIZ1")
+                        .setQuestionId("Q1")
+                        .setSubmittedAnswer("4")  // Correct
+                        .build(),
+                StudentAnswer.newBuilder()
+                        .setStudentId("S12345")
+                        .setQuizId("QUIZ1")
+                        .setQuestionId("Q2")
+                        .setSubmittedAnswer("London")  // Wrong (should be "Paris")
+                        .build(),
+                StudentAnswer.newBuilder()
+                        .setStudentId("S67890")
+                        .setQuizId("QUIZ1")
+                        .setQuestionId("Q1")
+                        .setSubmittedAnswer("4")  // Correct
+                        .build(),
+                StudentAnswer.newBuilder()
+                        .setStudentId("S67890")
+                        .setQuizId("QUIZ1")
+                        .setQuestionId("Q2")
+                        .setSubmittedAnswer("Paris")  // Correct
+                        .build());
 
         // Track scores per student
         Map<String, Integer> studentScores = new HashMap<>();
         Map<String, Integer> totalQuestions = new HashMap<>();
 
-        StreamObserver<AssessmentResult> responseObserver =
-                new StreamObserver<AssessmentResult>() {
-                    @Override
-                    public void onNext(AssessmentResult result) {
-                        String studentId = result.getStudentId();
-                        studentScores.merge(studentId, result.getScore(), Integer::sum);
-                        // Only set the total questions once per student
-                        totalQuestions.putIfAbsent(studentId, result.getTotalQuestions());
-                    }
+        stub.getQuizResults(new ClientResponseObserver<StudentAnswer, AssessmentResult>() {
+            private boolean allSent;
 
-                    @Override
-                    public void onError(Throwable t) {
-                        appendLog("Error: " + t.getMessage());
+            @Override
+            public void beforeStart(ClientCallStreamObserver<StudentAnswer> requestStream) {
+                // Only send answers while the transport can take them
+                Iterator<StudentAnswer> pending = answers.iterator();
+                requestStream.setOnReadyHandler(() -> {
+                    while (requestStream.isReady() && pending.hasNext()) {
+                        requestStream.onNext(pending.next());
                     }
-
-                    @Override
-                    public void onCompleted() {
-                        // Print final aggregated results
-                        studentScores.forEach((studentId, score) -> {
-                            appendLog("Quiz Result: Student " + studentId + 
-                                    " scored " + score + "/" + totalQuestions.get(studentId));
-                        });
+                    if (!pending.hasNext() && !allSent) {
+                        allSent = true;
+                        requestStream.onCompleted();
                     }
-                };
-
-        StreamObserver<StudentAnswer> requestObserver =
-                stub.getQuizResults(responseObserver);
-
-        // Student S12345 (1 correct, 1 wrong)
-        requestObserver.onNext(StudentAnswer.newBuilder()
-                .setStudentId("S12345")
-                .setQuizId("QUIZ1")
-                .setQuestionId("Q1")
-                .setSubmittedAnswer("4")  // Correct
-                .build());
-
-        requestObserver.onNext(StudentAnswer.newBuilder()
-                .setStudentId("S12345")
-                .setQuizId("QUIZ1")
-                .setQuestionId("Q2")
-                .setSubmittedAnswer("London")  // Wrong (should be "Paris")
-                .build());
-
-        // Student S67890 (all correct)
-        requestObserver.onNext(StudentAnswer.newBuilder()
-                .setStudentId("S67890")
-                .setQuizId("QUIZ1")
-                .setQuestionId("Q1")
-                .setSubmittedAnswer("4")  // Correct
-                .build());
-
-        requestObserver.onNext(StudentAnswer.newBuilder()
-                .setStudentId("S67890")
-                .setQuizId("QUIZ1")
-                .setQuestionId("Q2")
-                .setSubmittedAnswer("Paris")  // Correct
-                .build());
-
-        requestObserver.onCompleted();
+                });
+            }
+
+            @Override
+            public void onNext(AssessmentResult result) {
+                // Results are cumulative, so the latest one per student wins
+                String studentId = result.getStudentId();
+                studentScores.put(studentId, result.getScore());
+                totalQuestions.put(studentId, result.getTotalQuestions());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                appendLog("Error: " + t.getMessage());
+            }
+
+            @Override
+            public void onCompleted() {
+                // Print final aggregated results
+                studentScores.forEach((studentId, score) -> {
+                    appendLog("Quiz Result: Student " + studentId +
+                            " scored " + score + "/" + totalQuestions.get(studentId));
+                });
+            }
+        });
     } catch (Exception e) {
         appendLog("Error: " + e.getMessage());
     }
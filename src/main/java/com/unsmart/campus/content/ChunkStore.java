@@ -0,0 +1,94 @@
+package com.unsmart.campus.content;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable chunks stored once under their SHA-256, shared by every file and version that
+ * contains them. Only the hash to length map is kept on the heap.
+ */
+class ChunkStore {
+    private final Path directory;
+    private final ConcurrentMap<String, Integer> lengths = new ConcurrentHashMap<>();
+
+    ChunkStore(Path directory) {
+        this.directory = directory;
+    }
+
+    void load() throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(directory)) {
+            for (Path shard : shards) {
+                try (DirectoryStream<Path> chunks = Files.newDirectoryStream(shard)) {
+                    for (Path chunk : chunks) {
+                        String name = chunk.getFileName().toString();
+                        if (name.endsWith(".tmp")) {
+                            Files.deleteIfExists(chunk);
+                        } else {
+                            lengths.put(name, (int) Files.size(chunk));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    static boolean isValidHash(String hash) {
+        if (hash.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < hash.length(); i++) {
+            if (Character.digit(hash.charAt(i), 16) < 0 || Character.isUpperCase(hash.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean contains(String hash) {
+        return lengths.containsKey(hash);
+    }
+
+    /** Returns the chunk's length, or -1 if it is not stored. */
+    int length(String hash) {
+        return lengths.getOrDefault(hash, -1);
+    }
+
+    /** Stores the chunk unless it is already present; returns whether it was new. */
+    boolean put(String hash, byte[] data, int length) throws IOException {
+        if (lengths.containsKey(hash)) {
+            return false;
+        }
+        Path target = path(hash);
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), hash, ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        // Concurrent uploads of the same chunk write identical bytes, so either copy may win
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return lengths.putIfAbsent(hash, length) == null;
+    }
+
+    /** Forgets and deletes a chunk; callers make sure nothing references it. */
+    void remove(String hash) throws IOException {
+        lengths.remove(hash);
+        Files.deleteIfExists(path(hash));
+    }
+
+    Path path(String hash) {
+        return directory.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+}
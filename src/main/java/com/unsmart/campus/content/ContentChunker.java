@@ -0,0 +1,85 @@
+package com.unsmart.campus.content;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.SplittableRandom;
+
+/**
+ * Content-defined chunking with a Gear rolling hash. Cut points depend only on the bytes
+ * since the previous cut, so an edit early in a deck only changes the chunks around it and
+ * every later chunk keeps its hash. Clients run the same chunker to find out which chunks
+ * the server already has before uploading.
+ */
+public final class ContentChunker {
+    public static final int MIN_CHUNK_SIZE = 16 << 10;
+    public static final int MAX_CHUNK_SIZE = 256 << 10;
+    // 16 mask bits give an average of 64 KiB past the minimum
+    private static final long CUT_MASK = 0xFFFFL << 48;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EEDC0DEL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Receives each completed chunk; {@code data} is only valid for the duration of the call. */
+    public interface ChunkSink {
+        void accept(byte[] data, int length) throws IOException;
+    }
+
+    private final ChunkSink sink;
+    private final byte[] buffer = new byte[MAX_CHUNK_SIZE];
+    private int length;
+    private long hash;
+
+    public ContentChunker(ChunkSink sink) {
+        this.sink = sink;
+    }
+
+    public void update(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            byte b = data.get();
+            buffer[length++] = b;
+            hash = (hash << 1) + GEAR[b & 0xFF];
+            if ((length >= MIN_CHUNK_SIZE && (hash & CUT_MASK) == 0) || length == MAX_CHUNK_SIZE) {
+                flush();
+            }
+        }
+    }
+
+    public void update(byte[] data, int offset, int count) throws IOException {
+        update(ByteBuffer.wrap(data, offset, count));
+    }
+
+    /** Emits whatever is buffered as a chunk, e.g. at the end of the stream. */
+    public void flush() throws IOException {
+        if (length > 0) {
+            sink.accept(buffer, length);
+        }
+        length = 0;
+        hash = 0;
+    }
+
+    /** Hex SHA-256 of a chunk, the key it is stored and referenced under. */
+    public static String hash(byte[] data, int offset, int count) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, offset, count);
+            return hex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
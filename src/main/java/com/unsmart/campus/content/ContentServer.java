@@ -1,82 +1,368 @@
 package com.unsmart.campus.content;
 
+import com.unsmart.campus.executor.CallExecutor;
 import com.unsmart.campus.jmdns.ServiceRegistration;
+import com.unsmart.campus.metrics.RpcMetrics;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 public class ContentServer extends ContentDeliveryServiceGrpc.ContentDeliveryServiceImplBase {
     private static final Logger logger = Logger.getLogger(ContentServer.class.getName());
-    private static final int PORT = 50052;
+    // 0 picks a free port, for running further replicas on the same host
+    private static final int PORT = Integer.getInteger("content.port", 50052);
+    private static final long MAPPED_CACHE_BYTES = Long.getLong("content.mapped.cache.bytes", 1L << 30);
+    private static final long COALESCE_WINDOW_MS = Long.getLong("content.collab.coalesce.ms", 10);
     private Server server;
-    private final ConcurrentMap<String, String> documentStore = new ConcurrentHashMap<>();
+    private CallExecutor callExecutor;
+    private ServiceRegistration registration;
+    private final ContentStore contentStore;
+    private final UploadSessions uploadSessions;
+    private final MappedChunkCache mappedChunks = new MappedChunkCache(MAPPED_CACHE_BYTES);
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final DocumentHub documentHub;
+
+    public ContentServer() {
+        this(Paths.get(System.getProperty("content.data.dir", "data/content")));
+    }
+
+    public ContentServer(Path dataDirectory) {
+        this.contentStore = new ContentStore(dataDirectory);
+        this.uploadSessions = new UploadSessions(dataDirectory.resolve("sessions"), contentStore);
+        this.documentHub = new DocumentHub(Runtime.getRuntime().availableProcessors(), scheduler,
+                COALESCE_WINDOW_MS, new DocumentJournal(dataDirectory.resolve("documents")));
+    }
 
     @Override
     public StreamObserver<ContentChunk> uploadPresentation(StreamObserver<UploadContentResponse> responseObserver) {
         return new StreamObserver<ContentChunk>() {
             private String fileName;
-            private StringBuilder content = new StringBuilder();
+            private ContentStore.Upload upload;
+            private boolean failed;
 
             @Override
             public void onNext(ContentChunk chunk) {
-                fileName = chunk.getFileName();
-                content.append(chunk.getData().toStringUtf8());
+                if (failed) {
+                    return;
+                }
+                try {
+                    if (upload == null) {
+                        fileName = chunk.getFileName();
+                        ContentStore.checkFileName(fileName);
+                        upload = contentStore.beginUpload();
+                    }
+                    if (!chunk.getChunkHash().isEmpty()) {
+                        upload.reference(chunk.getChunkHash());
+                    } else {
+                        upload.write(chunk.getData());
+                    }
+                } catch (IllegalArgumentException e) {
+                    fail(Status.INVALID_ARGUMENT.withDescription(e.getMessage()));
+                } catch (IOException e) {
+                    fail(Status.INTERNAL.withDescription("Failed to store upload").withCause(e));
+                }
             }
 
             @Override
             public void onError(Throwable t) {
                 logger.warning("Upload failed: " + t.getMessage());
+                if (upload != null) {
+                    upload.abort();
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+                if (failed) {
+                    return;
+                }
+                if (upload == null) {
+                    responseObserver.onNext(UploadContentResponse.newBuilder()
+                            .setSuccess(false)
+                            .setMessage("No content received")
+                            .build());
+                    responseObserver.onCompleted();
+                    return;
+                }
+                try {
+                    ContentStore.StoredFile stored = upload.commit(fileName);
+                    responseObserver.onNext(UploadContentResponse.newBuilder()
+                            .setSuccess(true)
+                            .setMessage("File uploaded successfully as version " + stored.version
+                                    + " (" + stored.size + " bytes, " + upload.newBytes() + " new)")
+                            .setVersion(stored.version)
+                            .setTotalBytes(stored.size)
+                            .setNewBytes(upload.newBytes())
+                            .build());
+                    responseObserver.onCompleted();
+                } catch (IOException e) {
+                    upload.abort();
+                    responseObserver.onError(Status.INTERNAL
+                            .withDescription("Failed to store upload")
+                            .withCause(e)
+                            .asRuntimeException());
+                }
+            }
+
+            private void fail(Status status) {
+                failed = true;
+                logger.warning("Upload failed: " + status.getDescription());
+                if (upload != null) {
+                    upload.abort();
+                }
+                responseObserver.onError(status.asRuntimeException());
+            }
+        };
+    }
+
+    @Override
+    public void downloadPresentation(DownloadRequest request, StreamObserver<ContentChunk> responseObserver) {
+        ContentStore.StoredFile file = request.getVersion() == 0
+                ? contentStore.lookup(request.getFileName())
+                : contentStore.lookup(request.getFileName(), request.getVersion());
+        if (file == null) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("No presentation named " + request.getFileName()
+                            + (request.getVersion() == 0 ? "" : " version " + request.getVersion()))
+                    .asRuntimeException());
+            return;
+        }
+        try {
+            DownloadStream.start(contentStore, file, request, mappedChunks,
+                    (ServerCallStreamObserver<ContentChunk>) responseObserver);
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
+        }
+    }
+
+    @Override
+    public void findMissingChunks(ChunkHashes request, StreamObserver<ChunkHashes> responseObserver) {
+        responseObserver.onNext(ChunkHashes.newBuilder()
+                .addAllHashes(contentStore.missingChunks(request.getHashesList()))
+                .build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void startUpload(StartUploadRequest request, StreamObserver<UploadSession> responseObserver) {
+        try {
+            UploadSessions.Session session = uploadSessions.start(
+                    request.getFileName(), request.getTotalSize(), request.getSha256());
+            responseObserver.onNext(toProto(session));
+            responseObserver.onCompleted();
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+        } catch (IOException e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Failed to start upload")
+                    .withCause(e)
+                    .asRuntimeException());
+        }
+    }
+
+    @Override
+    public StreamObserver<UploadRange> uploadRanges(StreamObserver<UploadRangeAck> responseObserver) {
+        return new StreamObserver<UploadRange>() {
+            private boolean failed;
+
+            @Override
+            public void onNext(UploadRange range) {
+                if (failed) {
+                    return;
+                }
+                UploadSessions.Session session = uploadSessions.get(range.getUploadId());
+                try {
+                    if (session == null) {
+                        throw Status.NOT_FOUND
+                                .withDescription("No upload session " + range.getUploadId())
+                                .asRuntimeException();
+                    }
+                    session.write(range.getOffset(), range.getData(), range.getCrc32C());
+                    responseObserver.onNext(UploadRangeAck.newBuilder()
+                            .setOffset(range.getOffset())
+                            .setLength(range.getData().size())
+                            .build());
+                } catch (StatusRuntimeException e) {
+                    fail(e);
+                } catch (IllegalArgumentException e) {
+                    fail(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+                } catch (IOException e) {
+                    fail(Status.INTERNAL.withDescription("Failed to store range").withCause(e).asRuntimeException());
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.warning("Range upload interrupted: " + t.getMessage());
             }
 
             @Override
             public void onCompleted() {
-                documentStore.put(fileName, content.toString());
-                responseObserver.onNext(UploadContentResponse.newBuilder()
-                        .setSuccess(true)
-                        .setMessage("File uploaded successfully")
-                        .build());
-                responseObserver.onCompleted();
+                if (!failed) {
+                    responseObserver.onCompleted();
+                }
+            }
+
+            private void fail(StatusRuntimeException e) {
+                failed = true;
+                logger.warning("Range upload failed: " + e.getStatus().getDescription());
+                responseObserver.onError(e);
             }
         };
     }
 
+    @Override
+    public void getUploadSession(UploadSessionRequest request, StreamObserver<UploadSession> responseObserver) {
+        UploadSessions.Session session = uploadSessions.get(request.getUploadId());
+        if (session == null) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("No upload session " + request.getUploadId())
+                    .asRuntimeException());
+            return;
+        }
+        responseObserver.onNext(toProto(session));
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void completeUpload(UploadSessionRequest request, StreamObserver<UploadContentResponse> responseObserver) {
+        UploadSessions.Session session = uploadSessions.get(request.getUploadId());
+        if (session == null) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("No upload session " + request.getUploadId())
+                    .asRuntimeException());
+            return;
+        }
+        if (!session.isComplete()) {
+            responseObserver.onError(Status.FAILED_PRECONDITION
+                    .withDescription("Upload " + request.getUploadId() + " is missing byte ranges")
+                    .asRuntimeException());
+            return;
+        }
+        try {
+            ContentStore.Upload upload = uploadSessions.complete(session);
+            if (upload == null) {
+                responseObserver.onError(Status.FAILED_PRECONDITION
+                        .withDescription("Upload " + request.getUploadId() + " was already completed or has expired")
+                        .asRuntimeException());
+                return;
+            }
+            ContentStore.StoredFile stored = upload.stored();
+            responseObserver.onNext(UploadContentResponse.newBuilder()
+                    .setSuccess(true)
+                    .setMessage("File uploaded successfully as version " + stored.version
+                            + " (" + stored.size + " bytes, " + upload.newBytes() + " new)")
+                    .setVersion(stored.version)
+                    .setTotalBytes(stored.size)
+                    .setNewBytes(upload.newBytes())
+                    .build());
+            responseObserver.onCompleted();
+        } catch (IllegalStateException e) {
+            responseObserver.onError(Status.DATA_LOSS.withDescription(e.getMessage()).asRuntimeException());
+        } catch (IOException e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Failed to store upload")
+                    .withCause(e)
+                    .asRuntimeException());
+        }
+    }
+
+    private static UploadSession toProto(UploadSessions.Session session) {
+        UploadSession.Builder proto = UploadSession.newBuilder()
+                .setUploadId(session.uploadId)
+                .setTotalSize(session.totalSize);
+        for (long[] range : session.receivedRanges()) {
+            proto.addReceived(ByteRange.newBuilder().setOffset(range[0]).setLength(range[1] - range[0]));
+        }
+        return proto.build();
+    }
+
     @Override
     public StreamObserver<DocumentEdit> collaborateOnDocument(StreamObserver<DocumentEdit> responseObserver) {
+        return collaborate(documentHub.connect((ServerCallStreamObserver<DocumentEdit>) responseObserver, false));
+    }
+
+    @Override
+    public StreamObserver<DocumentEdit> collaborateOnDocumentBatched(
+            StreamObserver<DocumentEditBatch> responseObserver) {
+        return collaborate(documentHub.connect((ServerCallStreamObserver<DocumentEditBatch>) responseObserver, true));
+    }
+
+    private StreamObserver<DocumentEdit> collaborate(DocumentHub.Editor editor) {
         return new StreamObserver<DocumentEdit>() {
             @Override
             public void onNext(DocumentEdit edit) {
-                responseObserver.onNext(edit);
+                if (!editor.joined()) {
+                    documentHub.join(editor, edit.getDocumentId());
+                    if (!editor.joined()) {
+                        return;
+                    }
+                } else if (!edit.getDocumentId().equals(editor.documentId())) {
+                    documentHub.close(editor, Status.INVALID_ARGUMENT
+                            .withDescription("A collaboration stream edits a single document"));
+                    return;
+                }
+                documentHub.submit(editor, edit);
             }
 
             @Override
             public void onError(Throwable t) {
                 logger.warning("Collaboration error: " + t.getMessage());
+                documentHub.leave(editor);
             }
 
             @Override
             public void onCompleted() {
-                responseObserver.onCompleted();
+                documentHub.finish(editor);
             }
         };
     }
 
+    /** Indexes the presentations already stored on disk and loads the collaborative documents. */
+    public void recover() throws IOException {
+        contentStore.load();
+        uploadSessions.load();
+        documentHub.recover();
+    }
+
     public void start() throws IOException {
-        server = ServerBuilder.forPort(PORT)
+        recover();
+        callExecutor = CallExecutor.forService("content");
+        server = callExecutor.applyTo(ServerBuilder.forPort(PORT))
                 .addService(this)
+                .intercept(RpcMetrics.serverInterceptor())
+                // Clients ping every 30 s by default to keep long streams alive
+                .permitKeepAliveTime(20, TimeUnit.SECONDS)
                 .build()
                 .start();
-        ServiceRegistration.registerService("ContentService", "_grpc._tcp.local.", PORT, "Content service");
+        registration = ServiceRegistration.registerService("ContentService", "_grpc._tcp.local.", server.getPort(), "Content service");
         Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
     }
 
-    private void stop() {
+    /** Stops serving and shuts down the threads and files the service holds. */
+    public void stop() {
+        if (registration != null) {
+            registration.close();
+            registration = null;
+        }
         if (server != null) {
             server.shutdown();
         }
+        if (callExecutor != null) {
+            callExecutor.close();
+        }
+        documentHub.shutdown();
+        scheduler.shutdown();
     }
 
     public void blockUntilShutdown() throws InterruptedException {
@@ -0,0 +1,371 @@
+package com.unsmart.campus.content;
+
+import com.google.protobuf.ByteString;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Uploaded presentations stored as manifests over a content-addressed {@link ChunkStore}.
+ * Every upload becomes a new version of its file name instead of overwriting the previous
+ * one, and chunks shared between files or versions are stored once. Only the manifests'
+ * chunk lists live on the heap.
+ */
+class ContentStore {
+    private static final Logger logger = Logger.getLogger(ContentStore.class.getName());
+    private static final int MANIFEST_MAGIC = 0x434D4E46;
+
+    private final Path directory;
+    private final Path manifestsDirectory;
+    private final ChunkStore chunks;
+    private final ConcurrentMap<String, List<StoredFile>> versions = new ConcurrentHashMap<>();
+    // Chunks used by uploads in progress; only these can be deleted again, by an abort
+    private final ConcurrentMap<String, Pin> pins = new ConcurrentHashMap<>();
+
+    ContentStore(Path directory) {
+        this.directory = directory;
+        this.manifestsDirectory = directory.resolve("manifests");
+        this.chunks = new ChunkStore(directory.resolve("chunks"));
+    }
+
+    /** Indexes stored chunks and manifests, importing any plain files left by older versions. */
+    void load() throws IOException {
+        chunks.load();
+        Files.createDirectories(manifestsDirectory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(manifestsDirectory)) {
+            for (Path file : files) {
+                List<StoredFile> loaded = new ArrayList<>();
+                try (DirectoryStream<Path> manifests = Files.newDirectoryStream(file, "*.manifest")) {
+                    for (Path manifest : manifests) {
+                        loaded.add(readManifest(file.getFileName().toString(), manifest));
+                    }
+                }
+                loaded.sort((a, b) -> Integer.compare(a.version, b.version));
+                if (!loaded.isEmpty()) {
+                    versions.put(file.getFileName().toString(), Collections.unmodifiableList(loaded));
+                }
+            }
+        }
+        importLegacyFiles();
+    }
+
+    Upload beginUpload() {
+        return new Upload();
+    }
+
+    /** Returns the latest version of the file, or {@code null} if it was never uploaded. */
+    StoredFile lookup(String fileName) {
+        List<StoredFile> stored = versions.get(fileName);
+        return stored == null ? null : stored.get(stored.size() - 1);
+    }
+
+    /** Returns the requested version (1-based) of the file, or {@code null} if there is none. */
+    StoredFile lookup(String fileName, int version) {
+        List<StoredFile> stored = versions.get(fileName);
+        if (stored == null) {
+            return null;
+        }
+        for (StoredFile file : stored) {
+            if (file.version == version) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the hashes from {@code hashes} that are not stored yet. */
+    List<String> missingChunks(List<String> hashes) {
+        List<String> missing = new ArrayList<>();
+        for (String hash : hashes) {
+            if (!chunks.contains(hash)) {
+                missing.add(hash);
+            }
+        }
+        return missing;
+    }
+
+    Path chunkPath(String hash) {
+        return chunks.path(hash);
+    }
+
+    static void checkFileName(String fileName) {
+        if (fileName.isEmpty() || fileName.equals(".") || fileName.equals("..")
+                || fileName.indexOf('/') >= 0 || fileName.indexOf('\\') >= 0 || fileName.indexOf('\0') >= 0) {
+            throw new IllegalArgumentException("Invalid file name: " + fileName);
+        }
+    }
+
+    private StoredFile publish(String fileName, List<String> hashes, List<Integer> lengths) throws IOException {
+        Path fileDirectory = manifestsDirectory.resolve(fileName);
+        Files.createDirectories(fileDirectory);
+        StoredFile[] published = new StoredFile[1];
+        IOException[] failure = new IOException[1];
+        versions.compute(fileName, (name, existing) -> {
+            int version = existing == null ? 1 : existing.get(existing.size() - 1).version + 1;
+            StoredFile file = new StoredFile(fileName, version, hashes.toArray(new String[0]), offsets(lengths));
+            try {
+                writeManifest(fileDirectory, file, lengths);
+            } catch (IOException e) {
+                failure[0] = e;
+                return existing;
+            }
+            List<StoredFile> updated = existing == null ? new ArrayList<>() : new ArrayList<>(existing);
+            updated.add(file);
+            published[0] = file;
+            return Collections.unmodifiableList(updated);
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return published[0];
+    }
+
+    private void pin(String hash) {
+        pins.compute(hash, (key, pin) -> {
+            Pin pinned = pin == null ? new Pin() : pin;
+            pinned.uploads++;
+            return pinned;
+        });
+    }
+
+    private void markFresh(String hash) {
+        pins.computeIfPresent(hash, (key, pin) -> {
+            pin.fresh = true;
+            return pin;
+        });
+    }
+
+    /**
+     * Drops an upload's hold on a chunk. The last upload to let go of a chunk that one of them
+     * stored deletes it, unless one of them was published: no earlier version can hold a chunk
+     * that had to be stored afresh.
+     */
+    private void unpin(String hash, boolean published) {
+        pins.compute(hash, (key, pin) -> {
+            pin.published |= published;
+            if (--pin.uploads > 0) {
+                return pin;
+            }
+            if (pin.fresh && !pin.published) {
+                try {
+                    chunks.remove(hash);
+                } catch (IOException e) {
+                    logger.warning("Failed to delete aborted chunk " + hash + ": " + e.getMessage());
+                }
+            }
+            return null;
+        });
+    }
+
+    private static long[] offsets(List<Integer> lengths) {
+        long[] offsets = new long[lengths.size() + 1];
+        for (int i = 0; i < lengths.size(); i++) {
+            offsets[i + 1] = offsets[i] + lengths.get(i);
+        }
+        return offsets;
+    }
+
+    private static void writeManifest(Path fileDirectory, StoredFile file, List<Integer> lengths) throws IOException {
+        Path target = fileDirectory.resolve(file.version + ".manifest");
+        Path temp = fileDirectory.resolve(file.version + ".manifest.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeInt(file.version);
+            out.writeInt(file.chunkHashes.length);
+            for (int i = 0; i < file.chunkHashes.length; i++) {
+                out.writeUTF(file.chunkHashes[i]);
+                out.writeInt(lengths.get(i));
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static StoredFile readManifest(String fileName, Path manifest) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+            if (in.readInt() != MANIFEST_MAGIC) {
+                throw new IOException("Unrecognised manifest " + manifest);
+            }
+            int version = in.readInt();
+            int count = in.readInt();
+            String[] hashes = new String[count];
+            List<Integer> lengths = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                hashes[i] = in.readUTF();
+                lengths.add(in.readInt());
+            }
+            return new StoredFile(fileName, version, hashes, offsets(lengths));
+        }
+    }
+
+    /** Chunks plain files written by the earlier flat layout into the store, then removes them. */
+    private void importLegacyFiles() throws IOException {
+        Path legacy = directory.resolve("files");
+        if (!Files.isDirectory(legacy)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(legacy)) {
+            for (Path path : files) {
+                Upload upload = beginUpload();
+                byte[] buffer = new byte[1 << 16];
+                try (InputStream in = Files.newInputStream(path)) {
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        upload.chunker.update(buffer, 0, read);
+                    }
+                }
+                upload.commit(path.getFileName().toString());
+                Files.delete(path);
+            }
+        }
+        Files.deleteIfExists(legacy);
+    }
+
+    /**
+     * An upload in progress. Incoming bytes are cut into content-defined chunks as they
+     * arrive, so at most one chunk is buffered; chunks the store already holds are not
+     * written again, and clients can reference them by hash instead of sending them.
+     * An upload that is not committed must be {@linkplain #abort aborted}, which deletes the
+     * chunks it stored that nothing else uses.
+     */
+    final class Upload {
+        private final ContentChunker chunker = new ContentChunker(this::store);
+        private final List<String> hashes = new ArrayList<>();
+        private final List<Integer> lengths = new ArrayList<>();
+        private final Set<String> pinned = new HashSet<>();
+        private long newBytes;
+        private StoredFile stored;
+        private boolean released;
+
+        private Upload() {
+        }
+
+        void write(ByteString data) throws IOException {
+            for (ByteBuffer buffer : data.asReadOnlyByteBufferList()) {
+                chunker.update(buffer);
+            }
+        }
+
+        void write(ByteBuffer data) throws IOException {
+            chunker.update(data);
+        }
+
+        /** Appends a chunk the store already holds, ending the chunk currently being cut. */
+        void reference(String hash) throws IOException {
+            if (!ChunkStore.isValidHash(hash)) {
+                throw new IllegalArgumentException("Unknown chunk " + hash);
+            }
+            // Pinned before the lookup, so an aborting upload cannot delete it in between
+            use(hash);
+            int length = chunks.length(hash);
+            if (length < 0) {
+                throw new IllegalArgumentException("Unknown chunk " + hash);
+            }
+            chunker.flush();
+            hashes.add(hash);
+            lengths.add(length);
+        }
+
+        private void use(String hash) {
+            if (pinned.add(hash)) {
+                pin(hash);
+            }
+        }
+
+        long newBytes() {
+            return newBytes;
+        }
+
+        StoredFile commit(String fileName) throws IOException {
+            checkFileName(fileName);
+            chunker.flush();
+            stored = publish(fileName, hashes, lengths);
+            release(true);
+            return stored;
+        }
+
+        /**
+         * Gives up an upload that will not be committed, deleting the chunks it stored that no
+         * other upload or version uses. Does nothing once the upload is committed or aborted.
+         */
+        void abort() {
+            hashes.clear();
+            lengths.clear();
+            release(false);
+        }
+
+        private void release(boolean published) {
+            if (released) {
+                return;
+            }
+            released = true;
+            for (String hash : pinned) {
+                unpin(hash, published);
+            }
+            pinned.clear();
+        }
+
+        /** The version this upload was stored as, once committed. */
+        StoredFile stored() {
+            return stored;
+        }
+
+        private void store(byte[] data, int length) throws IOException {
+            String hash = ContentChunker.hash(data, 0, length);
+            use(hash);
+            if (chunks.put(hash, data, length)) {
+                markFresh(hash);
+                newBytes += length;
+            }
+            hashes.add(hash);
+            lengths.add(length);
+        }
+    }
+
+    /** The uploads in progress using a chunk, and whether one stored it or was published. */
+    private static final class Pin {
+        int uploads;
+        boolean fresh;
+        boolean published;
+    }
+
+    /** One stored version of a file: its chunk hashes and where each chunk starts. */
+    static final class StoredFile {
+        final String fileName;
+        final int version;
+        final String[] chunkHashes;
+        // chunkOffsets[i] is where chunk i starts; the last entry is the file size
+        final long[] chunkOffsets;
+        final long size;
+
+        StoredFile(String fileName, int version, String[] chunkHashes, long[] chunkOffsets) {
+            this.fileName = fileName;
+            this.version = version;
+            this.chunkHashes = chunkHashes;
+            this.chunkOffsets = chunkOffsets;
+            this.size = chunkOffsets[chunkOffsets.length - 1];
+        }
+
+        /** Returns the index of the chunk containing {@code position}, which must be below {@link #size}. */
+        int chunkAt(long position) {
+            int found = Arrays.binarySearch(chunkOffsets, position);
+            return found >= 0 ? found : -found - 2;
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package com.unsmart.campus.content;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Shared state behind the collaboration calls. Each document is a {@link PieceTable}; edits
+ * are applied one at a time under the document's lock and each committed operation gets the
+ * next revision. For every editor the hub keeps the committed operations of other editors
+ * that it may not have seen yet, in a form relative to that editor's own text, so an incoming
+ * edit is transformed only past what its author really had not seen and an editor can send
+ * keystrokes without waiting for each acknowledgement.
+ *
+ * <p>Committed edits are collected per document for a short window, compacted by
+ * {@link EditCoalescer} and handed to every editor as one batch, the author's copy serving as
+ * its acknowledgement. Every editor has its own outbound queue drained on a shared pool while
+ * its call is ready; batches that pile up behind a slow editor are merged into one when it
+ * catches up, and one that falls too far behind is disconnected and has to rejoin.
+ *
+ * <p>Every committed operation is appended to the {@link DocumentJournal}, and a batch is only
+ * broadcast once its operations are on disk. Every {@code content.collab.snapshot.every}
+ * operations the document's text is snapshotted, its log emptied and its piece table rebuilt
+ * from the text, so a restart replays at most that many operations per document and an edit
+ * never scans more than that many operations' worth of pieces.
+ */
+final class DocumentHub {
+    private static final Logger logger = Logger.getLogger(DocumentHub.class.getName());
+    static final int HISTORY_LIMIT = Integer.getInteger("content.collab.history", 10_000);
+    static final int MAX_QUEUED = Integer.getInteger("content.collab.max.queued", 10_000);
+    static final int SNAPSHOT_EVERY = Integer.getInteger("content.collab.snapshot.every", 1_000);
+
+    private final ForkJoinPool pool;
+    private final ScheduledExecutorService scheduler;
+    private final long coalesceWindowMs;
+    private final DocumentJournal journal;
+    private final ConcurrentMap<String, Document> documents = new ConcurrentHashMap<>();
+
+    DocumentHub(int parallelism, ScheduledExecutorService scheduler, long coalesceWindowMs,
+                DocumentJournal journal) {
+        this.pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        this.scheduler = scheduler;
+        this.coalesceWindowMs = coalesceWindowMs;
+        this.journal = journal;
+    }
+
+    /** Loads every stored document. Returns the number of documents recovered. */
+    int recover() throws IOException {
+        List<DocumentJournal.Recovered> recovered = journal.recover();
+        int replayed = 0;
+        for (DocumentJournal.Recovered stored : recovered) {
+            documents.put(stored.documentId, new Document(stored.documentId, stored.text, stored.revision));
+            if (stored.replayed > 0) {
+                // Fold the replayed tail into a fresh snapshot so the next start skips it
+                journal.snapshot(stored.documentId, stored.revision, stored.text);
+                replayed += stored.replayed;
+            }
+        }
+        logger.info("Recovered " + recovered.size() + " documents, replaying " + replayed + " logged edits");
+        return recovered.size();
+    }
+
+    /**
+     * Creates the editor for a new call; it receives nothing until it {@link #join joins} a
+     * document. A batched editor is sent whole {@link DocumentEditBatch}es, any other one the
+     * edits of each batch individually.
+     */
+    Editor connect(ServerCallStreamObserver<?> call, boolean batched) {
+        Editor editor = new Editor(call, batched);
+        call.setOnReadyHandler(() -> signal(editor));
+        call.setOnCancelHandler(() -> leave(editor));
+        return editor;
+    }
+
+    /** Adds {@code editor} to a document and queues the current text and revision as its first message. */
+    void join(Editor editor, String documentId) {
+        if (editor.failure != null) {
+            return;
+        }
+        if (documentId.isEmpty()) {
+            close(editor, Status.INVALID_ARGUMENT.withDescription("document_id is required"));
+            return;
+        }
+        Document document = documents.computeIfAbsent(documentId, id -> new Document(id, "", 0));
+        synchronized (document) {
+            // The snapshot already contains whatever is waiting to be broadcast
+            flush(document);
+            editor.document = document;
+            editor.enqueue(DocumentEditBatch.newBuilder()
+                    .setDocumentId(documentId)
+                    .addEdits(DocumentEdit.newBuilder()
+                            .setDocumentId(documentId)
+                            .setEditAction("snapshot")
+                            .setPayload(document.text.toString())
+                            .setRevision(document.revision))
+                    .build());
+            document.editors.add(editor);
+        }
+        signal(editor);
+    }
+
+    /** Applies one edit from {@code editor}, or disconnects it if the edit is invalid. */
+    void submit(Editor editor, DocumentEdit edit) {
+        if (editor.failure != null) {
+            return;
+        }
+        try {
+            String action = edit.getEditAction();
+            if (action.equals("join")) {
+                return;
+            }
+            TextOperation op;
+            if (action.equals("insert")) {
+                op = TextOperation.insert(edit.getCursorPosition(), edit.getPayload());
+            } else if (action.equals("delete")) {
+                op = TextOperation.delete(edit.getCursorPosition(), edit.getLength());
+            } else if (action.equals("cursor")) {
+                op = null;
+            } else {
+                throw Status.INVALID_ARGUMENT.withDescription("Unknown edit action " + action).asRuntimeException();
+            }
+            Document document = editor.document;
+            synchronized (document) {
+                if (op == null) {
+                    moveCursor(document, editor, edit);
+                } else {
+                    commit(document, editor, edit, op);
+                }
+                scheduleFlush(document);
+            }
+        } catch (StatusRuntimeException e) {
+            close(editor, e.getStatus());
+        }
+    }
+
+    private void commit(Document document, Editor author, DocumentEdit edit, TextOperation op) {
+        List<TextOperation> ops = author.transform(Collections.singletonList(op), edit.getBaseRevision(),
+                document.revision);
+        checkBounds(ops, document.text.length());
+        for (TextOperation transformed : ops) {
+            transformed.applyTo(document.text);
+            document.revision++;
+            document.durable = journal.append(document.id, document.revision, transformed);
+            document.sinceSnapshot++;
+            for (Editor editor : document.editors) {
+                if (editor != author) {
+                    editor.unseen(document.revision, transformed);
+                }
+            }
+            document.pending.add(DocumentEdit.newBuilder()
+                    .setDocumentId(document.id)
+                    .setUserId(edit.getUserId())
+                    .setEditAction(transformed.kind == TextOperation.Kind.INSERT ? "insert" : "delete")
+                    .setCursorPosition(transformed.position)
+                    .setPayload(transformed.text)
+                    .setLength(transformed.length)
+                    .setBaseRevision(document.revision - 1)
+                    .setRevision(document.revision)
+                    .build());
+        }
+        if (document.sinceSnapshot >= SNAPSHOT_EVERY) {
+            snapshot(document);
+        }
+        // An edit whose text was all deleted by others commits nothing and is not echoed
+    }
+
+    /**
+     * Writes the document's text as its snapshot and restarts its piece table from that text,
+     * so the pieces and appended text of edits already folded in do not pile up. Call with the
+     * document locked.
+     */
+    private void snapshot(Document document) {
+        String text = document.text.toString();
+        journal.snapshot(document.id, document.revision, text);
+        document.text = new PieceTable(text);
+        document.sinceSnapshot = 0;
+    }
+
+    private void moveCursor(Document document, Editor author, DocumentEdit edit) {
+        int position = author.transformCursor(edit.getCursorPosition(), edit.getBaseRevision(), document.revision);
+        document.pending.add(edit.toBuilder()
+                .setCursorPosition(Math.max(0, Math.min(position, document.text.length())))
+                .setBaseRevision(document.revision)
+                .setRevision(document.revision)
+                .build());
+    }
+
+    private static void checkBounds(List<TextOperation> ops, int length) {
+        for (TextOperation op : ops) {
+            if (op.position < 0 || op.position > length || op.length < 0
+                    || (op.kind == TextOperation.Kind.DELETE && op.position + op.length > length)) {
+                throw Status.INVALID_ARGUMENT
+                        .withDescription("Edit at " + op.position + " is outside the document")
+                        .asRuntimeException();
+            }
+            length += op.kind == TextOperation.Kind.INSERT ? op.length : -op.length;
+        }
+    }
+
+    /** Arranges for the document's pending edits to go out after the coalescing window. */
+    private void scheduleFlush(Document document) {
+        if (coalesceWindowMs <= 0) {
+            flush(document);
+            return;
+        }
+        if (!document.flushScheduled) {
+            document.flushScheduled = true;
+            scheduler.schedule(() -> {
+                synchronized (document) {
+                    flush(document);
+                }
+            }, coalesceWindowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Compacts the document's pending edits into one batch for its current editors, to be
+     * queued once they are on disk and every earlier batch has been queued. Call with the
+     * document locked.
+     */
+    private void flush(Document document) {
+        document.flushScheduled = false;
+        if (document.pending.isEmpty()) {
+            return;
+        }
+        List<DocumentEdit> edits = EditCoalescer.compact(document.pending);
+        document.pending.clear();
+        if (edits.isEmpty()) {
+            // Everything typed in the window was deleted again
+            return;
+        }
+        DocumentEditBatch batch = DocumentEditBatch.newBuilder()
+                .setDocumentId(document.id)
+                .addAllEdits(edits)
+                .build();
+        List<Editor> recipients = new ArrayList<>(document.editors);
+        CompletableFuture<Void> durable = document.durable.exceptionally(error -> {
+            logger.warning("Broadcasting edits to " + document.id + " that are not on disk: " + error.getMessage());
+            return null;
+        });
+        document.broadcast = CompletableFuture.allOf(document.broadcast, durable).thenRun(() -> {
+            for (Editor editor : recipients) {
+                editor.enqueue(batch);
+                signal(editor);
+            }
+        });
+    }
+
+    /** Stops broadcasting to {@code editor}; anything already queued is still delivered. */
+    void leave(Editor editor) {
+        Document document = editor.document;
+        if (document != null) {
+            synchronized (document) {
+                document.editors.remove(editor);
+            }
+        }
+    }
+
+    /** Leaves the document and completes the call once its queue has drained. */
+    void finish(Editor editor) {
+        leave(editor);
+        editor.finishing = true;
+        signal(editor);
+    }
+
+    /** Leaves the document and fails the call, dropping anything still queued. */
+    void close(Editor editor, Status status) {
+        leave(editor);
+        editor.failure = status;
+        signal(editor);
+    }
+
+    void shutdown() {
+        List<CompletableFuture<Void>> broadcasts = new ArrayList<>();
+        for (Document document : documents.values()) {
+            synchronized (document) {
+                flush(document);
+                if (document.sinceSnapshot > 0) {
+                    snapshot(document);
+                }
+                broadcasts.add(document.broadcast);
+            }
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.warning("Closing the document journal failed: " + e.getMessage());
+        }
+        try {
+            CompletableFuture.allOf(broadcasts.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warning("Edits still unsent at shutdown: " + e.getMessage());
+        }
+        for (Document document : documents.values()) {
+            List<Editor> editors;
+            synchronized (document) {
+                editors = new ArrayList<>(document.editors);
+            }
+            for (Editor editor : editors) {
+                finish(editor);
+            }
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void signal(Editor editor) {
+        if (editor.wip.getAndIncrement() == 0) {
+            pool.execute(() -> drain(editor));
+        }
+    }
+
+    private void drain(Editor editor) {
+        ServerCallStreamObserver<?> call = editor.call;
+        int missed = 1;
+        do {
+            if (editor.done) {
+                editor.queue.clear();
+                return;
+            }
+            if (call.isCancelled()) {
+                editor.done = true;
+                leave(editor);
+                return;
+            }
+            try {
+                if (editor.failure == null && editor.queued.get() > MAX_QUEUED) {
+                    leave(editor);
+                    editor.failure = Status.RESOURCE_EXHAUSTED
+                            .withDescription("Editor fell more than " + MAX_QUEUED + " edits behind; rejoin");
+                }
+                if (editor.failure != null) {
+                    editor.done = true;
+                    editor.queue.clear();
+                    call.onError(editor.failure.asRuntimeException());
+                    return;
+                }
+                while (call.isReady() && !editor.queue.isEmpty()) {
+                    editor.write(editor.pollAll());
+                }
+                if (editor.finishing && editor.queue.isEmpty()) {
+                    editor.done = true;
+                    call.onCompleted();
+                    return;
+                }
+            } catch (RuntimeException e) {
+                logger.warning("Collaboration stream error: " + e.getMessage());
+                editor.done = true;
+                leave(editor);
+                return;
+            }
+            missed = editor.wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private static final class Document {
+        final String id;
+        // Guarded by the document's monitor
+        PieceTable text;
+        final Set<Editor> editors = new LinkedHashSet<>();
+        final List<DocumentEdit> pending = new ArrayList<>();
+        boolean flushScheduled;
+        long revision;
+        int sinceSnapshot;
+        CompletableFuture<Void> durable = CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> broadcast = CompletableFuture.completedFuture(null);
+
+        Document(String id, String text, long revision) {
+            this.id = id;
+            this.text = new PieceTable(text);
+            this.revision = revision;
+        }
+    }
+
+    static final class Editor {
+        volatile Document document;
+        final ServerCallStreamObserver<?> call;
+        final boolean batched;
+        final Queue<DocumentEditBatch> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicInteger wip = new AtomicInteger();
+        volatile boolean finishing;
+        volatile Status failure;
+        // Only touched from drain(), which the wip counter keeps single-threaded per editor
+        boolean done;
+        // Guarded by the document's monitor: other editors' operations this editor may not have
+        // seen, oldest first, each rewritten to apply after this editor's own later operations
+        private final Deque<Unseen> unseen = new ArrayDeque<>();
+        private long forgottenThrough;
+        private volatile long delivered;
+
+        Editor(ServerCallStreamObserver<?> call, boolean batched) {
+            this.call = call;
+            this.batched = batched;
+        }
+
+        boolean joined() {
+            return document != null;
+        }
+
+        String documentId() {
+            return document.id;
+        }
+
+        void enqueue(DocumentEditBatch batch) {
+            queue.add(batch);
+            queued.addAndGet(batch.getEditsCount());
+        }
+
+        /** Takes every queued batch; several are merged so a lagging editor catches up in one write. */
+        private DocumentEditBatch pollAll() {
+            DocumentEditBatch first = queue.poll();
+            DocumentEditBatch next = queue.peek();
+            int taken = first.getEditsCount();
+            if (next != null && !isSnapshot(first) && !isSnapshot(next)) {
+                List<DocumentEdit> edits = new ArrayList<>(first.getEditsList());
+                while ((next = queue.peek()) != null && !isSnapshot(next)) {
+                    queue.poll();
+                    taken += next.getEditsCount();
+                    edits.addAll(next.getEditsList());
+                }
+                first = first.toBuilder().clearEdits().addAllEdits(EditCoalescer.compact(edits)).build();
+            }
+            queued.addAndGet(-taken);
+            return first;
+        }
+
+        private static boolean isSnapshot(DocumentEditBatch batch) {
+            return batch.getEditsCount() == 1 && batch.getEdits(0).getEditAction().equals("snapshot");
+        }
+
+        @SuppressWarnings("unchecked")
+        private void write(DocumentEditBatch batch) {
+            if (batch.getEditsCount() == 0) {
+                // Merged batches can cancel out entirely
+                return;
+            }
+            if (batched) {
+                ((ServerCallStreamObserver<DocumentEditBatch>) call).onNext(batch);
+            } else {
+                ServerCallStreamObserver<DocumentEdit> single = (ServerCallStreamObserver<DocumentEdit>) call;
+                for (DocumentEdit edit : batch.getEditsList()) {
+                    single.onNext(edit);
+                }
+            }
+            int last = batch.getEditsCount() - 1;
+            if (last >= 0) {
+                delivered = batch.getEdits(last).getRevision();
+            }
+        }
+
+        void unseen(long revision, TextOperation op) {
+            unseen.addLast(new Unseen(revision, Collections.singletonList(op)));
+            long written = delivered;
+            // Operations already written to the editor are only needed for edits still in flight
+            while (unseen.size() > HISTORY_LIMIT && unseen.peekFirst().revision <= written) {
+                forgottenThrough = unseen.pollFirst().revision;
+            }
+        }
+
+        /**
+         * Rewrites operations made on top of {@code baseRevision} to apply to the current text,
+         * and rewrites the operations they were transformed past to apply after them.
+         */
+        List<TextOperation> transform(List<TextOperation> ops, long baseRevision, long revision) {
+            forget(baseRevision, revision);
+            for (Unseen entry : unseen) {
+                TextOperation.Pair pair = TextOperation.transformPair(ops, entry.ops);
+                ops = pair.ops;
+                entry.ops = pair.applied;
+            }
+            return ops;
+        }
+
+        int transformCursor(int position, long baseRevision, long revision) {
+            forget(baseRevision, revision);
+            for (Unseen entry : unseen) {
+                for (TextOperation op : entry.ops) {
+                    position = op.transformPosition(position);
+                }
+            }
+            return position;
+        }
+
+        private void forget(long baseRevision, long revision) {
+            if (baseRevision > revision || baseRevision < 0) {
+                throw Status.INVALID_ARGUMENT
+                        .withDescription("Unknown base revision " + baseRevision + " (current " + revision + ")")
+                        .asRuntimeException();
+            }
+            if (baseRevision < forgottenThrough) {
+                throw Status.ABORTED
+                        .withDescription("Base revision " + baseRevision + " is too old; rejoin")
+                        .asRuntimeException();
+            }
+            Iterator<Unseen> entries = unseen.iterator();
+            while (entries.hasNext() && entries.next().revision <= baseRevision) {
+                entries.remove();
+            }
+        }
+    }
+
+    private static final class Unseen {
+        final long revision;
+        List<TextOperation> ops;
+
+        Unseen(long revision, List<TextOperation> ops) {
+            this.revision = revision;
+            this.ops = ops;
+        }
+    }
+}
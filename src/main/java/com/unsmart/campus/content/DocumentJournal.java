@@ -0,0 +1,396 @@
+package com.unsmart.campus.content;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk form of the collaborative documents: per document, a compact snapshot of the text
+ * at some revision plus an append-only log of the operations committed since. Appends are
+ * written by a single journal thread that takes everything queued since its last write,
+ * writes each document's entries with one gather write and forces every touched log once
+ * (group commit). A queued snapshot is written once the entries ahead of it are on disk, and
+ * then the document's log is emptied, so loading a document only ever replays a bounded tail.
+ *
+ * <p>Only the logs of the {@code content.collab.open.logs} most recently written documents are
+ * kept open; the rest are closed once forced and reopened on their next edit.
+ *
+ * <p>Files are named after the hex-encoded document id. Log entries are
+ * {@code [length][crc32][revision, kind, position, length, text]}; a torn or corrupt tail is
+ * dropped on recovery.
+ */
+class DocumentJournal implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(DocumentJournal.class.getName());
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String LOG_SUFFIX = ".log";
+    private static final int SNAPSHOT_MAGIC = 0x43444F43;
+    private static final Pending CLOSE = new Pending(null, null, null, 0, null);
+    private static final int OPEN_LOGS = Integer.getInteger("content.collab.open.logs", 256);
+
+    private final Path directory;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    // Journal thread only, least recently written first
+    private final LinkedHashMap<String, FileChannel> logs = new LinkedHashMap<>(16, 0.75f, true);
+    private final Thread writer;
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    DocumentJournal(Path directory) {
+        this.directory = directory;
+        this.writer = new Thread(this::writeLoop, "document-journal");
+        this.writer.setDaemon(true);
+    }
+
+    /** A document as found on disk: its latest snapshot with the logged tail applied. */
+    static final class Recovered {
+        final String documentId;
+        final String text;
+        final long revision;
+        final int replayed;
+
+        Recovered(String documentId, String text, long revision, int replayed) {
+            this.documentId = documentId;
+            this.text = text;
+            this.revision = revision;
+            this.replayed = replayed;
+        }
+    }
+
+    /** Loads every stored document, then starts accepting appends. */
+    List<Recovered> recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Recovered> documents = new ArrayList<>();
+        Set<String> names = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file);
+                    continue;
+                }
+                String base = name.substring(0, Math.max(0, name.lastIndexOf('.')));
+                if ((name.endsWith(SNAPSHOT_SUFFIX) || name.endsWith(LOG_SUFFIX))
+                        && !base.isEmpty() && base.length() % 2 == 0 && base.matches("[0-9a-f]+")) {
+                    names.add(base);
+                }
+            }
+        }
+        for (String name : names) {
+            documents.add(load(name));
+        }
+        writer.start();
+        started = true;
+        return documents;
+    }
+
+    /** Queues one committed operation; the future completes once it is on disk. */
+    CompletableFuture<Void> append(String documentId, long revision, TextOperation op) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Pending pending = new Pending(documentId, encode(revision, op), null, revision, done);
+        // Under the lock close() takes, so nothing is queued behind the close marker
+        synchronized (queue) {
+            if (closed || !started) {
+                done.completeExceptionally(new IOException("Document journal is " + (closed ? "closed" : "not recovered")));
+                return done;
+            }
+            queue.add(pending);
+        }
+        return done;
+    }
+
+    /** Queues a snapshot of {@code text} at {@code revision}, which replaces the document's log. */
+    void snapshot(String documentId, long revision, String text) {
+        synchronized (queue) {
+            if (started && !closed) {
+                queue.add(new Pending(documentId, null, text, revision, null));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(CLOSE);
+        }
+        if (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (FileChannel log : logs.values()) {
+            log.close();
+        }
+        logs.clear();
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            // Everything queued ahead of the close marker still gets written
+            running = !batch.remove(CLOSE);
+            int from = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                Pending pending = batch.get(i);
+                if (pending.snapshotText != null) {
+                    commit(batch.subList(from, i));
+                    from = i + 1;
+                    try {
+                        writeSnapshot(pending.documentId, pending.revision, pending.snapshotText);
+                    } catch (IOException e) {
+                        logger.warning("Snapshot of " + pending.documentId + " failed: " + e.getMessage());
+                    }
+                }
+            }
+            commit(batch.subList(from, batch.size()));
+            batch.clear();
+        }
+    }
+
+    private void commit(List<Pending> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Map<String, List<ByteBuffer>> byDocument = new LinkedHashMap<>();
+        for (Pending pending : entries) {
+            byDocument.computeIfAbsent(pending.documentId, id -> new ArrayList<>())
+                    .add(ByteBuffer.wrap(pending.bytes));
+        }
+        try {
+            List<FileChannel> touched = new ArrayList<>(byDocument.size());
+            for (Map.Entry<String, List<ByteBuffer>> entry : byDocument.entrySet()) {
+                FileChannel log = log(entry.getKey());
+                ByteBuffer[] buffers = entry.getValue().toArray(new ByteBuffer[0]);
+                while (buffers[buffers.length - 1].hasRemaining()) {
+                    log.write(buffers);
+                }
+                touched.add(log);
+            }
+            for (FileChannel log : touched) {
+                log.force(false);
+            }
+            for (Pending pending : entries) {
+                pending.done.complete(null);
+            }
+            closeIdleLogs();
+        } catch (IOException e) {
+            logger.severe("Document journal write failed: " + e.getMessage());
+            for (Pending pending : entries) {
+                pending.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    /** Closes the least recently written logs beyond the limit; all of them have been forced. */
+    private void closeIdleLogs() {
+        Iterator<FileChannel> open = logs.values().iterator();
+        for (int excess = logs.size() - OPEN_LOGS; excess > 0; excess--) {
+            FileChannel log = open.next();
+            open.remove();
+            try {
+                log.close();
+            } catch (IOException e) {
+                logger.warning("Closing a document log failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private FileChannel log(String documentId) throws IOException {
+        FileChannel log = logs.get(documentId);
+        if (log == null) {
+            log = FileChannel.open(directory.resolve(fileName(documentId) + LOG_SUFFIX),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            logs.put(documentId, log);
+        }
+        return log;
+    }
+
+    private void writeSnapshot(String documentId, long revision, String text) throws IOException {
+        String name = fileName(documentId);
+        Path tmp = directory.resolve(name + SNAPSHOT_SUFFIX + ".tmp");
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream header = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(header);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeUTF(documentId);
+            out.writeLong(revision);
+            out.writeInt(bytes.length);
+            ByteBuffer[] buffers = {ByteBuffer.wrap(header.toByteArray()), ByteBuffer.wrap(bytes)};
+            while (buffers[1].hasRemaining()) {
+                channel.write(buffers);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(name + SNAPSHOT_SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        FileChannel log = log(documentId);
+        log.truncate(0);
+        log.force(true);
+        closeIdleLogs();
+    }
+
+    private Recovered load(String name) throws IOException {
+        String documentId = new String(unhex(name), StandardCharsets.UTF_8);
+        PieceTable text = new PieceTable("");
+        long revision = 0;
+        Path snapshot = directory.resolve(name + SNAPSHOT_SUFFIX);
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Unrecognised document snapshot " + snapshot);
+                }
+                documentId = in.readUTF();
+                revision = in.readLong();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                text = new PieceTable(new String(bytes, StandardCharsets.UTF_8));
+            }
+        }
+        Path logPath = directory.resolve(name + LOG_SUFFIX);
+        int replayed = 0;
+        if (Files.exists(logPath)) {
+            try (FileChannel log = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(Channels.newInputStream(log), 1 << 16));
+                long valid = 0;
+                CRC32 crc = new CRC32();
+                while (true) {
+                    byte[] payload;
+                    try {
+                        int length = in.readInt();
+                        int checksum = in.readInt();
+                        if (length < 0 || length > log.size()) {
+                            break;
+                        }
+                        payload = new byte[length];
+                        in.readFully(payload);
+                        crc.reset();
+                        crc.update(payload);
+                        if ((int) crc.getValue() != checksum) {
+                            break;
+                        }
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    DataInputStream entry = new DataInputStream(new ByteArrayInputStream(payload));
+                    long entryRevision = entry.readLong();
+                    TextOperation op = decode(entry);
+                    if (entryRevision == revision + 1) {
+                        op.applyTo(text);
+                        revision = entryRevision;
+                        replayed++;
+                    }
+                    valid += 8 + payload.length;
+                }
+                if (valid < log.size()) {
+                    logger.warning("Dropping " + (log.size() - valid) + " bytes of torn log for " + documentId);
+                    log.truncate(valid);
+                }
+            }
+        }
+        return new Recovered(documentId, text.toString(), revision, replayed);
+    }
+
+    private static byte[] encode(long revision, TextOperation op) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(32 + op.text.length());
+        try {
+            DataOutputStream entry = new DataOutputStream(payload);
+            entry.writeLong(revision);
+            entry.writeByte(op.kind == TextOperation.Kind.INSERT ? 1 : 2);
+            entry.writeInt(op.position);
+            entry.writeInt(op.length);
+            byte[] text = op.text.getBytes(StandardCharsets.UTF_8);
+            entry.writeInt(text.length);
+            entry.write(text);
+            CRC32 crc = new CRC32();
+            crc.update(payload.toByteArray());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + payload.size());
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(payload.size());
+            out.writeInt((int) crc.getValue());
+            payload.writeTo(out);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory encoding failed", e);
+        }
+    }
+
+    private static TextOperation decode(DataInputStream entry) throws IOException {
+        byte kind = entry.readByte();
+        int position = entry.readInt();
+        int length = entry.readInt();
+        byte[] text = new byte[entry.readInt()];
+        entry.readFully(text);
+        return kind == 1
+                ? TextOperation.insert(position, new String(text, StandardCharsets.UTF_8))
+                : TextOperation.delete(position, length);
+    }
+
+    private static String fileName(String documentId) {
+        return ContentChunker.hex(documentId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] unhex(String name) {
+        byte[] bytes = new byte[name.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(name.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static final class Pending {
+        final String documentId;
+        final byte[] bytes;
+        final String snapshotText;
+        final long revision;
+        final CompletableFuture<Void> done;
+
+        Pending(String documentId, byte[] bytes, String snapshotText, long revision, CompletableFuture<Void> done) {
+            this.documentId = documentId;
+            this.bytes = bytes;
+            this.snapshotText = snapshotText;
+            this.revision = revision;
+            this.done = done;
+        }
+    }
+}
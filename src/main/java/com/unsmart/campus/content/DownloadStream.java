@@ -0,0 +1,86 @@
+package com.unsmart.campus.content;
+
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+/**
+ * Server side of one DownloadPresentation call. Chunks are zero-copy slices of the shared
+ * {@link MappedChunkCache} mappings and are only written while the call is ready, so a slow
+ * reader costs no server memory. The stored version is resolved when the download starts,
+ * so a concurrent re-upload never mixes two versions into one download.
+ */
+final class DownloadStream {
+    private static final Logger logger = Logger.getLogger(DownloadStream.class.getName());
+    static final int CHUNK_SIZE = 64 << 10;
+
+    private final ContentStore store;
+    private final ContentStore.StoredFile file;
+    private final MappedChunkCache cache;
+    private final ServerCallStreamObserver<ContentChunk> responseObserver;
+    private final long end;
+    private long position;
+    private boolean finished;
+
+    private DownloadStream(ContentStore store, ContentStore.StoredFile file, MappedChunkCache cache,
+                           ServerCallStreamObserver<ContentChunk> responseObserver, long position, long end) {
+        this.store = store;
+        this.file = file;
+        this.cache = cache;
+        this.responseObserver = responseObserver;
+        this.position = position;
+        this.end = end;
+    }
+
+    static void start(ContentStore store, ContentStore.StoredFile file, DownloadRequest request,
+                      MappedChunkCache cache, ServerCallStreamObserver<ContentChunk> responseObserver) {
+        if (request.getOffset() < 0 || request.getOffset() > file.size || request.getLength() < 0) {
+            throw Status.OUT_OF_RANGE
+                    .withDescription("Range starts outside " + file.fileName + " (" + file.size + " bytes)")
+                    .asRuntimeException();
+        }
+        long end = request.getLength() == 0
+                ? file.size
+                : Math.min(file.size, request.getOffset() + request.getLength());
+        DownloadStream stream = new DownloadStream(store, file, cache, responseObserver, request.getOffset(), end);
+        responseObserver.setOnReadyHandler(stream::drain);
+        responseObserver.setOnCancelHandler(() -> stream.finished = true);
+        stream.drain();
+    }
+
+    private void drain() {
+        if (finished) {
+            return;
+        }
+        try {
+            while (position < end && responseObserver.isReady()) {
+                int index = file.chunkAt(position);
+                String hash = file.chunkHashes[index];
+                ByteBuffer chunk = cache.chunk(hash, store.chunkPath(hash));
+                int offsetInChunk = (int) (position - file.chunkOffsets[index]);
+                int length = (int) Math.min(CHUNK_SIZE, Math.min(end - position, chunk.capacity() - offsetInChunk));
+                chunk.position(offsetInChunk).limit(offsetInChunk + length);
+                responseObserver.onNext(ContentChunk.newBuilder()
+                        .setFileName(file.fileName)
+                        .setOffset(position)
+                        .setData(UnsafeByteOperations.unsafeWrap(chunk.slice()))
+                        .build());
+                position += length;
+            }
+            if (position >= end) {
+                finished = true;
+                responseObserver.onCompleted();
+            }
+        } catch (IOException e) {
+            logger.warning("Download failed: " + e.getMessage());
+            finished = true;
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Failed to read " + file.fileName)
+                    .withCause(e)
+                    .asRuntimeException());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.unsmart.campus.content;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compacts a run of committed edits before they are broadcast. An edit is folded into the one
+ * before it when both come from the same user and touch adjacent text: typing extends an
+ * insert, backspace and forward delete extend a delete, deleting freshly typed text trims the
+ * insert, and a cursor move replaces the same user's previous one. Text typed and deleted
+ * again within the run leaves nothing to send, so the edit is dropped. Only neighbours in
+ * revision order are merged, so applying the compacted edits in order still gives the same
+ * text; a merged edit keeps the first edit's base revision and the last one's revision.
+ */
+final class EditCoalescer {
+    private EditCoalescer() {
+    }
+
+    static List<DocumentEdit> compact(List<DocumentEdit> edits) {
+        List<DocumentEdit> compacted = new ArrayList<>(edits.size());
+        for (DocumentEdit edit : edits) {
+            int last = compacted.size() - 1;
+            DocumentEdit merged = last < 0 ? null : merge(compacted.get(last), edit);
+            if (merged != null && merged.getEditAction().equals("insert") && merged.getPayload().isEmpty()) {
+                compacted.remove(last);
+            } else if (merged != null) {
+                compacted.set(last, merged);
+            } else {
+                compacted.add(edit);
+            }
+        }
+        return compacted;
+    }
+
+    /**
+     * Returns {@code first} followed by {@code second} as one edit, or null if they do not
+     * combine. An insert that {@code second} deletes entirely comes back with an empty payload.
+     */
+    static DocumentEdit merge(DocumentEdit first, DocumentEdit second) {
+        if (!first.getUserId().equals(second.getUserId())) {
+            return null;
+        }
+        String a = first.getEditAction();
+        String b = second.getEditAction();
+        int position = first.getCursorPosition();
+        int next = second.getCursorPosition();
+        if (a.equals("insert") && b.equals("insert")) {
+            String text = first.getPayload();
+            if (next < position || next > position + text.length()) {
+                return null;
+            }
+            int at = next - position;
+            String payload = text.substring(0, at) + second.getPayload() + text.substring(at);
+            return combined(first, second, "insert", position, payload, payload.length());
+        }
+        if (a.equals("delete") && b.equals("delete")) {
+            int length = first.getLength() + second.getLength();
+            if (next == position) {
+                return combined(first, second, "delete", position, "", length);
+            }
+            if (next + second.getLength() == position) {
+                return combined(first, second, "delete", next, "", length);
+            }
+            return null;
+        }
+        if (a.equals("insert") && b.equals("delete")) {
+            String text = first.getPayload();
+            int from = next - position;
+            int to = from + second.getLength();
+            if (from < 0 || to > text.length()) {
+                return null;
+            }
+            String payload = text.substring(0, from) + text.substring(to);
+            return combined(first, second, "insert", position, payload, payload.length());
+        }
+        if (a.equals("cursor") && b.equals("cursor")) {
+            return second;
+        }
+        return null;
+    }
+
+    private static DocumentEdit combined(DocumentEdit first, DocumentEdit second, String action,
+                                         int position, String payload, int length) {
+        return DocumentEdit.newBuilder()
+                .setDocumentId(first.getDocumentId())
+                .setUserId(first.getUserId())
+                .setEditAction(action)
+                .setCursorPosition(position)
+                .setPayload(payload)
+                .setLength(length)
+                .setBaseRevision(first.getBaseRevision())
+                .setRevision(second.getRevision())
+                .build();
+    }
+}
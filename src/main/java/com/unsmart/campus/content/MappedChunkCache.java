@@ -0,0 +1,59 @@
+package com.unsmart.campus.content;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only memory mappings of stored chunks, shared by every concurrent reader. When 300
+ * students fetch the same deck at once they all slice the same mappings instead of each
+ * reading their own copy, and since chunks are content-addressed a chunk shared by several
+ * decks is mapped once. The least recently used mappings are dropped once the total mapped
+ * size exceeds the budget; a mapping is released when its last slice is collected.
+ */
+class MappedChunkCache {
+    private final long budgetBytes;
+    private final Map<String, MappedByteBuffer> chunks = new LinkedHashMap<>(16, 0.75f, true);
+    private long mappedBytes;
+
+    MappedChunkCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /** Returns a read-only view of the whole chunk stored at {@code path} under {@code hash}. */
+    ByteBuffer chunk(String hash, Path path) throws IOException {
+        synchronized (this) {
+            MappedByteBuffer cached = chunks.get(hash);
+            if (cached != null) {
+                return cached.asReadOnlyBuffer();
+            }
+        }
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        synchronized (this) {
+            MappedByteBuffer raced = chunks.putIfAbsent(hash, mapped);
+            if (raced != null) {
+                return raced.asReadOnlyBuffer();
+            }
+            mappedBytes += mapped.capacity();
+            evict();
+        }
+        return mapped.asReadOnlyBuffer();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, MappedByteBuffer>> oldest = chunks.entrySet().iterator();
+        while (mappedBytes > budgetBytes && chunks.size() > 1 && oldest.hasNext()) {
+            mappedBytes -= oldest.next().getValue().capacity();
+            oldest.remove();
+        }
+    }
+}
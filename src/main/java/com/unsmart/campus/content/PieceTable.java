@@ -0,0 +1,131 @@
+package com.unsmart.campus.content;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Document text as a piece table: the original text and an append-only buffer of inserted
+ * text are never modified, and the document is the sequence of pieces pointing into them.
+ * An insert or delete only splits or trims pieces, so its cost depends on the number of
+ * pieces rather than the size of the document, and typing at the end of the last insert
+ * just extends that piece.
+ */
+final class PieceTable {
+    private final String original;
+    private final StringBuilder added = new StringBuilder();
+    private final List<Piece> pieces = new ArrayList<>();
+    private int length;
+
+    PieceTable(String original) {
+        this.original = original;
+        this.length = original.length();
+        if (!original.isEmpty()) {
+            pieces.add(new Piece(false, 0, original.length()));
+        }
+    }
+
+    int length() {
+        return length;
+    }
+
+    void insert(int position, String text) {
+        checkPosition(position);
+        if (text.isEmpty()) {
+            return;
+        }
+        int start = added.length();
+        added.append(text);
+        int index = 0;
+        int pieceStart = 0;
+        while (index < pieces.size() && pieceStart + pieces.get(index).length < position) {
+            pieceStart += pieces.get(index).length;
+            index++;
+        }
+        if (index < pieces.size()) {
+            Piece piece = pieces.get(index);
+            int offset = position - pieceStart;
+            if (offset == piece.length && piece.added && piece.start + piece.length == start) {
+                piece.length += text.length();
+            } else if (offset == piece.length) {
+                pieces.add(index + 1, new Piece(true, start, text.length()));
+            } else if (offset == 0) {
+                pieces.add(index, new Piece(true, start, text.length()));
+            } else {
+                pieces.add(index + 1, new Piece(true, start, text.length()));
+                pieces.add(index + 2, new Piece(piece.added, piece.start + offset, piece.length - offset));
+                piece.length = offset;
+            }
+        } else {
+            pieces.add(new Piece(true, start, text.length()));
+        }
+        length += text.length();
+    }
+
+    void delete(int position, int count) {
+        checkPosition(position);
+        if (count < 0 || position + count > length) {
+            throw new IllegalArgumentException("Delete of " + count + " at " + position
+                    + " runs past the end of the document (" + length + ")");
+        }
+        int index = 0;
+        int pieceStart = 0;
+        while (index < pieces.size() && pieceStart + pieces.get(index).length <= position) {
+            pieceStart += pieces.get(index).length;
+            index++;
+        }
+        int remaining = count;
+        while (remaining > 0) {
+            Piece piece = pieces.get(index);
+            int offset = position - pieceStart;
+            int removed = Math.min(remaining, piece.length - offset);
+            if (offset == 0 && removed == piece.length) {
+                pieces.remove(index);
+            } else if (offset == 0) {
+                piece.start += removed;
+                piece.length -= removed;
+            } else if (offset + removed == piece.length) {
+                piece.length = offset;
+                pieceStart += piece.length;
+                index++;
+            } else {
+                pieces.add(index + 1, new Piece(piece.added, piece.start + offset + removed,
+                        piece.length - offset - removed));
+                piece.length = offset;
+            }
+            remaining -= removed;
+        }
+        length -= count;
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position > length) {
+            throw new IllegalArgumentException("Position " + position
+                    + " is outside the document (" + length + ")");
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(length);
+        for (Piece piece : pieces) {
+            if (piece.added) {
+                text.append(added, piece.start, piece.start + piece.length);
+            } else {
+                text.append(original, piece.start, piece.start + piece.length);
+            }
+        }
+        return text.toString();
+    }
+
+    private static final class Piece {
+        final boolean added;
+        int start;
+        int length;
+
+        Piece(boolean added, int start, int length) {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.unsmart.campus.content;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single insert or delete against a document, and the operational transforms that let an
+ * edit made against an older revision be applied after the edits it did not see. A delete
+ * that spans text inserted concurrently is split in two so the inserted text survives, which
+ * is why transforms work on lists of operations.
+ */
+final class TextOperation {
+    enum Kind { INSERT, DELETE }
+
+    final Kind kind;
+    final int position;
+    /** Inserted text; empty for deletes. */
+    final String text;
+    /** Number of characters removed by a delete; the text length for inserts. */
+    final int length;
+
+    private TextOperation(Kind kind, int position, String text, int length) {
+        this.kind = kind;
+        this.position = position;
+        this.text = text;
+        this.length = length;
+    }
+
+    static TextOperation insert(int position, String text) {
+        return new TextOperation(Kind.INSERT, position, text, text.length());
+    }
+
+    static TextOperation delete(int position, int length) {
+        return new TextOperation(Kind.DELETE, position, "", length);
+    }
+
+    void applyTo(PieceTable table) {
+        if (kind == Kind.INSERT) {
+            table.insert(position, text);
+        } else {
+            table.delete(position, length);
+        }
+    }
+
+    /** Maps a cursor position in the document before this operation to the one after it. */
+    int transformPosition(int cursor) {
+        if (kind == Kind.INSERT) {
+            return cursor >= position ? cursor + length : cursor;
+        }
+        if (cursor <= position) {
+            return cursor;
+        }
+        return cursor >= position + length ? cursor - length : position;
+    }
+
+    /**
+     * Transforms {@code ops}, written against the same document as {@code applied}, so they
+     * can be applied after {@code applied}, and {@code applied} so it can be applied after
+     * them. Inserts at the same position keep {@code applied} first.
+     */
+    static Pair transformPair(List<TextOperation> ops, List<TextOperation> applied) {
+        if (ops.isEmpty() || applied.isEmpty()) {
+            return new Pair(ops, applied);
+        }
+        if (ops.size() > 1) {
+            Pair head = transformPair(ops.subList(0, 1), applied);
+            Pair tail = transformPair(ops.subList(1, ops.size()), head.applied);
+            return new Pair(concat(head.ops, tail.ops), tail.applied);
+        }
+        if (applied.size() > 1) {
+            Pair head = transformPair(ops, applied.subList(0, 1));
+            Pair tail = transformPair(head.ops, applied.subList(1, applied.size()));
+            return new Pair(tail.ops, concat(head.applied, tail.applied));
+        }
+        TextOperation op = ops.get(0);
+        TextOperation other = applied.get(0);
+        return new Pair(op.after(other, true), other.after(op, false));
+    }
+
+    /** Returns this operation rewritten to apply after {@code other}. */
+    private List<TextOperation> after(TextOperation other, boolean yieldOnTie) {
+        if (kind == Kind.INSERT) {
+            int shifted;
+            if (other.kind == Kind.INSERT) {
+                boolean behind = position > other.position || (position == other.position && yieldOnTie);
+                shifted = behind ? position + other.length : position;
+            } else {
+                shifted = other.transformPosition(position);
+            }
+            return Collections.singletonList(insert(shifted, text));
+        }
+        int end = position + length;
+        if (other.kind == Kind.INSERT) {
+            if (other.position <= position) {
+                return Collections.singletonList(delete(position + other.length, length));
+            }
+            if (other.position >= end) {
+                return Collections.singletonList(this);
+            }
+            // Delete around the inserted text, not through it
+            List<TextOperation> split = new ArrayList<>(2);
+            split.add(delete(position, other.position - position));
+            split.add(delete(position + other.length, end - other.position));
+            return split;
+        }
+        int start = other.transformPosition(position);
+        int remaining = other.transformPosition(end) - start;
+        return remaining == 0
+                ? Collections.<TextOperation>emptyList()
+                : Collections.singletonList(delete(start, remaining));
+    }
+
+    private static List<TextOperation> concat(List<TextOperation> first, List<TextOperation> second) {
+        List<TextOperation> both = new ArrayList<>(first.size() + second.size());
+        both.addAll(first);
+        both.addAll(second);
+        return both;
+    }
+
+    static final class Pair {
+        final List<TextOperation> ops;
+        final List<TextOperation> applied;
+
+        Pair(List<TextOperation> ops, List<TextOperation> applied) {
+            this.ops = ops;
+            this.applied = applied;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.unsmart.campus.content;
+
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Resumable uploads. A session owns a sparse temporary file that any number of streams
+ * write ranges into at their own offsets; the session remembers which ranges have arrived
+ * so a client can resume after a dropped connection by sending only what is missing.
+ * Completing a session checks the whole-file SHA-256 and then hands the bytes to the
+ * {@link ContentStore} like a regular upload.
+ */
+class UploadSessions {
+    private static final long SESSION_TTL_NANOS = TimeUnit.HOURS.toNanos(6);
+    private static final int MAX_RANGE_SIZE = 4 << 20;
+
+    private final Path directory;
+    private final ContentStore contentStore;
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    UploadSessions(Path directory, ContentStore contentStore) {
+        this.directory = directory;
+        this.contentStore = contentStore;
+    }
+
+    /** Removes session files left behind by a previous run. */
+    void load() throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory)) {
+            for (Path path : leftovers) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Opens a session, or returns the open session for the same file name, size and hash so
+     * that a client that lost its upload id can still resume.
+     */
+    Session start(String fileName, long totalSize, String sha256) throws IOException {
+        ContentStore.checkFileName(fileName);
+        if (totalSize < 0 || !ChunkStore.isValidHash(sha256)) {
+            throw new IllegalArgumentException("A size and a lowercase hex SHA-256 are required");
+        }
+        expireIdle();
+        for (Session session : sessions.values()) {
+            if (session.fileName.equals(fileName) && session.totalSize == totalSize && session.sha256.equals(sha256)) {
+                session.touch();
+                return session;
+            }
+        }
+        Files.createDirectories(directory);
+        String uploadId = UUID.randomUUID().toString();
+        Session session = new Session(uploadId, fileName, totalSize, sha256, directory.resolve(uploadId + ".part"));
+        sessions.put(uploadId, session);
+        return session;
+    }
+
+    Session get(String uploadId) {
+        Session session = sessions.get(uploadId);
+        if (session != null) {
+            session.touch();
+        }
+        return session;
+    }
+
+    /**
+     * Verifies that every byte arrived and matches the announced SHA-256, then stores the
+     * file as a new version. The session is closed either way once the bytes are complete.
+     * Returns {@code null} if another call completed the session, or it expired, first.
+     */
+    ContentStore.Upload complete(Session session) throws IOException {
+        if (!session.isComplete()) {
+            throw new IllegalStateException("Upload " + session.uploadId + " is missing byte ranges");
+        }
+        if (!sessions.remove(session.uploadId, session)) {
+            return null;
+        }
+        ContentStore.Upload ingest = contentStore.beginUpload();
+        boolean committed = false;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long position = 0;
+            while (position < session.totalSize) {
+                long length = Math.min(Integer.MAX_VALUE, session.totalSize - position);
+                MappedByteBuffer mapped = session.channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                digest.update(mapped.duplicate());
+                ingest.write(mapped);
+                position += length;
+            }
+            String actual = ContentChunker.hex(digest.digest());
+            if (!actual.equals(session.sha256)) {
+                throw new IllegalStateException("Upload " + session.uploadId + " has SHA-256 " + actual
+                        + " but " + session.sha256 + " was announced");
+            }
+            ingest.commit(session.fileName);
+            committed = true;
+            return ingest;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        } finally {
+            if (!committed) {
+                ingest.abort();
+            }
+            session.discard();
+        }
+    }
+
+    private void expireIdle() {
+        long now = System.nanoTime();
+        for (Session session : sessions.values()) {
+            if (now - session.lastTouched > SESSION_TTL_NANOS && sessions.remove(session.uploadId, session)) {
+                session.discard();
+            }
+        }
+    }
+
+    static final class Session {
+        final String uploadId;
+        final String fileName;
+        final long totalSize;
+        final String sha256;
+        private final Path path;
+        private final FileChannel channel;
+        // Received ranges as start -> end, merged and non-overlapping; guarded by this
+        private final TreeMap<Long, Long> received = new TreeMap<>();
+        private volatile long lastTouched = System.nanoTime();
+
+        private Session(String uploadId, String fileName, long totalSize, String sha256, Path path)
+                throws IOException {
+            this.uploadId = uploadId;
+            this.fileName = fileName;
+            this.totalSize = totalSize;
+            this.sha256 = sha256;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+
+        /**
+         * Writes one range at its offset after checking its CRC32C. Ranges from concurrent
+         * streams may arrive in any order and may overlap ranges already received.
+         */
+        void write(long offset, ByteString data, int crc32c) throws IOException {
+            if (offset < 0 || data.size() > MAX_RANGE_SIZE || offset + data.size() > totalSize) {
+                throw new IllegalArgumentException("Range " + offset + "+" + data.size()
+                        + " is outside the " + totalSize + " byte upload");
+            }
+            CRC32C crc = new CRC32C();
+            for (ByteBuffer buffer : data.asReadOnlyByteBufferList()) {
+                crc.update(buffer);
+            }
+            if ((int) crc.getValue() != crc32c) {
+                throw new IllegalArgumentException("CRC32C mismatch for range at " + offset);
+            }
+            long position = offset;
+            for (ByteBuffer buffer : data.asReadOnlyByteBufferList()) {
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+            markReceived(offset, offset + data.size());
+            touch();
+        }
+
+        synchronized List<long[]> receivedRanges() {
+            List<long[]> ranges = new ArrayList<>(received.size());
+            for (Map.Entry<Long, Long> range : received.entrySet()) {
+                ranges.add(new long[] {range.getKey(), range.getValue()});
+            }
+            return ranges;
+        }
+
+        synchronized boolean isComplete() {
+            if (totalSize == 0) {
+                return true;
+            }
+            Map.Entry<Long, Long> first = received.firstEntry();
+            return first != null && first.getKey() == 0 && first.getValue() == totalSize;
+        }
+
+        private synchronized void markReceived(long start, long end) {
+            if (start == end) {
+                return;
+            }
+            Map.Entry<Long, Long> before = received.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+            }
+            Map.Entry<Long, Long> next = received.ceilingEntry(start);
+            while (next != null && next.getKey() <= end) {
+                end = Math.max(end, next.getValue());
+                received.remove(next.getKey());
+                next = received.ceilingEntry(start);
+            }
+            received.put(start, end);
+        }
+
+        private void touch() {
+            lastTouched = System.nanoTime();
+        }
+
+        private void discard() {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // Leftovers are removed by the next load()
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.unsmart.campus.executor;
+
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallExecutorSupplier;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * The threads a service runs its calls on, chosen per service with {@code <service>.executor}
+ * (falling back to {@code campus.executor}):
+ * <ul>
+ *   <li>{@code default}: gRPC's shared cached pool, which grows a thread per concurrent call;</li>
+ *   <li>{@code direct}: the transport's own threads, with no hand-off, for services whose
+ *       handlers never block;</li>
+ *   <li>{@code virtual}: a new virtual thread per task, so blocking handlers cost no platform
+ *       thread while they wait; needs Java 21, and falls back to {@code default} before it;</li>
+ *   <li>{@code bounded}: {@code <service>.executor.threads} platform threads. Once
+ *       {@code <service>.executor.queue} calls are waiting for a thread, new calls are refused
+ *       with RESOURCE_EXHAUSTED on the transport thread, before they add to the backlog; calls
+ *       already running keep going. The limit covers every server built with
+ *       {@link #applyTo(ServerBuilder)}, and only calls and response callbacks use the threads.</li>
+ * </ul>
+ */
+public final class CallExecutor implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(CallExecutor.class.getName());
+    // Set on a call's headers when admission refuses it, for the interceptor to close it
+    private static final Metadata.Key<String> REFUSED =
+            Metadata.Key.of("campus-admission-refused", Metadata.ASCII_STRING_MARSHALLER);
+
+    public enum Model {
+        DEFAULT, DIRECT, VIRTUAL, BOUNDED
+    }
+
+    private final String service;
+    private final Model model;
+    // Null for DEFAULT and DIRECT, which use threads gRPC owns
+    private final ExecutorService executor;
+    private final int queueLimit;
+    // Shared by every server this executor is applied to, so together they admit up to the limit
+    private final Admission admission;
+
+    private CallExecutor(String service, Model model, ExecutorService executor, int queueLimit) {
+        this.service = service;
+        this.model = model;
+        this.executor = executor;
+        this.queueLimit = queueLimit;
+        this.admission = model == Model.BOUNDED ? new Admission() : null;
+    }
+
+    /** The executor configured for {@code service} through system properties. */
+    public static CallExecutor forService(String service) {
+        String name = System.getProperty(service + ".executor", System.getProperty("campus.executor", "default"));
+        Model model;
+        try {
+            model = Model.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warning("Unknown executor '" + name + "' for " + service + "; using the default");
+            model = Model.DEFAULT;
+        }
+        int threads = Integer.getInteger(service + ".executor.threads",
+                Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        int queue = Integer.getInteger(service + ".executor.queue", 1_000);
+        return create(service, model, threads, queue);
+    }
+
+    /**
+     * @param threads    platform threads for {@link Model#BOUNDED}
+     * @param queueLimit waiting calls at which {@link Model#BOUNDED} refuses new ones
+     */
+    public static CallExecutor create(String service, Model model, int threads, int queueLimit) {
+        switch (model) {
+            case VIRTUAL:
+                ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+                if (virtual == null) {
+                    logger.warning("Virtual threads need Java 21; " + service + " uses the default executor");
+                    return new CallExecutor(service, Model.DEFAULT, null, 0);
+                }
+                return new CallExecutor(service, model, virtual, 0);
+            case BOUNDED:
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>(), new CallThreadFactory(service));
+                return new CallExecutor(service, model, pool, queueLimit);
+            default:
+                return new CallExecutor(service, model, null, 0);
+        }
+    }
+
+    /** Looked up reflectively so the code still builds and runs on Java 17. */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // Java 19 and 20 have the method but throw unless preview features are enabled
+            return null;
+        }
+    }
+
+    public Model model() {
+        return model;
+    }
+
+    /** Runs the server's calls on this executor. */
+    public ServerBuilder<?> applyTo(ServerBuilder<?> builder) {
+        switch (model) {
+            case DIRECT:
+                return builder.directExecutor();
+            case VIRTUAL:
+                return builder.executor(executor);
+            case BOUNDED:
+                // Calls start on the transport thread, which admits them onto the pool or refuses them
+                return builder.directExecutor().callExecutor(admission).intercept(admission);
+            default:
+                return builder;
+        }
+    }
+
+    /** Runs the channel's response callbacks on this executor. */
+    public ManagedChannelBuilder<?> applyTo(ManagedChannelBuilder<?> builder) {
+        switch (model) {
+            case DIRECT:
+                return builder.directExecutor();
+            case VIRTUAL:
+            case BOUNDED:
+                return builder.executor(executor);
+            default:
+                return builder;
+        }
+    }
+
+    /**
+     * An executor for work of the caller's own, such as blocking calls made off a UI thread: this
+     * one for {@code virtual}, otherwise a cached pool of daemon threads. A {@code bounded} pool
+     * is kept for calls, whose admission is the only thing that limits its backlog.
+     */
+    public Executor taskExecutor() {
+        return model == Model.VIRTUAL ? executor : Holder.CACHED;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static final class Holder {
+        static final ExecutorService CACHED = Executors.newCachedThreadPool(new CallThreadFactory("task"));
+    }
+
+    /**
+     * Admits new calls onto the pool while fewer than the limit are waiting for a thread. The check
+     * runs on the transport thread as a call arrives, so a refused call never joins the backlog; it
+     * stays on the transport thread, where the interceptor closes it before any handler runs.
+     *
+     * <p>A call waits until its handler starts: when the call starts for streaming requests, and
+     * on half-close for single requests, whose message may arrive after the call was admitted.
+     */
+    private final class Admission implements ServerCallExecutorSupplier, ServerInterceptor {
+        private final ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        @Override
+        public <ReqT, RespT> Executor getExecutor(ServerCall<ReqT, RespT> call, Metadata headers) {
+            // A client cannot refuse its own calls, nor slip past the check, with the marker
+            headers.discardAll(REFUSED);
+            // Calls about to start on idle threads are not waiting for one
+            int idle = Math.max(0, pool.getMaximumPoolSize() - pool.getActiveCount());
+            if (waiting.incrementAndGet() > queueLimit + idle) {
+                waiting.decrementAndGet();
+                headers.put(REFUSED, "1");
+                return null;
+            }
+            return pool;
+        }
+
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+                ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+            if (headers.containsKey(REFUSED)) {
+                call.close(Status.RESOURCE_EXHAUSTED.withDescription(service + " is busy, try again shortly"),
+                        new Metadata());
+                return new ServerCall.Listener<ReqT>() {
+                };
+            }
+            if (!call.getMethodDescriptor().getType().clientSendsOneMessage()) {
+                waiting.decrementAndGet();
+                return next.startCall(call, headers);
+            }
+            return new SimpleForwardingServerCallListener<ReqT>(next.startCall(call, headers)) {
+                private boolean started;
+
+                private void start() {
+                    if (!started) {
+                        started = true;
+                        waiting.decrementAndGet();
+                    }
+                }
+
+                @Override
+                public void onHalfClose() {
+                    start();
+                    super.onHalfClose();
+                }
+
+                @Override
+                public void onCancel() {
+                    start();
+                    super.onCancel();
+                }
+
+                @Override
+                public void onComplete() {
+                    start();
+                    super.onComplete();
+                }
+            };
+        }
+    }
+
+    /** Daemon threads, so calls still running never keep the JVM up after the service stops. */
+    private static final class CallThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger next = new AtomicInteger();
+
+        CallThreadFactory(String service) {
+            this.prefix = service + "-call-";
+        }
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, prefix + next.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
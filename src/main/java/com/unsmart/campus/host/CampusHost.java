@@ -0,0 +1,131 @@
+package com.unsmart.campus.host;
+
+import com.unsmart.campus.assessment.AssessmentServer;
+import com.unsmart.campus.attendance.AttendanceServer;
+import com.unsmart.campus.content.ContentServer;
+import com.unsmart.campus.executor.CallExecutor;
+import com.unsmart.campus.jmdns.ServiceRegistration;
+import com.unsmart.campus.metrics.RpcMetrics;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessServerBuilder;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Runs the attendance, content and assessment services in one JVM on one gRPC server, for small
+ * campus nodes where three JVMs, three servers and their threads cost more memory and startup
+ * time than the load needs. All three share the server's Netty event loops, one executor for
+ * their calls ({@code campus.executor}, see {@link CallExecutor}), and the process's JmDNS, and
+ * are each advertised on the shared port ({@code campus.port}) as usual. The same services are
+ * also served over the in-process transport and listed in {@link LocalServices}, so a client
+ * running in this JVM skips the loopback network.
+ */
+public final class CampusHost {
+    private static final Logger logger = Logger.getLogger(CampusHost.class.getName());
+    private static final int PORT = Integer.getInteger("campus.port", 50050);
+    private static final String SERVICE_TYPE = "_grpc._tcp.local.";
+
+    private final AttendanceServer attendance = new AttendanceServer();
+    private final ContentServer content = new ContentServer();
+    private final AssessmentServer assessment = new AssessmentServer();
+    private final String inProcessName = "campus-" + ManagementFactory.getRuntimeMXBean().getPid();
+    private final List<ServiceRegistration> registrations = new ArrayList<>();
+    private CallExecutor callExecutor;
+    private Server server;
+    private Server inProcessServer;
+
+    public void start() throws IOException {
+        long startNanos = System.nanoTime();
+        attendance.recover();
+        content.recover();
+        callExecutor = CallExecutor.forService("campus");
+
+        // Keyed by the names the services are advertised and discovered under
+        Map<String, ServerServiceDefinition> services = new LinkedHashMap<>();
+        services.put("AttendanceService", attendance.serviceDefinition());
+        services.put("ContentService", content.bindService());
+        services.put("AssessmentService", assessment.bindService());
+        ServerBuilder<?> builder = callExecutor.applyTo(ServerBuilder.forPort(PORT))
+                .intercept(RpcMetrics.serverInterceptor())
+                // Clients ping every 30 s by default to keep long streams alive
+                .permitKeepAliveTime(20, TimeUnit.SECONDS);
+        ServerBuilder<?> inProcess = callExecutor.applyTo(InProcessServerBuilder.forName(inProcessName));
+        for (ServerServiceDefinition service : services.values()) {
+            builder.addService(service);
+            inProcess.addService(service);
+        }
+        inProcess.intercept(RpcMetrics.serverInterceptor());
+        server = builder.build().start();
+        inProcessServer = inProcess.build().start();
+
+        int port = server.getPort();
+        services.keySet().forEach(serviceName -> LocalServices.register(serviceName, inProcessName));
+        register("AttendanceService", port, "Attendance service for SDG 4: Quality Education");
+        register("ContentService", port, "Content service");
+        register("AssessmentService", port, "Assessment service");
+        attendance.joinAdvertisedNodes(port);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+        logger.info("Campus host started in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)
+                + " ms, listening on port " + port);
+    }
+
+    private void register(String serviceName, int port, String description) {
+        ServiceRegistration registration =
+                ServiceRegistration.registerService(serviceName, SERVICE_TYPE, port, description);
+        if (registration != null) {
+            registrations.add(registration);
+        }
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    /** Withdraws the services, lets attendance hand off its classes, and stops serving. */
+    public synchronized void stop() {
+        registrations.forEach(ServiceRegistration::close);
+        registrations.clear();
+        if (server == null) {
+            return;
+        }
+        // Hands classes to the other attendance nodes while calls can still be forwarded here
+        attendance.stop();
+        server.shutdown();
+        inProcessServer.shutdown();
+        for (String serviceName : List.of("AttendanceService", "ContentService", "AssessmentService")) {
+            LocalServices.unregister(serviceName, inProcessName);
+        }
+        content.stop();
+        assessment.stop();
+        try {
+            server.awaitTermination(5, TimeUnit.SECONDS);
+            inProcessServer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        callExecutor.close();
+        server = null;
+        logger.info("Campus host stopped");
+    }
+
+    public void blockUntilShutdown() throws InterruptedException {
+        if (server != null) {
+            server.awaitTermination();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        CampusHost host = new CampusHost();
+        host.start();
+        host.blockUntilShutdown();
+    }
+}
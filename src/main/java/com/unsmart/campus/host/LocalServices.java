@@ -0,0 +1,29 @@
+package com.unsmart.campus.host;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Services served in this JVM over the in-process transport, by service name. A caller in the
+ * same process as {@link CampusHost} looks here first and talks to the service without the
+ * loopback TCP connection, HTTP/2 framing or protobuf encoding a network channel costs.
+ */
+public final class LocalServices {
+    private static final ConcurrentMap<String, String> inProcessNames = new ConcurrentHashMap<>();
+
+    private LocalServices() {
+    }
+
+    static void register(String serviceName, String inProcessName) {
+        inProcessNames.put(serviceName, inProcessName);
+    }
+
+    static void unregister(String serviceName, String inProcessName) {
+        inProcessNames.remove(serviceName, inProcessName);
+    }
+
+    /** Returns the in-process server name serving {@code serviceName} in this JVM, or null if none does. */
+    public static String inProcessName(String serviceName) {
+        return inProcessNames.get(serviceName);
+    }
+}
@@ -0,0 +1,112 @@
+package com.unsmart.campus.jmdns;
+
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.NameResolver;
+import io.grpc.NameResolverProvider;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Resolves {@code jmdns:///<service>} targets to every instance {@link ServiceDiscovery} has seen
+ * of that service, and re-resolves whenever one is advertised or withdrawn, so a channel's load
+ * balancer spreads calls over all replicas and picks up new ones without being rebuilt.
+ */
+public final class JmdnsNameResolverProvider extends NameResolverProvider {
+    public static final String SCHEME = "jmdns";
+
+    private final ServiceDiscovery discovery;
+
+    public JmdnsNameResolverProvider(ServiceDiscovery discovery) {
+        this.discovery = discovery;
+    }
+
+    public static String target(String serviceName) {
+        return SCHEME + ":///" + serviceName;
+    }
+
+    @Override
+    public NameResolver newNameResolver(URI targetUri, NameResolver.Args args) {
+        if (!SCHEME.equals(targetUri.getScheme())) {
+            return null;
+        }
+        String path = targetUri.getPath();
+        if (path == null || path.length() < 2 || path.indexOf('/', 1) >= 0) {
+            throw new IllegalArgumentException("Expected jmdns:///<service>, got " + targetUri);
+        }
+        return new Resolver(path.substring(1), args.getSynchronizationContext());
+    }
+
+    @Override
+    public String getDefaultScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    protected boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    protected int priority() {
+        return 5;
+    }
+
+    private final class Resolver extends NameResolver {
+        private final String serviceName;
+        private final SynchronizationContext syncContext;
+        private final Consumer<List<InetSocketAddress>> watcher = this::publishLater;
+        // Only touched in the synchronization context
+        private Listener2 listener;
+
+        Resolver(String serviceName, SynchronizationContext syncContext) {
+            this.serviceName = serviceName;
+            this.syncContext = syncContext;
+        }
+
+        @Override
+        public String getServiceAuthority() {
+            return serviceName;
+        }
+
+        @Override
+        public void start(Listener2 listener) {
+            this.listener = listener;
+            discovery.watch(serviceName, watcher);
+        }
+
+        @Override
+        public void refresh() {
+            publish(discovery.getInstances(serviceName));
+        }
+
+        private void publishLater(List<InetSocketAddress> instances) {
+            syncContext.execute(() -> publish(instances));
+        }
+
+        private void publish(List<InetSocketAddress> instances) {
+            if (listener == null) {
+                return;
+            }
+            if (instances.isEmpty()) {
+                listener.onError(Status.UNAVAILABLE.withDescription("No " + serviceName + " instances discovered"));
+                return;
+            }
+            List<EquivalentAddressGroup> groups = new ArrayList<>(instances.size());
+            for (InetSocketAddress address : instances) {
+                groups.add(new EquivalentAddressGroup(address));
+            }
+            listener.onResult(ResolutionResult.newBuilder().setAddresses(groups).build());
+        }
+
+        @Override
+        public void shutdown() {
+            discovery.unwatch(serviceName, watcher);
+            listener = null;
+        }
+    }
+}
@@ -2,19 +2,38 @@ package com.unsmart.campus.jmdns;
 
 import javax.jmdns.JmDNS;
 import javax.jmdns.ServiceEvent;
+import javax.jmdns.ServiceInfo;
 import javax.jmdns.ServiceListener;
 import java.io.IOException;
+import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 
-public class ServiceDiscovery {
+/**
+ * Tracks every advertised instance of each service. Instances are grouped by the service name in
+ * their TXT record (or by instance name, for servers that do not set it), and watchers of a
+ * service are told the full instance list whenever one appears or goes away.
+ */
+public class ServiceDiscovery implements AutoCloseable {
     private static final Logger logger = Logger.getLogger(ServiceDiscovery.class.getName());
-    private final ConcurrentMap<String, String> services = new ConcurrentHashMap<>();
+    private static final String SERVICE_TYPE = "_grpc._tcp.local.";
+    // Service name -> instance name -> address, in the order instances were resolved
+    private final ConcurrentMap<String, Map<String, InetSocketAddress>> services = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> serviceOfInstance = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, List<Consumer<List<InetSocketAddress>>>> watchers = new ConcurrentHashMap<>();
     private final Consumer<String> logConsumer;
     private JmDNS jmdns;
+    private ServiceListener listener;
 
     public ServiceDiscovery(Consumer<String> logConsumer) {
         this.logConsumer = logConsumer;
@@ -22,34 +41,143 @@ public class ServiceDiscovery {
 
     public void startDiscovery() throws IOException {
         try {
-            jmdns = JmDNS.create(InetAddress.getLocalHost());
-            jmdns.addServiceListener("_grpc._tcp.local.", new ServiceListener() {
-                @Override
-                public void serviceAdded(ServiceEvent event) {
-                    jmdns.requestServiceInfo(event.getType(), event.getName());
-                }
+            jmdns = SharedJmDNS.acquire();
+        } catch (IOException e) {
+            logger.severe("Failed to start service discovery: " + e.getMessage());
+            throw e;
+        }
+        listener = new ServiceListener() {
+            @Override
+            public void serviceAdded(ServiceEvent event) {
+                event.getDNS().requestServiceInfo(event.getType(), event.getName());
+            }
 
-                @Override
-                public void serviceRemoved(ServiceEvent event) {
-                    services.remove(event.getName());
-                    logConsumer.accept("Service removed: " + event.getName());
+            @Override
+            public void serviceRemoved(ServiceEvent event) {
+                String service = serviceOfInstance.remove(event.getName());
+                if (service == null) {
+                    return;
                 }
+                Map<String, InetSocketAddress> instances = services.get(service);
+                if (instances != null) {
+                    synchronized (instances) {
+                        instances.remove(event.getName());
+                    }
+                }
+                logConsumer.accept("Service removed: " + service + " (" + event.getName() + ")");
+                changed(service);
+            }
 
-                @Override
-                public void serviceResolved(ServiceEvent event) {
-                    String name = event.getName();
-                    String address = event.getInfo().getHostAddresses()[0] + ":" + event.getInfo().getPort();
-                    services.put(name, address);
-                    logConsumer.accept("Service resolved: " + name + " at " + address);
+            @Override
+            public void serviceResolved(ServiceEvent event) {
+                ServiceInfo info = event.getInfo();
+                InetAddress host = hostAddress(info);
+                if (host == null) {
+                    return;
                 }
-            });
-        } catch (IOException e) {
-            logger.severe("Failed to start service discovery: " + e.getMessage());
-            throw e;
+                String service = serviceName(event.getName(), info);
+                InetSocketAddress address = new InetSocketAddress(host, info.getPort());
+                Map<String, InetSocketAddress> instances =
+                        services.computeIfAbsent(service, name -> new LinkedHashMap<>());
+                synchronized (instances) {
+                    if (address.equals(instances.put(event.getName(), address))) {
+                        return;
+                    }
+                }
+                String previous = serviceOfInstance.put(event.getName(), service);
+                if (previous != null && !previous.equals(service)) {
+                    Map<String, InetSocketAddress> old = services.get(previous);
+                    if (old != null) {
+                        synchronized (old) {
+                            old.remove(event.getName());
+                        }
+                    }
+                    changed(previous);
+                }
+                logConsumer.accept("Service resolved: " + service + " at "
+                        + host.getHostAddress() + ":" + info.getPort());
+                changed(service);
+            }
+        };
+        jmdns.addServiceListener(SERVICE_TYPE, listener);
+    }
+
+    /**
+     * The service an instance belongs to: its TXT property, or else its instance name without
+     * the {@code -<port>} suffix, since an instance can resolve before its TXT record has arrived.
+     */
+    private static String serviceName(String instanceName, ServiceInfo info) {
+        String service = info.getPropertyString(ServiceRegistration.SERVICE_PROPERTY);
+        if (service != null) {
+            return service;
         }
+        String suffix = "-" + info.getPort();
+        return instanceName.endsWith(suffix)
+                ? instanceName.substring(0, instanceName.length() - suffix.length())
+                : instanceName;
     }
 
+    /** Prefers an IPv4 address, which every client can reach without a scope id. */
+    private static InetAddress hostAddress(ServiceInfo info) {
+        for (InetAddress address : info.getInetAddresses()) {
+            if (address instanceof Inet4Address) {
+                return address;
+            }
+        }
+        InetAddress[] addresses = info.getInetAddresses();
+        return addresses.length == 0 ? null : addresses[0];
+    }
+
+    /** Returns the address of one instance of the service as {@code host:port}, or null if none is known. */
     public String getServiceAddress(String serviceName) {
-        return services.get(serviceName);
+        List<InetSocketAddress> instances = getInstances(serviceName);
+        if (instances.isEmpty()) {
+            return null;
+        }
+        InetSocketAddress address = instances.get(0);
+        return address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    public List<InetSocketAddress> getInstances(String serviceName) {
+        Map<String, InetSocketAddress> instances = services.get(serviceName);
+        if (instances == null) {
+            return Collections.emptyList();
+        }
+        synchronized (instances) {
+            return new ArrayList<>(instances.values());
+        }
+    }
+
+    /** Calls {@code watcher} with the service's instances now and after every change. */
+    public void watch(String serviceName, Consumer<List<InetSocketAddress>> watcher) {
+        watchers.computeIfAbsent(serviceName, name -> new CopyOnWriteArrayList<>()).add(watcher);
+        watcher.accept(getInstances(serviceName));
+    }
+
+    public void unwatch(String serviceName, Consumer<List<InetSocketAddress>> watcher) {
+        List<Consumer<List<InetSocketAddress>>> list = watchers.get(serviceName);
+        if (list != null) {
+            list.remove(watcher);
+        }
+    }
+
+    private void changed(String serviceName) {
+        List<Consumer<List<InetSocketAddress>>> list = watchers.get(serviceName);
+        if (list == null) {
+            return;
+        }
+        List<InetSocketAddress> instances = getInstances(serviceName);
+        for (Consumer<List<InetSocketAddress>> watcher : list) {
+            watcher.accept(instances);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (jmdns != null) {
+            jmdns.removeServiceListener(SERVICE_TYPE, listener);
+            jmdns = null;
+            SharedJmDNS.release();
+        }
     }
-}
\ No newline at end of file
+}
@@ -3,17 +3,51 @@ package com.unsmart.campus.jmdns;
 import javax.jmdns.JmDNS;
 import javax.jmdns.ServiceInfo;
 import java.io.IOException;
-import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
 
-public class ServiceRegistration {
-    public static void registerService(String serviceName, String serviceType, int port, String serviceDescription) {
+/**
+ * A service advertised over mDNS. Replicas of a service need distinct instance names, so each
+ * one is advertised as {@code <service>-<port>} and carries the service name in the
+ * {@value #SERVICE_PROPERTY} TXT property, which is what discovery groups instances by.
+ */
+public class ServiceRegistration implements AutoCloseable {
+    public static final String SERVICE_PROPERTY = "service";
+
+    private final JmDNS jmdns;
+    private final ServiceInfo serviceInfo;
+
+    private ServiceRegistration(JmDNS jmdns, ServiceInfo serviceInfo) {
+        this.jmdns = jmdns;
+        this.serviceInfo = serviceInfo;
+    }
+
+    /** Advertises the service on the shared JmDNS; returns null if it could not be registered. */
+    public static ServiceRegistration registerService(String serviceName, String serviceType, int port, String serviceDescription) {
         try {
-            JmDNS jmdns = JmDNS.create(InetAddress.getLocalHost());
-            ServiceInfo serviceInfo = ServiceInfo.create(serviceType, serviceName, port, serviceDescription);
-            jmdns.registerService(serviceInfo);
+            JmDNS jmdns = SharedJmDNS.acquire();
+            Map<String, String> properties = new HashMap<>();
+            properties.put(SERVICE_PROPERTY, serviceName);
+            properties.put("description", serviceDescription);
+            ServiceInfo serviceInfo = ServiceInfo.create(serviceType, serviceName + "-" + port, port, 0, 0, properties);
+            try {
+                jmdns.registerService(serviceInfo);
+            } catch (IOException e) {
+                SharedJmDNS.release();
+                throw e;
+            }
             System.out.println("Registered service: " + serviceName + " on port " + port);
+            return new ServiceRegistration(jmdns, serviceInfo);
         } catch (IOException e) {
             System.err.println("Error registering service: " + e.getMessage());
+            return null;
         }
     }
-}
\ No newline at end of file
+
+    /** Withdraws the advertisement, so clients stop sending this instance new calls. */
+    @Override
+    public void close() {
+        jmdns.unregisterService(serviceInfo);
+        SharedJmDNS.release();
+    }
+}
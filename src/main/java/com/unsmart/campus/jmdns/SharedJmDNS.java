@@ -0,0 +1,41 @@
+package com.unsmart.campus.jmdns;
+
+import javax.jmdns.JmDNS;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.logging.Logger;
+
+/**
+ * The one JmDNS instance in the process, shared by every service registration and by discovery.
+ * Each JmDNS binds a multicast socket and starts its own timer threads, so it is created on the
+ * first {@link #acquire()} and closed, unregistering whatever is still advertised, when the last
+ * holder calls {@link #release()}.
+ */
+public final class SharedJmDNS {
+    private static final Logger logger = Logger.getLogger(SharedJmDNS.class.getName());
+    private static JmDNS instance;
+    private static int holders;
+
+    private SharedJmDNS() {
+    }
+
+    public static synchronized JmDNS acquire() throws IOException {
+        if (instance == null) {
+            instance = JmDNS.create(InetAddress.getLocalHost());
+        }
+        holders++;
+        return instance;
+    }
+
+    public static synchronized void release() {
+        if (holders == 0 || --holders > 0) {
+            return;
+        }
+        try {
+            instance.close();
+        } catch (IOException e) {
+            logger.warning("Failed to close JmDNS: " + e.getMessage());
+        }
+        instance = null;
+    }
+}
@@ -0,0 +1,35 @@
+package com.unsmart.campus.metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decides which of a stream of per-event log lines to write: one in every {@code every} events,
+ * picked at random so busy threads do not contend on a shared counter. Checking
+ * {@link #sample()} before building the message keeps unsampled events free of string work.
+ * {@code every} of 1 logs every event and 0 logs none.
+ */
+public final class LogSampler {
+    private final Logger logger;
+    private final Level level;
+    private final int every;
+
+    public LogSampler(Logger logger, Level level, int every) {
+        this.logger = logger;
+        this.level = level;
+        this.every = every;
+    }
+
+    public boolean sample() {
+        if (every <= 0 || !logger.isLoggable(level)) {
+            return false;
+        }
+        return every == 1 || ThreadLocalRandom.current().nextInt(every) == 0;
+    }
+
+    /** Logs {@code message}, noting the sampling rate when not every event is logged. */
+    public void log(String message) {
+        logger.log(level, every == 1 ? message : message + " (1 in " + every + " logged)");
+    }
+}
@@ -0,0 +1,139 @@
+package com.unsmart.campus.metrics;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.Status;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Recording side of {@link MethodMetricsMXBean}. Everything a call records goes into adders,
+ * an array indexed by status code and a fixed-range HdrHistogram recorder, none of which
+ * allocate; the histogram is only folded into its running total when someone reads it.
+ */
+final class MethodMetrics implements MethodMetricsMXBean {
+    // Latencies in microseconds, up to an hour, to two significant digits
+    private static final long MAX_LATENCY_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final Status.Code[] CODES = Status.Code.values();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final AtomicLongArray statusCodes = new AtomicLongArray(CODES.length);
+    private final Recorder latencies = new Recorder(MAX_LATENCY_MICROS, 2);
+    // Guarded by this
+    private final Histogram total = new Histogram(MAX_LATENCY_MICROS, 2);
+    private Histogram interval;
+
+    /** Counts a call as started and returns the start time to pass to {@link #finish}. */
+    long start() {
+        started.increment();
+        return System.nanoTime();
+    }
+
+    void finish(long startNanos, Status.Code code) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        latencies.recordValue(Math.min(Math.max(micros, 0), MAX_LATENCY_MICROS));
+        statusCodes.incrementAndGet(code.ordinal());
+        finished.increment();
+    }
+
+    void received(Object message) {
+        messagesReceived.increment();
+        if (message instanceof MessageLite) {
+            // Memoized by the message once it has been serialized or parsed
+            bytesReceived.add(((MessageLite) message).getSerializedSize());
+        }
+    }
+
+    void sent(Object message) {
+        messagesSent.increment();
+        if (message instanceof MessageLite) {
+            bytesSent.add(((MessageLite) message).getSerializedSize());
+        }
+    }
+
+    @Override
+    public long getCalls() {
+        return started.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return Math.max(0, started.sum() - finished.sum());
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public Map<String, Long> getStatusCodes() {
+        Map<String, Long> codes = new LinkedHashMap<>();
+        for (Status.Code code : CODES) {
+            long count = statusCodes.get(code.ordinal());
+            if (count > 0) {
+                codes.put(code.name(), count);
+            }
+        }
+        return codes;
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return percentile(50);
+    }
+
+    @Override
+    public double getLatencyP90Millis() {
+        return percentile(90);
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return percentile(99);
+    }
+
+    @Override
+    public double getLatencyP999Millis() {
+        return percentile(99.9);
+    }
+
+    @Override
+    public synchronized double getLatencyMaxMillis() {
+        return latencySnapshot().getMaxValue() / 1000.0;
+    }
+
+    private synchronized double percentile(double percentile) {
+        return latencySnapshot().getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private Histogram latencySnapshot() {
+        interval = latencies.getIntervalHistogram(interval);
+        total.add(interval);
+        return total;
+    }
+}
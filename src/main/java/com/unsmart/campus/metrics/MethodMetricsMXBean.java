@@ -0,0 +1,36 @@
+package com.unsmart.campus.metrics;
+
+import java.util.Map;
+
+/**
+ * Counters for one gRPC method on one side of the call, published over JMX under
+ * {@code com.unsmart.campus:type=RpcMetrics,side=...,service=...,method=...}. Received and sent
+ * are from that side's point of view; bytes are serialized message sizes. Latencies cover the
+ * whole call, from start to close, since the process started.
+ */
+public interface MethodMetricsMXBean {
+    long getCalls();
+
+    long getInFlight();
+
+    long getMessagesReceived();
+
+    long getMessagesSent();
+
+    long getBytesReceived();
+
+    long getBytesSent();
+
+    /** Finished calls by status code; codes that never occurred are left out. */
+    Map<String, Long> getStatusCodes();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP90Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyP999Millis();
+
+    double getLatencyMaxMillis();
+}
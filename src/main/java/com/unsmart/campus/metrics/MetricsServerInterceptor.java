@@ -0,0 +1,79 @@
+package com.unsmart.campus.metrics;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Times each server call from when it arrives until the service closes it, or until the client
+ * cancels it, and counts the messages in each direction.
+ */
+final class MetricsServerInterceptor implements ServerInterceptor {
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        MeteredCall<ReqT, RespT> metered = new MeteredCall<>(call, RpcMetrics.server(call.getMethodDescriptor()));
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(metered, headers);
+        } catch (RuntimeException e) {
+            metered.finish(Status.Code.UNKNOWN);
+            throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                metered.metrics.received(message);
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onCancel() {
+                metered.finish(Status.Code.CANCELLED);
+                super.onCancel();
+            }
+        };
+    }
+
+    private static final class MeteredCall<ReqT, RespT>
+            extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+        // A class literal cannot carry type arguments, so the updater is typed by cast
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        private static final AtomicIntegerFieldUpdater<MeteredCall<?, ?>> FINISHED =
+                (AtomicIntegerFieldUpdater) AtomicIntegerFieldUpdater.newUpdater(MeteredCall.class, "finished");
+
+        final MethodMetrics metrics;
+        private final long startNanos;
+        private volatile int finished;
+
+        MeteredCall(ServerCall<ReqT, RespT> call, MethodMetrics metrics) {
+            super(call);
+            this.metrics = metrics;
+            this.startNanos = metrics.start();
+        }
+
+        @Override
+        public void sendMessage(RespT message) {
+            metrics.sent(message);
+            super.sendMessage(message);
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            finish(status.getCode());
+            super.close(status, trailers);
+        }
+
+        /** Records the call once, whether it ends by closing or by being cancelled. */
+        void finish(Status.Code code) {
+            if (FINISHED.compareAndSet(this, 0, 1)) {
+                metrics.finish(startNanos, code);
+            }
+        }
+    }
+}
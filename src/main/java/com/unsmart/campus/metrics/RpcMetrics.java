@@ -0,0 +1,69 @@
+package com.unsmart.campus.metrics;
+
+import io.grpc.ClientInterceptor;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerInterceptor;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Per-method call metrics for every gRPC server and client in the process. Servers add
+ * {@link #serverInterceptor()} and channels {@link #clientInterceptor()}; each method gets its
+ * {@link MethodMetricsMXBean} the first time it is called, so the numbers can be read with
+ * jconsole, VisualVM or any other JMX client without opening a port.
+ */
+public final class RpcMetrics {
+    private static final Logger logger = Logger.getLogger(RpcMetrics.class.getName());
+    private static final ConcurrentMap<String, MethodMetrics> serverMethods = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, MethodMetrics> clientMethods = new ConcurrentHashMap<>();
+    private static final ServerInterceptor SERVER_INTERCEPTOR = new MetricsServerInterceptor();
+    private static final ClientInterceptor CLIENT_INTERCEPTOR = new MetricsClientInterceptor();
+
+    private RpcMetrics() {
+    }
+
+    public static ServerInterceptor serverInterceptor() {
+        return SERVER_INTERCEPTOR;
+    }
+
+    public static ClientInterceptor clientInterceptor() {
+        return CLIENT_INTERCEPTOR;
+    }
+
+    static MethodMetrics server(MethodDescriptor<?, ?> method) {
+        return forMethod(serverMethods, "server", method);
+    }
+
+    static MethodMetrics client(MethodDescriptor<?, ?> method) {
+        return forMethod(clientMethods, "client", method);
+    }
+
+    private static MethodMetrics forMethod(ConcurrentMap<String, MethodMetrics> methods, String side,
+                                           MethodDescriptor<?, ?> method) {
+        MethodMetrics metrics = methods.get(method.getFullMethodName());
+        if (metrics != null) {
+            return metrics;
+        }
+        return methods.computeIfAbsent(method.getFullMethodName(), name -> register(side, method));
+    }
+
+    private static MethodMetrics register(String side, MethodDescriptor<?, ?> method) {
+        MethodMetrics metrics = new MethodMetrics();
+        try {
+            // Proto service and method names are identifiers, so they need no quoting
+            ObjectName name = new ObjectName("com.unsmart.campus:type=RpcMetrics,side=" + side
+                    + ",service=" + method.getServiceName() + ",method=" + method.getBareMethodName());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+        } catch (InstanceAlreadyExistsException e) {
+            logger.fine("Metrics already registered for " + method.getFullMethodName());
+        } catch (JMException e) {
+            logger.warning("Could not publish metrics for " + method.getFullMethodName() + ": " + e.getMessage());
+        }
+        return metrics;
+    }
+}
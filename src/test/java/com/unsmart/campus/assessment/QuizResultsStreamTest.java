@@ -0,0 +1,185 @@
+package com.unsmart.campus.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Exam bursts of 10k students through GetQuizResults over the in-process transport, whose flow
+ * control is exact: a side is ready only while its peer has requested more messages.
+ */
+class QuizResultsStreamTest {
+    // Held so the level sticks; loggers are only weakly referenced by the LogManager
+    private static final Logger CAMPUS_LOGGER = Logger.getLogger("com.unsmart.campus");
+    private static final String QUIZ_ID = "EXAM";
+    private static final int QUESTIONS = 20;
+    private static final int STUDENTS = 10_000;
+
+    private AssessmentServer assessment;
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void start() throws Exception {
+        CAMPUS_LOGGER.setLevel(Level.WARNING);
+        assessment = new AssessmentServer();
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).addService(assessment).build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        SetQuizRequest.Builder quiz = SetQuizRequest.newBuilder().setQuizId(QUIZ_ID).setClassId("HALL");
+        for (int q = 0; q < QUESTIONS; q++) {
+            quiz.addQuestions(QuizQuestion.newBuilder().setQuestionId("Q" + q).setCorrectAnswer("A"));
+        }
+        AssessmentServiceGrpc.newBlockingStub(channel).setQuiz(quiz.build());
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        assessment.stop();
+    }
+
+    @Test
+    void answersKeepFlowingWhileResultsGoUnread() throws Exception {
+        Exam exam = new Exam(3, false);
+        exam.start();
+        // Without a flush interval nothing is written before the end, so an unread call must
+        // not hold up the answers; the in-process transport only lets them all out if the
+        // server requested each one
+        assertTrue(exam.allSent.await(30, TimeUnit.SECONDS), "answers taken: " + exam.sent.get());
+        assertFalse(exam.finished.isDone());
+
+        exam.read();
+        exam.finished.get(30, TimeUnit.SECONDS);
+        assertEquals(STUDENTS * 3, exam.sent.get());
+        assertEquals(STUDENTS, exam.results.get());
+        assertEquals(STUDENTS * 3, exam.score.get());
+    }
+
+    @Test
+    void queueAndHeapStayFlatAsTheBurstGrows() throws Exception {
+        long small = retainedDuringBurst(2);
+        long large = retainedDuringBurst(QUESTIONS);
+        // Ten times the answers; buffering them all would retain tens of MiB more
+        assertTrue(large - small < 8 << 20,
+                String.format("retained heap grew from %d KiB to %d KiB", small >> 10, large >> 10));
+    }
+
+    /** Runs a burst of {@code answers} per student and returns the heap retained once it is all sent. */
+    private long retainedDuringBurst(int answers) throws Exception {
+        long baseline = retainedHeap();
+        AtomicLong deepest = new AtomicLong();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> deepest.accumulateAndGet(assessment.gradingQueueDepth(), Math::max),
+                0, 1, TimeUnit.MILLISECONDS);
+        Exam exam = new Exam(answers, true);
+        exam.start();
+        assertTrue(exam.allSent.await(60, TimeUnit.SECONDS));
+        long retained = retainedHeap() - baseline;
+        exam.finished.get(30, TimeUnit.SECONDS);
+        sampler.shutdownNow();
+
+        assertEquals(STUDENTS, exam.results.get());
+        assertEquals(STUDENTS * answers, exam.score.get());
+        assertTrue(deepest.get() <= QuizResultsStream.MAX_IN_FLIGHT, "grading queue reached " + deepest.get());
+        return retained;
+    }
+
+    private static long retainedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * One GetQuizResults call submitting every student's answer to a question before moving on to
+     * the next, only while the call is ready, as the client's exam screen does. Every answer is
+     * correct.
+     */
+    private final class Exam implements ClientResponseObserver<StudentAnswer, AssessmentResult> {
+        final AtomicInteger sent = new AtomicInteger();
+        final AtomicInteger results = new AtomicInteger();
+        final AtomicLong score = new AtomicLong();
+        final CountDownLatch allSent = new CountDownLatch(1);
+        final CompletableFuture<Void> finished = new CompletableFuture<>();
+        private final int answers;
+        private final boolean reading;
+        private ClientCallStreamObserver<StudentAnswer> requests;
+
+        Exam(int answers, boolean reading) {
+            this.answers = answers;
+            this.reading = reading;
+        }
+
+        void start() {
+            AssessmentServiceGrpc.newStub(channel).getQuizResults(this);
+        }
+
+        /** Starts reading results after a stall. */
+        void read() {
+            requests.request(Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<StudentAnswer> requests) {
+            this.requests = requests;
+            if (!reading) {
+                requests.disableAutoRequestWithInitial(0);
+            }
+            requests.setOnReadyHandler(this::send);
+        }
+
+        private synchronized void send() {
+            int total = STUDENTS * answers;
+            while (requests.isReady() && sent.get() < total) {
+                int next = sent.getAndIncrement();
+                requests.onNext(StudentAnswer.newBuilder()
+                        .setStudentId("x" + (24_000_000 + next % STUDENTS))
+                        .setQuizId(QUIZ_ID)
+                        .setQuestionId("Q" + next / STUDENTS)
+                        .setSubmittedAnswer("A")
+                        .build());
+                if (next + 1 == total) {
+                    requests.onCompleted();
+                    allSent.countDown();
+                }
+            }
+        }
+
+        @Override
+        public void onNext(AssessmentResult result) {
+            results.incrementAndGet();
+            score.addAndGet(result.getScore());
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            finished.completeExceptionally(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            finished.complete(null);
+        }
+    }
+}
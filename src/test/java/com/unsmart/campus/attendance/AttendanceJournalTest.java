@@ -0,0 +1,201 @@
+package com.unsmart.campus.attendance;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AttendanceJournalTest {
+    @TempDir
+    Path root;
+
+    private Path directory;
+
+    @BeforeEach
+    void createJournalDirectory() {
+        directory = root.resolve("journal");
+    }
+
+    @Test
+    void dropsTornTailAndKeepsAppending() throws Exception {
+        AttendanceStore store = new AttendanceStore();
+        AttendanceJournal journal = open(directory, store, 1_000);
+        checkIn(store, journal, "C1", "S1", 10);
+
+        // A crash part-way through the last entry leaves it torn
+        Path crashed = copy(directory, "crashed");
+        try (FileChannel log = FileChannel.open(crashed.resolve("attendance.log"), StandardOpenOption.WRITE)) {
+            log.truncate(log.size() - 5);
+        }
+        journal.close();
+
+        AttendanceStore recovered = new AttendanceStore();
+        AttendanceJournal reopened = new AttendanceJournal(crashed, 1_000);
+        assertEquals(9, reopened.recover(recovered));
+        checkIn(recovered, reopened, "C1", "S1", 1);
+
+        AttendanceStore again = new AttendanceStore();
+        AttendanceJournal last = new AttendanceJournal(copy(crashed, "again"), 1_000);
+        assertEquals(10, last.recover(again));
+        assertEquals(10, again.forClass("C1").log().size());
+        reopened.close();
+        last.close();
+    }
+
+    @Test
+    void dedupesAcrossRestart() throws Exception {
+        AttendanceStore store = new AttendanceStore();
+        AttendanceJournal journal = open(directory, store, 1_000);
+        checkIn(store, journal, "C1", "S1", 5);
+        journal.close();
+
+        AttendanceStore restarted = new AttendanceStore();
+        AttendanceJournal reopened = open(directory, restarted, 1_000);
+        assertNull(restarted.checkIn(request("C1", "S1", 0)), "same session after a clean restart");
+        assertNotNull(restarted.checkIn(request("C1", "S2", 0)), "a new session");
+        reopened.append("C1", List.of(restarted.forClass("C1").log().get(5))).get();
+
+        // After a crash the check-in is only in the log, not the snapshot
+        AttendanceStore crashed = new AttendanceStore();
+        AttendanceJournal recovered = open(copy(directory, "crashed"), crashed, 1_000);
+        assertEquals(6, crashed.forClass("C1").log().size());
+        assertNull(crashed.checkIn(request("C1", "S2", 0)), "same session after a crash");
+        reopened.close();
+        recovered.close();
+    }
+
+    @Test
+    void replaysSealedSegmentLeftByUnfinishedSnapshot() throws Exception {
+        AttendanceStore store = new AttendanceStore();
+        AttendanceJournal journal = open(directory, store, 1_000);
+        checkIn(store, journal, "C1", "S1", 10);
+        Path sealed = copy(directory, "sealed");
+        checkIn(store, journal, "C1", "S1", 10);
+
+        // A crash after the log was sealed but before the snapshot covering it was written
+        Path crashed = copy(directory, "crashed");
+        Files.move(sealed.resolve("attendance.log"), crashed.resolve("attendance.log.0"));
+        AttendanceStore recovered = new AttendanceStore();
+        AttendanceJournal reopened = new AttendanceJournal(crashed, 1_000);
+        assertEquals(20, reopened.recover(recovered));
+        checkIn(recovered, reopened, "C1", "S1", 1);
+        journal.close();
+        reopened.close();
+
+        AttendanceStore again = new AttendanceStore();
+        AttendanceJournal last = open(crashed, again, 1_000);
+        assertEquals(21, again.forClass("C1").log().size());
+        last.close();
+    }
+
+    @Test
+    void snapshotsWhileCheckInsContinue() throws Exception {
+        AttendanceStore store = new AttendanceStore();
+        AttendanceJournal journal = open(directory, store, 10);
+        for (int c = 0; c < 5; c++) {
+            checkIn(store, journal, "C" + c, "S1", 40);
+        }
+        journal.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of("attendance.log", "attendance.snapshot"),
+                    files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList()));
+        }
+
+        AttendanceStore recovered = new AttendanceStore();
+        AttendanceJournal reopened = new AttendanceJournal(directory, 10);
+        assertEquals(200, reopened.recover(recovered));
+        for (int c = 0; c < 5; c++) {
+            assertEquals(40, recovered.forClass("C" + c).log().size());
+        }
+        reopened.close();
+    }
+
+    @Test
+    void appendsRacingCloseAllFinish() throws Exception {
+        AttendanceStore store = new AttendanceStore();
+        AttendanceJournal journal = open(directory, store, 1_000);
+        AttendanceRecord record = store.checkIn(request("C1", "S1", 0));
+        List<CompletableFuture<Void>> durable = new CopyOnWriteArrayList<>();
+        List<Thread> appenders = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread appender = new Thread(() -> {
+                CompletableFuture<Void> done;
+                do {
+                    done = journal.append("C1", List.of(record));
+                    durable.add(done);
+                } while (!done.isCompletedExceptionally());
+            });
+            appender.start();
+            appenders.add(appender);
+        }
+        Thread.sleep(50);
+        journal.close();
+        for (Thread appender : appenders) {
+            appender.join();
+        }
+        // Each append is either on disk or failed; none is left behind the close marker
+        for (CompletableFuture<Void> done : durable) {
+            try {
+                done.get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    private static AttendanceJournal open(Path directory, AttendanceStore store, int snapshotEvery)
+            throws IOException {
+        AttendanceJournal journal = new AttendanceJournal(directory, snapshotEvery);
+        journal.recover(store);
+        return journal;
+    }
+
+    /** Checks in {@code count} new students one at a time and waits for them to be journaled. */
+    private static void checkIn(AttendanceStore store, AttendanceJournal journal, String classId, String sessionId,
+                                int count) throws Exception {
+        int first = store.forClass(classId).log().size();
+        List<CompletableFuture<Void>> durable = new ArrayList<>();
+        for (int i = first; i < first + count; i++) {
+            durable.add(journal.append(classId, List.of(store.checkIn(request(classId, sessionId, i)))));
+        }
+        CompletableFuture.allOf(durable.toArray(new CompletableFuture<?>[0])).get();
+    }
+
+    private static CheckInRequest request(String classId, String sessionId, int student) {
+        return CheckInRequest.newBuilder()
+                .setClassId(classId)
+                .setSessionId(sessionId)
+                .setStudent(Student.newBuilder()
+                        .setStudentId("x" + student)
+                        .setStudentName("Student " + student))
+                .build();
+    }
+
+    /** Copies the journal's files as a crash would leave them, without closing it. */
+    private Path copy(Path from, String name) throws IOException {
+        Path to = Files.createDirectory(root.resolve(name));
+        try (Stream<Path> files = Files.list(from)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, to.resolve(file.getFileName()));
+            }
+        }
+        return to;
+    }
+}
@@ -0,0 +1,127 @@
+package com.unsmart.campus.content;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ContentStoreTest {
+    @TempDir
+    Path directory;
+
+    private ContentStore store;
+
+    @BeforeEach
+    void load() throws IOException {
+        store = new ContentStore(directory);
+        store.load();
+    }
+
+    @Test
+    void abortDeletesTheChunksItStored() throws IOException {
+        byte[] deck = deck(1);
+        ContentStore.Upload upload = store.beginUpload();
+        upload.write(ByteString.copyFrom(deck));
+        List<String> stored = cutChunks(deck);
+        assertTrue(stored.size() > 1);
+        assertTrue(store.missingChunks(stored).isEmpty());
+
+        upload.abort();
+        assertEquals(stored, store.missingChunks(stored));
+        for (String hash : stored) {
+            assertTrue(Files.notExists(store.chunkPath(hash)));
+        }
+    }
+
+    @Test
+    void abortKeepsChunksOfPublishedVersions() throws IOException {
+        byte[] first = deck(1);
+        ContentStore.Upload published = store.beginUpload();
+        published.write(ByteString.copyFrom(first));
+        published.commit("week1.pdf");
+
+        // The same deck with new slides appended
+        byte[] second = deck(2);
+        System.arraycopy(first, 0, second, 0, first.length / 2);
+        ContentStore.Upload upload = store.beginUpload();
+        upload.write(ByteString.copyFrom(second));
+        upload.abort();
+
+        List<String> kept = cutChunks(first);
+        kept.add(lastChunk(first));
+        assertTrue(store.missingChunks(kept).isEmpty());
+        List<String> dropped = cutChunks(second);
+        dropped.removeAll(kept);
+        assertTrue(!dropped.isEmpty());
+        assertEquals(dropped, store.missingChunks(dropped));
+    }
+
+    @Test
+    void abortKeepsChunksAnotherUploadPublishes() throws IOException {
+        byte[] deck = deck(1);
+        ContentStore.Upload storing = store.beginUpload();
+        storing.write(ByteString.copyFrom(deck));
+        List<String> stored = cutChunks(deck);
+
+        // A client told the chunks are stored references them instead of sending them
+        ContentStore.Upload referencing = store.beginUpload();
+        for (String hash : stored) {
+            referencing.reference(hash);
+        }
+        storing.abort();
+        assertTrue(store.missingChunks(stored).isEmpty());
+        ContentStore.StoredFile file = referencing.commit("week1.pdf");
+        assertEquals(stored.size(), file.chunkHashes.length);
+
+        // Nor does aborting once more after the other upload finished
+        storing.abort();
+        assertTrue(store.missingChunks(stored).isEmpty());
+    }
+
+    @Test
+    void lastAbortDeletesSharedChunks() throws IOException {
+        byte[] deck = deck(1);
+        ContentStore.Upload first = store.beginUpload();
+        first.write(ByteString.copyFrom(deck));
+        ContentStore.Upload second = store.beginUpload();
+        second.write(ByteString.copyFrom(deck));
+        List<String> stored = cutChunks(deck);
+
+        first.abort();
+        assertTrue(store.missingChunks(stored).isEmpty());
+        second.abort();
+        assertEquals(stored, store.missingChunks(stored));
+    }
+
+    /** One MiB of incompressible bytes, which cuts into a dozen or so chunks. */
+    private static byte[] deck(long seed) {
+        byte[] deck = new byte[1 << 20];
+        new Random(seed).nextBytes(deck);
+        return deck;
+    }
+
+    /** The hashes of the chunks an upload of {@code data} stores before its final flush. */
+    private static List<String> cutChunks(byte[] data) throws IOException {
+        List<String> hashes = new ArrayList<>();
+        ContentChunker chunker = new ContentChunker((chunk, length) -> hashes.add(ContentChunker.hash(chunk, 0, length)));
+        chunker.update(data, 0, data.length);
+        return hashes;
+    }
+
+    private static String lastChunk(byte[] data) throws IOException {
+        List<String> hashes = new ArrayList<>();
+        ContentChunker chunker = new ContentChunker((chunk, length) -> hashes.add(ContentChunker.hash(chunk, 0, length)));
+        chunker.update(data, 0, data.length);
+        chunker.flush();
+        return hashes.get(hashes.size() - 1);
+    }
+}
@@ -0,0 +1,306 @@
+package com.unsmart.campus.content;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Two editors typing into one document over the in-process transport, each sending keystrokes
+ * without waiting for the previous ones to come back, with the server's edits coalesced and
+ * batched as usual. Once both have caught up, each editor's text must be the server's.
+ */
+class DocumentHubTest {
+    // Held so the level sticks; loggers are only weakly referenced by the LogManager
+    private static final Logger CAMPUS_LOGGER = Logger.getLogger("com.unsmart.campus");
+    private static final String DOCUMENT_ID = "lecture-notes";
+    private static final String ORIGINAL = "0123456789012345678901234567890123456789";
+
+    @TempDir
+    Path directory;
+
+    private ContentServer content;
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void start() throws Exception {
+        CAMPUS_LOGGER.setLevel(Level.WARNING);
+        content = new ContentServer(directory);
+        content.recover();
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).addService(content).build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        Client seed = new Client("seed", 'a');
+        seed.join();
+        seed.send(TextOperation.insert(0, ORIGINAL));
+        seed.caughtUp.get(10, TimeUnit.SECONDS);
+        seed.leave();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        content.stop();
+    }
+
+    @Test
+    void editorsSendingUnacknowledgedKeystrokesConverge() throws Exception {
+        Client alice = new Client("alice", 'a');
+        Client bob = new Client("bob", 'A');
+        alice.join();
+        bob.join();
+        Thread aliceTyping = new Thread(() -> alice.type(new Random(1), 2_000));
+        Thread bobTyping = new Thread(() -> bob.type(new Random(2), 2_000));
+        aliceTyping.start();
+        bobTyping.start();
+        aliceTyping.join();
+        bobTyping.join();
+
+        alice.caughtUp.get(30, TimeUnit.SECONDS);
+        bob.caughtUp.get(30, TimeUnit.SECONDS);
+        String text = readDocument();
+        assertNull(alice.error);
+        assertNull(bob.error);
+        assertEquals(text, alice.text());
+        assertEquals(text, bob.text());
+        assertTrue(alice.sent > 0 && bob.sent > 0);
+        alice.leave();
+        bob.leave();
+    }
+
+    /** The server's text, as the snapshot a new editor is sent. */
+    private String readDocument() throws Exception {
+        CompletableFuture<String> snapshot = new CompletableFuture<>();
+        StreamObserver<DocumentEdit> edits = ContentDeliveryServiceGrpc.newStub(channel)
+                .collaborateOnDocumentBatched(new StreamObserver<DocumentEditBatch>() {
+                    @Override
+                    public void onNext(DocumentEditBatch batch) {
+                        snapshot.complete(batch.getEdits(0).getPayload());
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        snapshot.completeExceptionally(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                });
+        edits.onNext(DocumentEdit.newBuilder().setDocumentId(DOCUMENT_ID).setEditAction("join").build());
+        String text = snapshot.get(10, TimeUnit.SECONDS);
+        edits.onCompleted();
+        return text;
+    }
+
+    /**
+     * An editor that applies its keystrokes at once and keeps those the server has not echoed,
+     * transforming them past other editors' edits as they arrive, as a real client would. It
+     * only types letters from its own alphabet and never deletes them, so the server cannot
+     * coalesce its echoes away and each echo acknowledges exactly the operations it spans.
+     */
+    private final class Client implements StreamObserver<DocumentEditBatch> {
+        final String userId;
+        final char alphabet;
+        final CountDownLatch joined = new CountDownLatch(1);
+        volatile CompletableFuture<Void> caughtUp = new CompletableFuture<>();
+        volatile Throwable error;
+        private final StringBuilder text = new StringBuilder();
+        // Sent edits the server has not echoed, each as the operations it will commit as
+        private final Deque<List<TextOperation>> pending = new ArrayDeque<>();
+        private int echoedOfFirst;
+        private long revision;
+        private int sent;
+        private StreamObserver<DocumentEdit> edits;
+
+        Client(String userId, char alphabet) {
+            this.userId = userId;
+            this.alphabet = alphabet;
+        }
+
+        void join() throws InterruptedException {
+            edits = ContentDeliveryServiceGrpc.newStub(channel).collaborateOnDocumentBatched(this);
+            edits.onNext(DocumentEdit.newBuilder()
+                    .setDocumentId(DOCUMENT_ID)
+                    .setUserId(userId)
+                    .setEditAction("join")
+                    .build());
+            assertTrue(joined.await(10, TimeUnit.SECONDS));
+        }
+
+        void leave() {
+            edits.onCompleted();
+        }
+
+        synchronized String text() {
+            return text.toString();
+        }
+
+        /** Types {@code keystrokes} inserts and deletes, yielding now and then so edits cross. */
+        void type(Random random, int keystrokes) {
+            for (int i = 0; i < keystrokes; i++) {
+                TextOperation op;
+                synchronized (this) {
+                    op = random.nextInt(3) > 0 ? typeLetter(random) : deleteOthers(random);
+                    if (op == null) {
+                        continue;
+                    }
+                    send(op);
+                }
+                if (random.nextInt(20) == 0) {
+                    Thread.yield();
+                }
+            }
+        }
+
+        private TextOperation typeLetter(Random random) {
+            return TextOperation.insert(random.nextInt(text.length() + 1),
+                    String.valueOf((char) (alphabet + random.nextInt(26))));
+        }
+
+        /** Deletes up to three characters, none of them typed by this editor. */
+        private TextOperation deleteOthers(Random random) {
+            if (text.length() == 0) {
+                return null;
+            }
+            int position = random.nextInt(text.length());
+            int end = position;
+            int limit = Math.min(text.length(), position + 1 + random.nextInt(3));
+            while (end < limit && !typedHere(text.charAt(end))) {
+                end++;
+            }
+            return end == position ? null : TextOperation.delete(position, end - position);
+        }
+
+        private boolean typedHere(char c) {
+            return c >= alphabet && c < alphabet + 26;
+        }
+
+        synchronized void send(TextOperation op) {
+            apply(Collections.singletonList(op));
+            pending.addLast(new ArrayList<>(Collections.singletonList(op)));
+            if (caughtUp.isDone() && error == null) {
+                caughtUp = new CompletableFuture<>();
+            }
+            sent++;
+            edits.onNext(DocumentEdit.newBuilder()
+                    .setDocumentId(DOCUMENT_ID)
+                    .setUserId(userId)
+                    .setEditAction(op.kind == TextOperation.Kind.INSERT ? "insert" : "delete")
+                    .setCursorPosition(op.position)
+                    .setPayload(op.text)
+                    .setLength(op.length)
+                    .setBaseRevision(revision)
+                    .build());
+        }
+
+        @Override
+        public synchronized void onNext(DocumentEditBatch batch) {
+            try {
+                receive(batch);
+            } catch (AssertionError | RuntimeException e) {
+                // Thrown here it would only be logged by the transport
+                onError(e);
+            }
+        }
+
+        private void receive(DocumentEditBatch batch) {
+            for (DocumentEdit edit : batch.getEditsList()) {
+                if (edit.getEditAction().equals("snapshot")) {
+                    text.setLength(0);
+                    text.append(edit.getPayload());
+                    revision = edit.getRevision();
+                    joined.countDown();
+                    continue;
+                }
+                assertEquals(revision, edit.getBaseRevision(), "a broadcast skipped revisions");
+                if (edit.getUserId().equals(userId)) {
+                    acknowledge(edit.getRevision() - edit.getBaseRevision());
+                } else {
+                    List<TextOperation> remote = Collections.singletonList(edit.getEditAction().equals("insert")
+                            ? TextOperation.insert(edit.getCursorPosition(), edit.getPayload())
+                            : TextOperation.delete(edit.getCursorPosition(), edit.getLength()));
+                    // The server commits the pending edits after this one, so they move past it
+                    for (List<TextOperation> entry : pending) {
+                        TextOperation.Pair pair = TextOperation.transformPair(entry, remote);
+                        remote = pair.applied;
+                        List<TextOperation> transformed = new ArrayList<>(pair.ops);
+                        entry.clear();
+                        entry.addAll(transformed);
+                    }
+                    apply(remote);
+                }
+                revision = edit.getRevision();
+            }
+            if (pending.stream().allMatch(List::isEmpty)) {
+                caughtUp.complete(null);
+            }
+        }
+
+        /**
+         * Retires the oldest pending edits, which the server committed as {@code revisions}
+         * operations. An edit split in two may have been merged half into one echo and half
+         * into the next, so the operations of the oldest edit already echoed are counted.
+         */
+        private void acknowledge(long revisions) {
+            while (revisions > 0) {
+                int left = pending.peekFirst().size() - echoedOfFirst;
+                if (revisions < left) {
+                    echoedOfFirst += (int) revisions;
+                    return;
+                }
+                pending.pollFirst();
+                echoedOfFirst = 0;
+                revisions -= left;
+            }
+            // Edits transformed to nothing commit nothing and are never echoed
+            while (!pending.isEmpty() && pending.peekFirst().isEmpty()) {
+                pending.pollFirst();
+            }
+        }
+
+        private void apply(List<TextOperation> ops) {
+            for (TextOperation op : ops) {
+                if (op.kind == TextOperation.Kind.INSERT) {
+                    text.insert(op.position, op.text);
+                } else {
+                    text.delete(op.position, op.position + op.length);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            joined.countDown();
+            caughtUp.completeExceptionally(t);
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.unsmart.campus.content;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class EditCoalescerTest {
+    @Test
+    void typingExtendsAnInsert() {
+        List<DocumentEdit> compacted = EditCoalescer.compact(List.of(
+                insert("alice", 4, "h", 1), insert("alice", 5, "i", 2), cursor("bob", 0, 2)));
+        assertEquals(2, compacted.size());
+        assertEquals("hi", compacted.get(0).getPayload());
+        assertEquals(0, compacted.get(0).getBaseRevision());
+        assertEquals(2, compacted.get(0).getRevision());
+    }
+
+    @Test
+    void deletingTypedTextTrimsTheInsert() {
+        List<DocumentEdit> compacted = EditCoalescer.compact(List.of(
+                insert("alice", 4, "hello", 1), delete("alice", 7, 2, 2)));
+        assertEquals(1, compacted.size());
+        assertEquals("insert", compacted.get(0).getEditAction());
+        assertEquals("hel", compacted.get(0).getPayload());
+    }
+
+    @Test
+    void textTypedAndDeletedAgainIsDropped() {
+        List<DocumentEdit> compacted = EditCoalescer.compact(List.of(
+                insert("alice", 4, "h", 1), insert("alice", 5, "i", 2), delete("alice", 5, 1, 3),
+                delete("alice", 4, 1, 4)));
+        assertTrue(compacted.isEmpty(), compacted.toString());
+
+        // A later edit by the same user is kept, and still applies after what came before
+        compacted = EditCoalescer.compact(List.of(
+                delete("bob", 0, 1, 1), insert("alice", 4, "x", 2), delete("alice", 4, 1, 3),
+                insert("alice", 9, "y", 4)));
+        assertEquals(2, compacted.size());
+        assertEquals("bob", compacted.get(0).getUserId());
+        assertEquals("y", compacted.get(1).getPayload());
+    }
+
+    private static DocumentEdit insert(String userId, int position, String text, long revision) {
+        return edit(userId, "insert", position, revision).setPayload(text).setLength(text.length()).build();
+    }
+
+    private static DocumentEdit delete(String userId, int position, int length, long revision) {
+        return edit(userId, "delete", position, revision).setLength(length).build();
+    }
+
+    private static DocumentEdit cursor(String userId, int position, long revision) {
+        return edit(userId, "cursor", position, revision).build();
+    }
+
+    private static DocumentEdit.Builder edit(String userId, String action, int position, long revision) {
+        return DocumentEdit.newBuilder()
+                .setDocumentId("notes")
+                .setUserId(userId)
+                .setEditAction(action)
+                .setCursorPosition(position)
+                .setBaseRevision(revision - 1)
+                .setRevision(revision);
+    }
+}
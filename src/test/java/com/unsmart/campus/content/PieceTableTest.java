@@ -0,0 +1,45 @@
+package com.unsmart.campus.content;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class PieceTableTest {
+    @Test
+    void randomEditsMatchAStringBuilder() {
+        Random random = new Random(7);
+        StringBuilder expected = new StringBuilder("The quick brown fox jumps over the lazy dog");
+        PieceTable table = new PieceTable(expected.toString());
+        for (int i = 0; i < 20_000; i++) {
+            int length = expected.length();
+            if (length == 0 || random.nextInt(3) > 0) {
+                // Mostly typing, often right after the previous insert
+                int position = random.nextInt(4) == 0 ? random.nextInt(length + 1) : Math.min(length, i % (length + 1));
+                String text = String.valueOf((char) ('a' + random.nextInt(26)));
+                table.insert(position, text);
+                expected.insert(position, text);
+            } else {
+                int position = random.nextInt(length);
+                int count = 1 + random.nextInt(Math.min(8, length - position));
+                table.delete(position, count);
+                expected.delete(position, position + count);
+            }
+            assertEquals(expected.length(), table.length());
+            if (i % 100 == 0) {
+                assertEquals(expected.toString(), table.toString(), "after " + i + " edits");
+            }
+        }
+        assertEquals(expected.toString(), table.toString());
+    }
+
+    @Test
+    void rejectsEditsOutsideTheText() {
+        PieceTable table = new PieceTable("abc");
+        assertThrows(IllegalArgumentException.class, () -> table.insert(4, "x"));
+        assertThrows(IllegalArgumentException.class, () -> table.delete(2, 2));
+        assertThrows(IllegalArgumentException.class, () -> table.delete(-1, 1));
+        assertEquals("abc", table.toString());
+    }
+}
@@ -0,0 +1,109 @@
+package com.unsmart.campus.content;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The convergence property of {@link TextOperation#transformPair}: applying {@code applied} and
+ * then the transformed {@code ops} gives the same text as applying {@code ops} and then the
+ * transformed {@code applied}.
+ */
+class TextOperationTest {
+    @Test
+    void insertsAtTheSamePositionKeepAppliedFirst() {
+        assertEquals("abYXcd", converge("abcd",
+                List.of(TextOperation.insert(2, "X")), List.of(TextOperation.insert(2, "Y"))));
+    }
+
+    @Test
+    void deleteIsSplitAroundAConcurrentInsert() {
+        TextOperation.Pair pair = TextOperation.transformPair(
+                List.of(TextOperation.delete(1, 4)), List.of(TextOperation.insert(3, "XY")));
+        assertEquals(2, pair.ops.size());
+        assertEquals("aXYf", converge("abcdef",
+                List.of(TextOperation.delete(1, 4)), List.of(TextOperation.insert(3, "XY"))));
+    }
+
+    @Test
+    void overlappingDeletesRemoveTheUnionOnce() {
+        assertEquals("af", converge("abcdef",
+                List.of(TextOperation.delete(1, 3)), List.of(TextOperation.delete(2, 3))));
+        assertEquals("af", converge("abcdef",
+                List.of(TextOperation.delete(2, 2)), List.of(TextOperation.delete(1, 4))));
+
+        // Deleting what the other side already deleted leaves nothing to apply
+        TextOperation.Pair pair = TextOperation.transformPair(
+                List.of(TextOperation.delete(1, 2)), List.of(TextOperation.delete(1, 2)));
+        assertTrue(pair.ops.isEmpty());
+        assertTrue(pair.applied.isEmpty());
+    }
+
+    @Test
+    void randomEditsConverge() {
+        Random random = new Random(42);
+        for (int trial = 0; trial < 20_000; trial++) {
+            String document = text(random, random.nextInt(12));
+            converge(document, edits(random, document, 1 + random.nextInt(3)),
+                    edits(random, document, 1 + random.nextInt(3)));
+        }
+    }
+
+    /** Asserts both orders give the same text, and returns it. */
+    private static String converge(String document, List<TextOperation> ops, List<TextOperation> applied) {
+        TextOperation.Pair pair = TextOperation.transformPair(ops, applied);
+        String appliedFirst = apply(apply(document, applied), pair.ops);
+        String opsFirst = apply(apply(document, ops), pair.applied);
+        assertEquals(appliedFirst, opsFirst, () -> document + ": " + describe(ops) + " vs " + describe(applied));
+        return appliedFirst;
+    }
+
+    static String apply(String document, List<TextOperation> ops) {
+        PieceTable table = new PieceTable(document);
+        for (TextOperation op : ops) {
+            op.applyTo(table);
+        }
+        return table.toString();
+    }
+
+    /** {@code count} random edits, each valid on the text the ones before it leave. */
+    private static List<TextOperation> edits(Random random, String document, int count) {
+        List<TextOperation> ops = new ArrayList<>(count);
+        int length = document.length();
+        for (int i = 0; i < count; i++) {
+            if (length == 0 || random.nextBoolean()) {
+                String text = text(random, 1 + random.nextInt(3));
+                ops.add(TextOperation.insert(random.nextInt(length + 1), text));
+                length += text.length();
+            } else {
+                int position = random.nextInt(length);
+                int removed = 1 + random.nextInt(Math.min(4, length - position));
+                ops.add(TextOperation.delete(position, removed));
+                length -= removed;
+            }
+        }
+        return ops;
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + random.nextInt(26)));
+        }
+        return text.toString();
+    }
+
+    private static String describe(List<TextOperation> ops) {
+        StringBuilder description = new StringBuilder();
+        for (TextOperation op : ops) {
+            description.append(op.kind == TextOperation.Kind.INSERT
+                    ? "insert(" + op.position + ", \"" + op.text + "\") "
+                    : "delete(" + op.position + ", " + op.length + ") ");
+        }
+        return description.toString().trim();
+    }
+}
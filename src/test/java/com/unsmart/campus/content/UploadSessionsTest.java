@@ -0,0 +1,41 @@
+package com.unsmart.campus.content;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class UploadSessionsTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void sessionIsCompletedOnce() throws IOException, NoSuchAlgorithmException {
+        ContentStore store = new ContentStore(directory.resolve("content"));
+        store.load();
+        UploadSessions sessions = new UploadSessions(directory.resolve("sessions"), store);
+        sessions.load();
+
+        byte[] data = "Week 1 slides".getBytes(StandardCharsets.UTF_8);
+        String sha256 = ContentChunker.hex(MessageDigest.getInstance("SHA-256").digest(data));
+        UploadSessions.Session session = sessions.start("week1.pdf", data.length, sha256);
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+        session.write(0, ByteString.copyFrom(data), (int) crc.getValue());
+
+        assertNotNull(sessions.complete(session));
+        // A second CompleteUpload for the same session, e.g. a retry racing the first
+        assertNull(sessions.complete(session));
+        assertEquals(1, store.lookup("week1.pdf").version);
+        assertNull(sessions.get(session.uploadId));
+    }
+}